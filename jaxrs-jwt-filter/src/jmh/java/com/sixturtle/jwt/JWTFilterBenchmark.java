@@ -0,0 +1,292 @@
+package com.sixturtle.jwt;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.SecureRandom;
+import java.security.interfaces.ECPrivateKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.SecurityContext;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSSigner;
+import com.nimbusds.jose.crypto.ECDSASigner;
+import com.nimbusds.jose.crypto.MACSigner;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jwk.ECKey;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+
+import com.sixturtle.jwt.JWTRequestFilter.JWTPrincipal;
+import com.sixturtle.jwt.JWTRequestFilter.JWTSecurityContext;
+
+/**
+ * Measures each stage of {@link JWTRequestFilter} on a single thread, and the
+ * full {@code filter()} call with and without {@link VerifiedTokenCache}.
+ * <p>
+ * Each benchmark runs once per signing algorithm. An RSA or EC P-256 key pair
+ * is generated at setup and its public key published to the filter as a JWK
+ * Set file, so no keystore is involved; for HS256 a random secret is
+ * registered for the token issuer as the internal HMAC issuer. The
+ * {@link KeyMaterial} is loaded from these settings at setup and closed at
+ * teardown. See
+ * {@link JWTFilterConcurrentBenchmark} for the same benchmarks under
+ * contention.
+ * </p>
+ *
+ * <pre>
+ * $ gradle jmh
+ * $ gradle jmh -Pjmh.include=JWTFilterBenchmark.filter
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(1)
+public class JWTFilterBenchmark {
+    private static final String KEY_ID = "benchmark";
+    private static final String ISSUER = "https://idp.sixturtle.com";
+
+    @Param({"RS256", "ES256", "HS256"})
+    private String algorithm;
+
+    private String                  token;
+    private String                  header;
+    private SignedJWT               signedJWT;
+    private byte[]                  payload;
+    private JWTPrincipal            principal;
+    private TokenPreValidator       preValidator;
+    private KeyMaterial             keyMaterial;
+    private JWTRequestFilter        uncachedFilter;
+    private JWTRequestFilter        cachedFilter;
+    private ContainerRequestContext requestContext;
+
+    /**
+     * Generates the key of the algorithm, signs the token and builds the
+     * filters.
+     *
+     * @throws Exception
+     *             in case of setup error
+     */
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        JWSSigner signer;
+        JWK       publicKey;
+        if (JWSAlgorithm.ES256.getName().equals(algorithm)) {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+            generator.initialize(new ECGenParameterSpec("secp256r1"));
+            KeyPair keyPair = generator.generateKeyPair();
+            publicKey = new ECKey.Builder(ECKey.Curve.P_256, (ECPublicKey) keyPair.getPublic()).keyID(KEY_ID).build();
+            signer    = new ECDSASigner((ECPrivateKey) keyPair.getPrivate());
+        } else {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048);
+            KeyPair keyPair = generator.generateKeyPair();
+            publicKey = new RSAKey.Builder((RSAPublicKey) keyPair.getPublic()).keyID(KEY_ID).build();
+            signer    = new RSASSASigner((RSAPrivateKey) keyPair.getPrivate());
+        }
+        if (JWSAlgorithm.HS256.getName().equals(algorithm)) {
+            // the RSA key set still serves any other issuer
+            byte[] secret = new byte[32];
+            new SecureRandom().nextBytes(secret);
+            System.setProperty(JWTRequestFilter.PROP_HMAC_SECRET, Base64.getEncoder().encodeToString(secret));
+            System.setProperty(JWTRequestFilter.PROP_HMAC_ISSUER, ISSUER);
+            signer = new MACSigner(secret);
+        }
+
+        File jwks = File.createTempFile("jwks", ".json");
+        jwks.deleteOnExit();
+        try (OutputStream out = new FileOutputStream(jwks)) {
+            out.write(new JWKSet(publicKey).toString().getBytes(StandardCharsets.UTF_8));
+        }
+        System.setProperty(JWTRequestFilter.PROP_JWKS_URL, jwks.getAbsolutePath());
+
+        JWTClaimsSet claimsSet = new JWTClaimsSet.Builder()
+                .subject("john.doe")
+                .issuer(ISSUER)
+                .expirationTime(new Date(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1)))
+                .notBeforeTime(new Date(System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(1)))
+                .claim("email", "john.doe@sixturtle.com")
+                .claim("given_name", "John")
+                .claim("family_name", "Doe")
+                .claim("realm_access", Collections.singletonMap("roles", Arrays.asList("USER", "ADMIN")))
+                .claim("organizations", Arrays.asList("sixturtle"))
+                .build();
+        SignedJWT jwt = new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.parse(algorithm)).keyID(KEY_ID).build(), claimsSet);
+        jwt.sign(signer);
+        token  = jwt.serialize();
+        header = "Bearer " + token;
+
+        RoleDictionary.getInstance().register("USER");
+
+        keyMaterial = KeyMaterial.load();
+        System.setProperty(JWTRequestFilter.PROP_TOKEN_CACHE_SIZE, "0");
+        System.setProperty(JWTRequestFilter.PROP_REJECTED_CACHE_SIZE, "0");
+        uncachedFilter = new JWTRequestFilter(keyMaterial);
+        System.clearProperty(JWTRequestFilter.PROP_TOKEN_CACHE_SIZE);
+        System.clearProperty(JWTRequestFilter.PROP_REJECTED_CACHE_SIZE);
+        cachedFilter = new JWTRequestFilter(keyMaterial);
+
+        preValidator   = new TokenPreValidator(Collections.singleton(algorithm), 0);
+        signedJWT      = uncachedFilter.parseToken(token);
+        payload        = preValidator.validate(token).getPayload();
+        principal      = uncachedFilter.buildPrincipal(payload);
+        principal.getRoleMask();
+        requestContext = requestContext(header);
+    }
+
+    /**
+     * Stops the JWK Set refresh of the key material.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        keyMaterial.close();
+    }
+
+    /**
+     * @return the token value of the Authorization header
+     */
+    @Benchmark
+    public String parseBearerToken() {
+        return uncachedFilter.parseBearerToken(header);
+    }
+
+    /**
+     * @return the token info after the structural checks
+     */
+    @Benchmark
+    public TokenInfo preValidate() {
+        return preValidator.validate(token);
+    }
+
+    /**
+     * @return the parsed token
+     */
+    @Benchmark
+    public SignedJWT parseToken() {
+        return uncachedFilter.parseToken(token);
+    }
+
+    /**
+     * @return the verified token
+     */
+    @Benchmark
+    public SignedJWT validateToken() {
+        uncachedFilter.validateToken(signedJWT, ISSUER);
+        return signedJWT;
+    }
+
+    /**
+     * @return the principal built from a verified payload
+     */
+    @Benchmark
+    public JWTPrincipal buildPrincipal() {
+        return uncachedFilter.buildPrincipal(payload);
+    }
+
+    /**
+     * @return the email of a new principal, i.e. including the claims read
+     */
+    @Benchmark
+    public String readPrincipal() {
+        return uncachedFilter.buildPrincipal(payload).getEmail();
+    }
+
+    /**
+     * @return a new security context for the principal
+     */
+    @Benchmark
+    public JWTSecurityContext securityContext() {
+        return new JWTSecurityContext(principal, false);
+    }
+
+    /**
+     * @return the request context after a full verification
+     * @throws Exception
+     *             in case of rejection
+     */
+    @Benchmark
+    public ContainerRequestContext filter() throws Exception {
+        uncachedFilter.filter(requestContext);
+        return requestContext;
+    }
+
+    /**
+     * @return the request context after a verified token cache hit
+     * @throws Exception
+     *             in case of rejection
+     */
+    @Benchmark
+    public ContainerRequestContext filterCached() throws Exception {
+        cachedFilter.filter(requestContext);
+        return requestContext;
+    }
+
+    /**
+     * Builds a request context stub which returns the Authorization header
+     * and ignores the security context set by the filter. Unlike a Mockito
+     * mock it records no invocations, which would otherwise pile up over
+     * millions of calls.
+     *
+     * @param authorization
+     *            The Authorization header value
+     * @return The {@link ContainerRequestContext}
+     */
+    private static ContainerRequestContext requestContext(final String authorization) {
+        SecurityContext securityContext = (SecurityContext) Proxy.newProxyInstance(
+                JWTFilterBenchmark.class.getClassLoader(),
+                new Class<?>[] {SecurityContext.class},
+                (proxy, method, args) -> "isSecure".equals(method.getName()) ? Boolean.FALSE : null);
+
+        return (ContainerRequestContext) Proxy.newProxyInstance(
+                JWTFilterBenchmark.class.getClassLoader(),
+                new Class<?>[] {ContainerRequestContext.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getHeaderString":
+                            return HttpHeaders.AUTHORIZATION.equals(args[0]) ? authorization : null;
+                        case "getSecurityContext":
+                            return securityContext;
+                        default:
+                            return null;
+                    }
+                });
+    }
+}
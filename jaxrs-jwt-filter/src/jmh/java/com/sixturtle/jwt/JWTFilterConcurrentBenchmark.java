@@ -0,0 +1,12 @@
+package com.sixturtle.jwt;
+
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Runs the {@link JWTFilterBenchmark} stages with one thread per available
+ * processor, sharing the same filters, to expose contention on the caches,
+ * the key lookup and the JCA providers.
+ */
+@Threads(Threads.MAX)
+public class JWTFilterConcurrentBenchmark extends JWTFilterBenchmark {
+}
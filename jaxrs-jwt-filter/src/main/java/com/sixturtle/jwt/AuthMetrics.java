@@ -0,0 +1,126 @@
+package com.sixturtle.jwt;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import com.sixturtle.jwt.TokenRejectedException.Reason;
+
+/**
+ * Counts the authentication outcomes of {@link JWTRequestFilter} and records
+ * the latency of its parse and verify phases. The principal is not timed: it
+ * wraps the verified payload, whose claims are read on first access only.
+ * <p>
+ * Recording is a {@link LongAdder} increment per outcome and a bucket lookup
+ * per phase, so it can stay on for every request. The data is read by
+ * {@link MetricsAPI} in Prometheus text format.
+ * </p>
+ */
+public final class AuthMetrics {
+    /**
+     * The outcomes of an authentication attempt.
+     */
+    public enum Outcome {
+        ACCEPTED,
+        MISSING_HEADER,
+        PARSE_ERROR,
+        UNSUPPORTED_ALGORITHM,
+        MISSING_EXPIRATION,
+        EXPIRED,
+        NOT_YET_VALID,
+        UNKNOWN_KEY,
+        BAD_SIGNATURE,
+        INVALID_CLAIMS,
+        INACTIVE,
+        THROTTLED;
+
+        /**
+         * @param reason
+         *            The reason of rejecting a token
+         * @return The matching outcome
+         */
+        public static Outcome of(final Reason reason) {
+            switch (reason) {
+                case MALFORMED:             return PARSE_ERROR;
+                case UNSUPPORTED_ALGORITHM: return UNSUPPORTED_ALGORITHM;
+                case MISSING_EXPIRATION:    return MISSING_EXPIRATION;
+                case EXPIRED:               return EXPIRED;
+                case NOT_YET_VALID:         return NOT_YET_VALID;
+                case UNKNOWN_KEY:           return UNKNOWN_KEY;
+                case BAD_SIGNATURE:         return BAD_SIGNATURE;
+                case INACTIVE:              return INACTIVE;
+                default:                    return INVALID_CLAIMS;
+            }
+        }
+    }
+
+    /**
+     * The timed phases of a token verification.
+     */
+    public enum Phase {
+        PARSE,
+        VERIFY
+    }
+
+    private static final AuthMetrics INSTANCE = new AuthMetrics();
+
+    private final LongAdder[]        outcomes = new LongAdder[Outcome.values().length];
+    private final LatencyHistogram[] phases   = new LatencyHistogram[Phase.values().length];
+
+    /**
+     * @return The metrics shared by all the filter instances
+     */
+    public static AuthMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Hidden, use {@link #getInstance()}.
+     */
+    private AuthMetrics() {
+        for (int iIndex = 0; iIndex < outcomes.length; ++iIndex) {
+            outcomes[iIndex] = new LongAdder();
+        }
+        for (int iIndex = 0; iIndex < phases.length; ++iIndex) {
+            phases[iIndex] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * @param outcome
+     *            The outcome of an authentication attempt
+     */
+    public void count(final Outcome outcome) {
+        outcomes[outcome.ordinal()].increment();
+    }
+
+    /**
+     * @param phase
+     *            The phase
+     * @param nanos
+     *            The time spent in the phase in nanoseconds
+     */
+    public void record(final Phase phase, final long nanos) {
+        phases[phase.ordinal()].record(nanos);
+    }
+
+    /**
+     * @return The metrics in Prometheus text exposition format
+     */
+    public String toPrometheus() {
+        StringBuilder out = new StringBuilder(4096);
+        out.append("# HELP jwt_auth_requests_total Authentication attempts by outcome.\n")
+           .append("# TYPE jwt_auth_requests_total counter\n");
+        for (Outcome outcome : Outcome.values()) {
+            out.append("jwt_auth_requests_total{outcome=\"").append(outcome.name().toLowerCase()).append("\"} ")
+               .append(outcomes[outcome.ordinal()].sum()).append('\n');
+        }
+        out.append("# HELP jwt_auth_phase_seconds Time spent per token verification phase.\n")
+           .append("# TYPE jwt_auth_phase_seconds histogram\n");
+        for (Phase phase : Phase.values()) {
+            phases[phase.ordinal()].writeTo(
+                    out,
+                    "jwt_auth_phase_seconds",
+                    "phase=\"" + phase.name().toLowerCase() + "\"");
+        }
+        return out.toString();
+    }
+}
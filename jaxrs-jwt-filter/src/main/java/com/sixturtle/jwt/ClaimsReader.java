@@ -0,0 +1,237 @@
+package com.sixturtle.jwt;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Extracts the claims backing {@link JWTRequestFilter.JWTPrincipal} from the
+ * decoded JWT payload with a streaming parser.
+ * <p>
+ * Only "sub", "email", "given_name", "family_name" and the configured role and
+ * organization claims are read; every other claim, e.g. large group or
+ * entitlement lists, is skipped token by token without building any string,
+ * list or map for it.
+ * </p>
+ */
+public class ClaimsReader {
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private static final int ROLES         = 0;
+    private static final int ORGANIZATIONS = 1;
+
+    private final String[][] paths;
+
+    /**
+     * Init the reader.
+     *
+     * @param rolesClaim
+     *            The roles claim, "." separating nested objects, e.g.
+     *            "realm_access.roles"
+     * @param organizationsClaim
+     *            The organizations claim, "." separating nested objects
+     */
+    public ClaimsReader(final String rolesClaim, final String organizationsClaim) {
+        paths = new String[][] {rolesClaim.split("\\."), organizationsClaim.split("\\.")};
+    }
+
+    /**
+     * Reads the principal claims of a payload.
+     *
+     * @param payload
+     *            The decoded JWT payload JSON
+     * @return The {@link Claims}
+     * @throws IOException
+     *             in case of malformed JSON
+     */
+    public Claims read(final byte[] payload) throws IOException {
+        Claims claims = new Claims();
+        try (JsonParser parser = JSON.createParser(payload)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("JWT payload is not a JSON object");
+            }
+            readObject(parser, 0, new boolean[] {true, true}, claims);
+        }
+        return claims;
+    }
+
+    /**
+     * Reads the members of an object, descending only into the objects on the
+     * path of the role or organization claims.
+     *
+     * @param parser
+     *            The parser, positioned on START_OBJECT
+     * @param depth
+     *            The nesting depth of the object, 0 for the payload
+     * @param active
+     *            Whether each claim path still matches at this depth
+     * @param claims
+     *            Receives the claims
+     * @throws IOException
+     *             in case of malformed JSON
+     */
+    private void readObject(
+            final JsonParser parser,
+            final int depth,
+            final boolean[] active,
+            final Claims claims) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String    name  = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+
+            if (depth == 0 && value == JsonToken.VALUE_STRING && readSimple(name, parser.getText(), claims)) {
+                continue;
+            }
+
+            boolean[] next = null;
+            boolean   leaf = false;
+            for (int iIndex = 0; iIndex < paths.length; ++iIndex) {
+                String[] path = paths[iIndex];
+                if (active[iIndex] && path.length > depth && path[depth].equals(name)) {
+                    if (path.length == depth + 1) {
+                        leaf = true;
+                    } else {
+                        next = next != null ? next : new boolean[paths.length];
+                        next[iIndex] = true;
+                    }
+                }
+            }
+
+            if (leaf && value == JsonToken.START_ARRAY) {
+                String[] strings = readStrings(parser);
+                for (int iIndex = 0; iIndex < paths.length; ++iIndex) {
+                    if (active[iIndex] && paths[iIndex].length == depth + 1 && paths[iIndex][depth].equals(name)) {
+                        claims.set(iIndex, strings);
+                    }
+                }
+            } else if (next != null && value == JsonToken.START_OBJECT) {
+                readObject(parser, depth + 1, next, claims);
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    /**
+     * @param name
+     *            The top level claim name
+     * @param text
+     *            The claim value
+     * @param claims
+     *            Receives the claim
+     * @return true if the claim is one of the simple principal claims
+     */
+    private static boolean readSimple(final String name, final String text, final Claims claims) {
+        switch (name) {
+            case "sub":
+                claims.subject = text;
+                return true;
+            case "email":
+                claims.email = text;
+                return true;
+            case "given_name":
+                claims.givenName = text;
+                return true;
+            case "family_name":
+                claims.familyName = text;
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Reads the scalar values of an array, skipping nested values.
+     *
+     * @param parser
+     *            The parser, positioned on START_ARRAY
+     * @return The values as strings
+     * @throws IOException
+     *             in case of malformed JSON
+     */
+    private static String[] readStrings(final JsonParser parser) throws IOException {
+        List<String> strings = new ArrayList<>();
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY && token != null) {
+            if (token.isScalarValue()) {
+                strings.add(parser.getText());
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return strings.toArray(new String[strings.size()]);
+    }
+
+    /**
+     * The principal claims of a token, null when missing.
+     */
+    public static class Claims {
+        private String   subject;
+        private String   email;
+        private String   givenName;
+        private String   familyName;
+        private String[] roles;
+        private String[] organizations;
+
+        /**
+         * @param index
+         *            {@link ClaimsReader#ROLES} or
+         *            {@link ClaimsReader#ORGANIZATIONS}
+         * @param values
+         *            The claim values
+         */
+        private void set(final int index, final String[] values) {
+            if (index == ROLES) {
+                roles = values;
+            } else {
+                organizations = values;
+            }
+        }
+
+        /**
+         * @return the "sub" claim
+         */
+        public String getSubject() {
+            return subject;
+        }
+
+        /**
+         * @return the "email" claim
+         */
+        public String getEmail() {
+            return email;
+        }
+
+        /**
+         * @return the "given_name" claim
+         */
+        public String getGivenName() {
+            return givenName;
+        }
+
+        /**
+         * @return the "family_name" claim
+         */
+        public String getFamilyName() {
+            return familyName;
+        }
+
+        /**
+         * @return the roles claim
+         */
+        public String[] getRoles() {
+            return roles;
+        }
+
+        /**
+         * @return the organizations claim
+         */
+        public String[] getOrganizations() {
+            return organizations;
+        }
+    }
+}
@@ -34,7 +34,7 @@ public class EchoAPI {
      */
     @GET
     @JWTSecured
-    @RolesAllowed("USER") // just for demonstration, check JWTRequestFilter to see what roles are injected to security context
+    @RolesAllowed("USER") // just for demonstration, enforced by RolesAllowedFeature against the roles claim of the token
     public Response echo(@QueryParam("message") String message) {
         JWTPrincipal p = (JWTPrincipal) securityContext.getUserPrincipal();
         log.info("Received message: {} from principal: {}", message, p);
@@ -0,0 +1,189 @@
+package com.sixturtle.jwt;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+/**
+ * A bounded cache of values derived from JSON Web Tokens, where every entry
+ * carries its own expiration time.
+ * <p>
+ * Entries are keyed by the SHA-256 hash of the compact token (see
+ * {@link #hash(String)}) so the raw bearer credential is never retained, and
+ * the caller can compute the key once for several caches. An entry is dropped
+ * once it expires, or when its segment is full and the entry is the least
+ * recently used one.
+ * </p>
+ * <p>
+ * The cache is split into segments, each an access ordered {@link LinkedHashMap}
+ * guarded by its own lock, so concurrent requests presenting different tokens
+ * rarely contend with each other.
+ * </p>
+ *
+ * @param <V>
+ *            The cached value type
+ */
+public class ExpiringTokenCache<V> {
+    private static final int SEGMENTS = 16;
+
+    private final Segment<V>[] segments;
+
+    /**
+     * Creates a cache which holds at most {@code maxEntries} tokens.
+     *
+     * @param maxEntries
+     *            The maximum number of cached tokens, must be positive
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public ExpiringTokenCache(final int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive: " + maxEntries);
+        }
+        int perSegment = Math.max(1, (maxEntries + SEGMENTS - 1) / SEGMENTS);
+        segments = new Segment[SEGMENTS];
+        for (int iIndex = 0; iIndex < SEGMENTS; ++iIndex) {
+            segments[iIndex] = new Segment<>(perSegment);
+        }
+    }
+
+    /**
+     * Computes the cache key of a token.
+     *
+     * @param token
+     *            The compact serialized JWT
+     * @return The hex encoded SHA-256 hash of the token
+     */
+    public static String hash(final String token) {
+        return DigestUtils.sha256Hex(token);
+    }
+
+    /**
+     * Looks up the value cached for a token.
+     *
+     * @param key
+     *            The token key computed by {@link #hash(String)}
+     * @return The cached value if present and not expired yet, null otherwise
+     */
+    public V get(final String key) {
+        Segment<V> segment = segmentFor(key);
+        long now = System.currentTimeMillis();
+        synchronized (segment) {
+            Entry<V> entry = segment.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expiresAt <= now) {
+                segment.remove(key);
+                return null;
+            }
+            return entry.value;
+        }
+    }
+
+    /**
+     * Caches a value for a token until the given time.
+     *
+     * @param key
+     *            The token key computed by {@link #hash(String)}
+     * @param value
+     *            The value to be cached
+     * @param expiresAt
+     *            The expiration time of the entry in milliseconds
+     */
+    public void put(final String key, final V value, final long expiresAt) {
+        if (value == null || expiresAt <= System.currentTimeMillis()) {
+            return;
+        }
+        Segment<V> segment = segmentFor(key);
+        synchronized (segment) {
+            segment.put(key, new Entry<>(value, expiresAt));
+        }
+    }
+
+    /**
+     * Removes all the cached tokens, e.g. after the signing key has changed.
+     */
+    public void clear() {
+        for (Segment<V> segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    /**
+     * @return The number of cached tokens, including the expired ones not
+     *         evicted yet
+     */
+    public int size() {
+        int size = 0;
+        for (Segment<V> segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @param key
+     *            The cache key
+     * @return The segment owning the key
+     */
+    private Segment<V> segmentFor(final String key) {
+        return segments[(key.hashCode() & Integer.MAX_VALUE) % SEGMENTS];
+    }
+
+    /**
+     * A cached value along with its expiration time.
+     *
+     * @param <V>
+     *            The cached value type
+     */
+    private static final class Entry<V> {
+        private final V    value;
+        private final long expiresAt;
+
+        /**
+         * @param value
+         *            The cached value
+         * @param expiresAt
+         *            The expiration time in milliseconds
+         */
+        private Entry(final V value, final long expiresAt) {
+            this.value     = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * An access ordered map evicting the least recently used entry when full.
+     *
+     * @param <V>
+     *            The cached value type
+     */
+    private static final class Segment<V> extends LinkedHashMap<String, Entry<V>> {
+        private static final long serialVersionUID = -4870377326718255136L;
+
+        private final int capacity;
+
+        /**
+         * @param capacity
+         *            The maximum number of entries in the segment
+         */
+        private Segment(final int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        /*
+         * (non-Javadoc)
+         * @see java.util.LinkedHashMap#removeEldestEntry(java.util.Map.Entry)
+         */
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, Entry<V>> eldest) {
+            return size() > capacity;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.sixturtle.jwt;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import com.sixturtle.jwt.TokenRejectedException.Reason;
+
+/**
+ * The rules applied to the tokens of one issuer once its signing key is
+ * known: the accepted audiences and the claims mapped to the principal.
+ */
+public class IssuerPolicy {
+    private final Set<String>  audiences;
+    private final ClaimsReader claimsReader;
+
+    /**
+     * Init the policy.
+     *
+     * @param audiences
+     *            The accepted "aud" values, empty to accept any audience
+     * @param claimsReader
+     *            The {@link ClaimsReader} mapping the issuer claims to the
+     *            principal
+     */
+    public IssuerPolicy(final Set<String> audiences, final ClaimsReader claimsReader) {
+        this.audiences    = Collections.unmodifiableSet(new HashSet<>(audiences));
+        this.claimsReader = claimsReader;
+    }
+
+    /**
+     * Checks that a token is meant for this service.
+     *
+     * @param audience
+     *            The "aud" claim of the token, may be null
+     * @throws TokenRejectedException
+     *             if an audience is required and the token carries none of
+     *             the accepted ones
+     */
+    public void checkAudience(final String[] audience) {
+        if (audiences.isEmpty()) {
+            return;
+        }
+        for (int iIndex = 0; audience != null && iIndex < audience.length; ++iIndex) {
+            if (audiences.contains(audience[iIndex])) {
+                return;
+            }
+        }
+        throw new TokenRejectedException(Reason.INVALID_CLAIMS, "Unauthorized: Invalid audience");
+    }
+
+    /**
+     * @return the accepted audiences, empty if any audience is accepted
+     */
+    public Set<String> getAudiences() {
+        return audiences;
+    }
+
+    /**
+     * @return the claims reader
+     */
+    public ClaimsReader getClaimsReader() {
+        return claimsReader;
+    }
+}
@@ -0,0 +1,313 @@
+package com.sixturtle.jwt;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSVerifier;
+import com.nimbusds.jose.crypto.ECDSAVerifier;
+import com.nimbusds.jose.jwk.ECKey;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.KeyUse;
+import com.nimbusds.jose.jwk.RSAKey;
+
+/**
+ * A {@link KeyResolver} backed by a JSON Web Key Set (JWKS) published by the
+ * identity provider, either as a local file or at an HTTP(S) endpoint.
+ * <p>
+ * Verifiers are built once per key and indexed by "kid". The key set is
+ * re-fetched in the background using conditional requests (ETag and
+ * Last-Modified), and a new index is published with a single volatile write,
+ * so requests in flight never wait for a refresh and never see a half built
+ * index. A token carrying an unknown "kid" triggers an early, rate limited
+ * refresh to pick up a freshly rolled key.
+ * </p>
+ */
+public class JWKSKeyResolver implements KeyResolver, Closeable {
+    private static final Logger log = LoggerFactory.getLogger(JWKSKeyResolver.class);
+
+    private static final int  CONNECT_TIMEOUT_MILLIS   = 5000;
+    private static final int  READ_TIMEOUT_MILLIS      = 5000;
+    private static final long MIN_FORCED_REFRESH_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    private final URL                      jwksUrl;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicLong               lastForcedRefresh = new AtomicLong();
+
+    private volatile Keys keys = new Keys(Collections.<String, JWSVerifier>emptyMap(), null);
+
+    // only accessed from the loading thread
+    private String etag;
+    private long   lastModified;
+    private String content;
+
+    /**
+     * Loads the key set and schedules the background refresh.
+     *
+     * @param jwksUrl
+     *            The location of the JWK set, e.g. "file:/etc/jwks.json" or
+     *            "https://idp/protocol/openid-connect/certs"
+     * @param refreshSeconds
+     *            The interval between two refreshes in seconds
+     */
+    public JWKSKeyResolver(final URL jwksUrl, final long refreshSeconds) {
+        this.jwksUrl = jwksUrl;
+        try {
+            refresh();
+        } catch (Exception e) {
+            throw new RuntimeException("Configuration error: unable to load JWK set from: " + jwksUrl, e);
+        }
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "jwks-refresh");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::refreshQuietly, refreshSeconds, refreshSeconds, TimeUnit.SECONDS);
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see com.sixturtle.jwt.KeyResolver#getVerifier(com.nimbusds.jose.JWSHeader)
+     */
+    @Override
+    public JWSVerifier getVerifier(final JWSHeader header) {
+        Keys current = keys;
+        String kid = header.getKeyID();
+        if (kid == null) {
+            return current.single;
+        }
+        JWSVerifier verifier = current.byKid.get(kid);
+        if (verifier == null) {
+            requestRefresh(kid);
+        }
+        return verifier;
+    }
+
+    /**
+     * @return The "kid" values of the currently published keys
+     */
+    public Set<String> getKeyIds() {
+        return keys.byKid.keySet();
+    }
+
+    /**
+     * Stops the background refresh.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Schedules an immediate refresh for an unknown "kid", at most once per
+     * {@link #MIN_FORCED_REFRESH_MILLIS} so that garbage "kid" values can not be
+     * used to hammer the key endpoint.
+     *
+     * @param kid
+     *            The unknown key id
+     */
+    private void requestRefresh(final String kid) {
+        long now  = System.currentTimeMillis();
+        long last = lastForcedRefresh.get();
+        if (now - last >= MIN_FORCED_REFRESH_MILLIS && lastForcedRefresh.compareAndSet(last, now)) {
+            log.debug("Unknown key id: {}, refreshing JWK set from: {}", kid, jwksUrl);
+            scheduler.execute(this::refreshQuietly);
+        }
+    }
+
+    /**
+     * Refreshes the key set, keeping the current keys in case of error.
+     */
+    private void refreshQuietly() {
+        try {
+            refresh();
+        } catch (Exception e) {
+            log.error("Unable to refresh JWK set from: {}, keeping current keys", jwksUrl, e);
+        }
+    }
+
+    /**
+     * Fetches the key set if it has changed and publishes a new index.
+     *
+     * @throws IOException
+     *             in case of error fetching the key set
+     * @throws ParseException
+     *             in case of error parsing the key set
+     */
+    private synchronized void refresh() throws IOException, ParseException {
+        Fetched fetched = fetch();
+        if (fetched == null) {
+            log.trace("JWK set not modified: {}", jwksUrl);
+            return;
+        }
+        if (!fetched.content.equals(content)) {
+            keys    = index(JWKSet.parse(fetched.content));
+            content = fetched.content;
+            log.info("Loaded JWK set from: {} with key ids: {}", jwksUrl, keys.byKid.keySet());
+        }
+        // only a key set in service is conditionally requested, a broken one is fetched again
+        etag         = fetched.etag;
+        lastModified = fetched.lastModified;
+    }
+
+    /**
+     * Fetches the key set content with a conditional request. The validators
+     * of the response are returned along with the content, they are kept by
+     * {@link #refresh()} once the content is parsed and indexed.
+     *
+     * @return The key set content and its validators, or null if not modified
+     *         since last fetch
+     * @throws IOException
+     *             in case of error fetching the key set
+     */
+    private Fetched fetch() throws IOException {
+        URLConnection connection = jwksUrl.openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+        connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+        if (etag != null) {
+            connection.setRequestProperty("If-None-Match", etag);
+        }
+        if (lastModified > 0) {
+            connection.setIfModifiedSince(lastModified);
+        }
+
+        if (connection instanceof HttpURLConnection) {
+            HttpURLConnection http = (HttpURLConnection) connection;
+            int status = http.getResponseCode();
+            if (status == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                http.disconnect();
+                return null;
+            }
+            if (status != HttpURLConnection.HTTP_OK) {
+                http.disconnect();
+                throw new IOException("Unexpected HTTP status: " + status + " fetching JWK set from: " + jwksUrl);
+            }
+        } else if (lastModified > 0 && connection.getLastModified() == lastModified) {
+            return null; // e.g. file: URL, If-Modified-Since is not applicable
+        }
+
+        try (InputStream is = connection.getInputStream()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int len;
+            while ((len = is.read(buffer)) != -1) {
+                out.write(buffer, 0, len);
+            }
+            return new Fetched(
+                        new String(out.toByteArray(), StandardCharsets.UTF_8),
+                        connection.getHeaderField("ETag"),
+                        connection.getLastModified());
+        }
+    }
+
+    /**
+     * Builds the verifiers of all the signing keys in a key set.
+     *
+     * @param jwkSet
+     *            The {@link JWKSet}
+     * @return The verifiers indexed by key id
+     */
+    static Keys index(final JWKSet jwkSet) {
+        Map<String, JWSVerifier> byKid = new HashMap<>();
+        JWSVerifier last  = null;
+        int         count = 0;
+        for (JWK jwk : jwkSet.getKeys()) {
+            if (jwk.getKeyUse() != null && jwk.getKeyUse() != KeyUse.SIGNATURE) {
+                continue;
+            }
+            JWSVerifier verifier = toVerifier(jwk);
+            if (verifier != null) {
+                if (jwk.getKeyID() != null) {
+                    byKid.put(jwk.getKeyID(), verifier);
+                }
+                last = verifier;
+                ++count;
+            }
+        }
+        return new Keys(Collections.unmodifiableMap(byKid), count == 1 ? last : null);
+    }
+
+    /**
+     * @param jwk
+     *            A public key
+     * @return The {@link JWSVerifier} for the key, null if the key type is not
+     *         supported
+     */
+    private static JWSVerifier toVerifier(final JWK jwk) {
+        try {
+            if (jwk instanceof RSAKey) {
+                return new PooledRSASSAVerifier(((RSAKey) jwk).toRSAPublicKey());
+            } else if (jwk instanceof ECKey) {
+                return new ECDSAVerifier((ECKey) jwk);
+            }
+            log.warn("Ignoring unsupported key type: {} with id: {}", jwk.getKeyType(), jwk.getKeyID());
+        } catch (JOSEException e) {
+            log.warn("Ignoring invalid key with id: {}", jwk.getKeyID(), e);
+        }
+        return null;
+    }
+
+    /**
+     * An immutable snapshot of the published keys.
+     */
+    static final class Keys {
+        private final Map<String, JWSVerifier> byKid;
+        private final JWSVerifier             single;
+
+        /**
+         * @param byKid
+         *            The verifiers by key id
+         * @param single
+         *            The verifier to be used for tokens without "kid" when the
+         *            set has exactly one key, null otherwise
+         */
+        Keys(final Map<String, JWSVerifier> byKid, final JWSVerifier single) {
+            this.byKid  = byKid;
+            this.single = single;
+        }
+    }
+
+    /**
+     * A fetched key set content and the validators of the response.
+     */
+    private static final class Fetched {
+        private final String content;
+        private final String etag;
+        private final long   lastModified;
+
+        /**
+         * @param content
+         *            The key set content
+         * @param etag
+         *            The ETag header, may be null
+         * @param lastModified
+         *            The Last-Modified time, 0 if unknown
+         */
+        private Fetched(final String content, final String etag, final long lastModified) {
+            this.content      = content;
+            this.etag         = etag;
+            this.lastModified = lastModified;
+        }
+    }
+}
@@ -1,27 +1,25 @@
 package com.sixturtle.jwt;
 
-import java.io.BufferedInputStream;
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.security.KeyStore;
+import java.net.URL;
 import java.security.Principal;
-import java.security.PublicKey;
-import java.security.cert.Certificate;
-import java.security.interfaces.RSAPublicKey;
 import java.text.ParseException;
 import java.util.Arrays;
-import java.util.Date;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
-import java.util.regex.Pattern;
 
 import javax.annotation.Priority;
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.NotAuthorizedException;
 import javax.ws.rs.Priorities;
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.container.ContainerRequestContext;
 import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.core.Context;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
@@ -33,12 +31,14 @@ import org.slf4j.LoggerFactory;
 
 import com.nimbusds.jose.JOSEException;
 import com.nimbusds.jose.JWSVerifier;
-import com.nimbusds.jose.crypto.RSASSAVerifier;
 import com.nimbusds.jwt.JWT;
-import com.nimbusds.jwt.JWTClaimsSet;
 import com.nimbusds.jwt.JWTParser;
 import com.nimbusds.jwt.SignedJWT;
 
+import com.sixturtle.jwt.AuthMetrics.Outcome;
+import com.sixturtle.jwt.AuthMetrics.Phase;
+import com.sixturtle.jwt.TokenRejectedException.Reason;
+
 /**
  * A JAX-RS Request Filter to intercept authorization header and verify the validity of JWT
  * token using a JWT library and shared signing secret from IDP.
@@ -48,9 +48,65 @@ import com.nimbusds.jwt.SignedJWT;
          <property name="api.security.keystore.file" value="secure-keystore.jks"/>
          <property name="api.security.keystore.password" value="changeit"/>
          <property name="api.security.key.alias" value="jwt"/>
+         <property name="api.security.jwks.url" value="https://your-jwt-issuer/protocol/openid-connect/certs"/>
+         <property name="api.security.jwks.refresh.seconds" value="300"/>
+         <property name="api.security.token.cache.size" value="10000"/>
+         <property name="api.security.header.max.size" value="8192"/>
+         <property name="api.security.jwt.algorithms" value="RS256,RS384,RS512,ES256,ES384,ES512"/>
+         <property name="api.security.clock.skew.seconds" value="0"/>
+         <property name="api.security.rejected.cache.size" value="10000"/>
+         <property name="api.security.rejected.cache.seconds" value="30"/>
+         <property name="api.security.verify.rate.per.client" value="0"/>
+         <property name="api.security.hmac.secret" value="base64-encoded-secret"/>
+         <property name="api.security.hmac.issuer" value="https://internal-service-issuer"/>
+         <property name="api.security.roles.claim" value="realm_access.roles"/>
+         <property name="api.security.organizations.claim" value="organizations"/>
+         <property name="api.security.introspection.url" value="https://your-jwt-issuer/protocol/openid-connect/token/introspect"/>
+         <property name="api.security.introspection.client.id" value="your-client-id"/>
+         <property name="api.security.introspection.client.secret" value="your-client-secret"/>
+         <property name="api.security.introspection.cache.size" value="10000"/>
+         <property name="api.security.introspection.cache.seconds" value="300"/>
+         <property name="api.security.audience" value="your-api"/>
+         <property name="api.security.issuers" value="partner"/>
+         <property name="api.security.issuer.partner.iss" value="https://partner-issuer"/>
+         <property name="api.security.issuer.partner.jwks.url" value="https://partner-issuer/certs"/>
+         <property name="api.security.issuer.partner.audience" value="your-api"/>
+         <property name="api.security.issuer.partner.roles.claim" value="groups"/>
  *  /system-properties>
  * }
  * </p>
+ * <p>
+ * When "api.security.jwks.url" is set, signing keys are resolved by "kid" from
+ * the JWK Set published at that URL (or file path) and refreshed in the
+ * background, otherwise the single keystore certificate is used.
+ * </p>
+ * <p>
+ * When "api.security.hmac.secret" is set, HS256 tokens carrying the
+ * "api.security.hmac.issuer" claim are verified with that shared secret, which
+ * is much cheaper than RSA for service to service calls. Verifiers are looked
+ * up in a {@link VerifierRegistry} by issuer and algorithm, which is built
+ * once per deployment by {@link KeyMaterialListener} and shared by all the
+ * filter instances.
+ * </p>
+ * <p>
+ * When "api.security.introspection.url" is set, opaque Bearer tokens, i.e.
+ * tokens which are not a compact JWS, are resolved by the
+ * {@link TokenIntrospector} at that endpoint instead of being rejected.
+ * </p>
+ * <p>
+ * Tokens of several identity providers are accepted by listing them in
+ * "api.security.issuers". Each issuer has its own keys (see
+ * {@link KeyMaterial}), accepted audiences and claim mapping, selected by the
+ * "iss" claim with a single lookup in an {@link IssuerPolicy} map built at
+ * startup.
+ * </p>
+ * <p>
+ * Rejected tokens are remembered for a short time so that a client retrying
+ * with the same bad token is turned down at the cost of a lookup. When
+ * "api.security.verify.rate.per.client" is positive, each source address may
+ * trigger at most that many signature verifications or introspection calls
+ * per second and gets HTTP 429 beyond it.
+ * </p>
  */
 @Provider
 @Priority(Priorities.AUTHENTICATION)
@@ -61,29 +117,111 @@ public class JWTRequestFilter implements ContainerRequestFilter {
     public static final String PROP_SECURITY_KEYSTORE  = "api.security.keystore.file";
     public static final String PROP_SECURITY_PASSWORD  = "api.security.keystore.password";
     public static final String PROP_SECURITY_KEY_ALIAS = "api.security.key.alias";
+    public static final String PROP_TOKEN_CACHE_SIZE   = "api.security.token.cache.size";
+    public static final String PROP_JWKS_URL           = "api.security.jwks.url";
+    public static final String PROP_JWKS_REFRESH       = "api.security.jwks.refresh.seconds";
+    public static final String PROP_HEADER_MAX_SIZE    = "api.security.header.max.size";
+    public static final String PROP_JWT_ALGORITHMS     = "api.security.jwt.algorithms";
+    public static final String PROP_CLOCK_SKEW         = "api.security.clock.skew.seconds";
+    public static final String PROP_REJECTED_CACHE_SIZE = "api.security.rejected.cache.size";
+    public static final String PROP_REJECTED_CACHE_TTL  = "api.security.rejected.cache.seconds";
+    public static final String PROP_VERIFY_RATE         = "api.security.verify.rate.per.client";
+    public static final String PROP_HMAC_SECRET         = "api.security.hmac.secret";
+    public static final String PROP_HMAC_ISSUER         = "api.security.hmac.issuer";
+    public static final String PROP_ROLES_CLAIM         = "api.security.roles.claim";
+    public static final String PROP_ORGANIZATIONS_CLAIM = "api.security.organizations.claim";
+    public static final String PROP_INTROSPECTION_URL        = "api.security.introspection.url";
+    public static final String PROP_INTROSPECTION_ID         = "api.security.introspection.client.id";
+    public static final String PROP_INTROSPECTION_SECRET     = "api.security.introspection.client.secret";
+    public static final String PROP_INTROSPECTION_CACHE_SIZE = "api.security.introspection.cache.size";
+    public static final String PROP_INTROSPECTION_CACHE_TTL  = "api.security.introspection.cache.seconds";
+    public static final String PROP_AUDIENCE                 = "api.security.audience";
+    public static final String PROP_ISSUERS                  = "api.security.issuers";
+
+    private static final int    DEFAULT_TOKEN_CACHE_SIZE    = 10000;
+    private static final int    DEFAULT_HEADER_MAX_SIZE     = 8192;
+    private static final long   DEFAULT_CLOCK_SKEW          = 0;
+    private static final int    DEFAULT_REJECTED_CACHE_SIZE = 10000;
+    private static final long   DEFAULT_REJECTED_CACHE_TTL  = 30;
+    private static final String DEFAULT_ROLES_CLAIM         = "realm_access.roles";
+    private static final String DEFAULT_ORGANIZATIONS_CLAIM = "organizations";
+    private static final int    DEFAULT_INTROSPECTION_CACHE_SIZE = 10000;
+    private static final long   DEFAULT_INTROSPECTION_CACHE_TTL  = 300;
+    private static final int    MAX_BUDGET_CLIENTS          = 10000;
+    private static final int    STATUS_TOO_MANY_REQUESTS    = 429;
+
+    private static final String BEARER_SCHEME = "Bearer";
+
+    private int                maxHeaderSize;
+    private VerifierRegistry   verifiers;
+    private TokenPreValidator  preValidator;
+    private VerifiedTokenCache tokenCache;
+    private RejectedTokenCache rejectedCache;
+    private VerificationBudget verificationBudget;
+    private IssuerPolicy       defaultPolicy;
+    private Map<String, IssuerPolicy> policies;
+    private TokenIntrospector  introspector;
+    private AuthMetrics        metrics = AuthMetrics.getInstance();
+
+    @Context
+    private HttpServletRequest servletRequest;
 
-    private static final String DEFAULT_KEYSTORE_KEY_ALIAS  = "jwt";
-    private static final String DEFAULT_KEYSTORE_PASSWORD   = "changeit";
-    private static final String DEFAULT_KEYSTORE            = "secure-keystore.jks";
-
-    private Pattern     tokenPattern  = Pattern.compile("^Bearer$", Pattern.CASE_INSENSITIVE);
-    private JWSVerifier jwsVerifier;
+    /**
+     * Instantiates a new JWT verifier with the key material of the deployment.
+     *
+     * @param servletContext
+     *            The context holding the {@link KeyMaterial}
+     * @throws Exception in case of error setting up JWS Verifier
+     */
+    public JWTRequestFilter(@Context final ServletContext servletContext) throws Exception {
+        this(KeyMaterial.get(servletContext));
+    }
 
     /**
      * Instantiates a new JWT verifier with signing secret.
      *
+     * @param keyMaterial
+     *            The verifiers of the signing keys
      * @throws Exception in case of error setting up JWS Verifier
      */
-    public JWTRequestFilter() throws Exception {
-        String keystore = System.getProperty(PROP_SECURITY_KEYSTORE,  DEFAULT_KEYSTORE);
-        String password = System.getProperty(PROP_SECURITY_PASSWORD,  DEFAULT_KEYSTORE_PASSWORD);
-        String alias    = System.getProperty(PROP_SECURITY_KEY_ALIAS, DEFAULT_KEYSTORE_KEY_ALIAS);
-
-        PublicKey publicKey = loadPublicKey(keystore, password, alias);
-        if (publicKey != null) {
-            jwsVerifier = new RSASSAVerifier((RSAPublicKey) publicKey);
-        } else {
-            throw new RuntimeException("Configuration error: unable to load JWT signing public key from keystore: " + keystore);
+    JWTRequestFilter(final KeyMaterial keyMaterial) throws Exception {
+        verifiers     = keyMaterial.getVerifiers();
+        maxHeaderSize = Integer.getInteger(PROP_HEADER_MAX_SIZE, DEFAULT_HEADER_MAX_SIZE);
+        preValidator  = new TokenPreValidator(
+                                verifiers.getAlgorithms(),
+                                Long.getLong(PROP_CLOCK_SKEW, DEFAULT_CLOCK_SKEW));
+
+        int cacheSize = Integer.getInteger(PROP_TOKEN_CACHE_SIZE, DEFAULT_TOKEN_CACHE_SIZE);
+        if (cacheSize > 0) {
+            tokenCache = new VerifiedTokenCache(cacheSize);
+        }
+        int rejectedSize = Integer.getInteger(PROP_REJECTED_CACHE_SIZE, DEFAULT_REJECTED_CACHE_SIZE);
+        if (rejectedSize > 0) {
+            rejectedCache = new RejectedTokenCache(
+                                rejectedSize,
+                                Long.getLong(PROP_REJECTED_CACHE_TTL, DEFAULT_REJECTED_CACHE_TTL));
+        }
+        defaultPolicy = loadPolicy(null);
+        Map<String, IssuerPolicy> byIssuer = new HashMap<>();
+        for (String id : KeyMaterial.getIssuerIds()) {
+            byIssuer.put(KeyMaterial.getIssuer(id), loadPolicy(id));
+        }
+        policies = Collections.unmodifiableMap(byIssuer);
+
+        String introspectionUrl = System.getProperty(PROP_INTROSPECTION_URL);
+        if (introspectionUrl != null) {
+            introspector = new TokenIntrospector(
+                                new URL(introspectionUrl),
+                                System.getProperty(PROP_INTROSPECTION_ID),
+                                System.getProperty(PROP_INTROSPECTION_SECRET),
+                                Integer.getInteger(PROP_INTROSPECTION_CACHE_SIZE, DEFAULT_INTROSPECTION_CACHE_SIZE),
+                                Long.getLong(PROP_INTROSPECTION_CACHE_TTL, DEFAULT_INTROSPECTION_CACHE_TTL),
+                                this::buildPrincipal);
+        }
+
+        double verifyRate = Double.parseDouble(System.getProperty(PROP_VERIFY_RATE, "0"));
+        if (verifyRate > 0) {
+            verificationBudget = new VerificationBudget(verifyRate, MAX_BUDGET_CLIENTS);
         }
     }
 
@@ -95,36 +233,196 @@ public class JWTRequestFilter implements ContainerRequestFilter {
     public void filter(final ContainerRequestContext requestContext) throws IOException {
         String authorizationHeader = requestContext.getHeaderString(HttpHeaders.AUTHORIZATION);
         if (authorizationHeader != null) {
+            if (authorizationHeader.length() > maxHeaderSize) {
+                metrics.count(Outcome.PARSE_ERROR);
+                throw new NotAuthorizedException(
+                            "Unauthorized: Authorization header too large",
+                            Response.status(Status.UNAUTHORIZED));
+            }
             String token = parseBearerToken(authorizationHeader);
             if (token != null) {
-                JWTClaimsSet claims     = validateToken(token);
-                JWTPrincipal principal  = buildPrincipal(claims);
-                if (principal != null) {
-                    // Build and inject JavaEE SecurityContext for @RoleAllowed, isUserInRole(), getUserPrincipal() to work
-                    JWTSecurityContext ctx = new JWTSecurityContext(
-                                                    principal,
-                                                    requestContext.getSecurityContext().isSecure());
-                    requestContext.setSecurityContext(ctx);
-                } else {
-                    throw new NotAuthorizedException(
-                            "Unauthorized: Unable to extract claims from JWT",
-                            Response.status(Status.UNAUTHORIZED));
-                }
+                JWTPrincipal principal = authenticate(token, clientAddress());
+                metrics.count(Outcome.ACCEPTED);
+                // Build and inject JavaEE SecurityContext for @RoleAllowed, isUserInRole(), getUserPrincipal() to work
+                JWTSecurityContext ctx = new JWTSecurityContext(
+                                                principal,
+                                                requestContext.getSecurityContext().isSecure());
+                requestContext.setSecurityContext(ctx);
             } else {
+                metrics.count(Outcome.PARSE_ERROR);
                 throw new NotAuthorizedException(
                             "Unauthorized: Unable to parse Bearer token",
                             Response.status(Status.UNAUTHORIZED));
             }
         } else {
+            metrics.count(Outcome.MISSING_HEADER);
             throw new NotAuthorizedException(
                         "Unauthorized: No Authorization header was found",
                         Response.status(Status.UNAUTHORIZED));
         }
     }
 
+    /**
+     * Resolves the principal of a Bearer token.
+     * <ul>
+     *  <li>A token verified before is served from {@link VerifiedTokenCache} until it expires.</li>
+     *  <li>A token rejected recently is turned down again from {@link RejectedTokenCache}.</li>
+     *  <li>An opaque token goes to the {@link TokenIntrospector} if configured, through
+     *      the per client {@link VerificationBudget} unless the introspector has it cached.</li>
+     *  <li>Any other token goes through {@link TokenPreValidator}, the per client
+     *      {@link VerificationBudget} and then signature verification.</li>
+     * </ul>
+     * The outcome and the time spent in each phase are recorded in
+     * {@link AuthMetrics}.
+     *
+     * @param token
+     *            The JSON Web Token
+     * @param client
+     *            The client source address
+     * @return {@link JWTPrincipal} of the token
+     * @throws TokenRejectedException
+     *             if the token is not valid
+     */
+    private JWTPrincipal authenticate(final String token, final String client) {
+        String key = (tokenCache != null || rejectedCache != null) ? ExpiringTokenCache.hash(token) : null;
+        if (tokenCache != null) {
+            JWTPrincipal principal = tokenCache.get(key);
+            if (principal != null) {
+                log.trace("JWT found in verified token cache");
+                return principal;
+            }
+        }
+        if (rejectedCache != null) {
+            TokenRejectedException rejection = rejectedCache.getRejection(key);
+            if (rejection != null) {
+                log.trace("JWT found in rejected token cache: {}", rejection.getReason());
+                metrics.count(Outcome.of(rejection.getReason()));
+                throw rejection;
+            }
+        }
+
+        try {
+            if (introspector != null && token.indexOf('.') < 0) {
+                String introspectionKey = key != null ? key : ExpiringTokenCache.hash(token);
+                JWTPrincipal principal = introspector.getCached(introspectionKey);
+                if (principal == null) {
+                    acquireBudget(client);
+                    principal = introspector.introspect(introspectionKey, token);
+                }
+                return principal;
+            }
+
+            long start = System.nanoTime();
+            TokenInfo info = preValidator.validate(token);
+            IssuerPolicy policy = policyFor(info.getIssuer());
+            policy.checkAudience(info.getAudience());
+            SignedJWT signedJWT = parseToken(token);
+            long parsed = System.nanoTime();
+            metrics.record(Phase.PARSE, parsed - start);
+
+            acquireBudget(client);
+            long verifying = System.nanoTime();
+            validateToken(signedJWT, info.getIssuer());
+            metrics.record(Phase.VERIFY, System.nanoTime() - verifying);
+
+            JWTPrincipal principal = buildPrincipal(info.getPayload(), policy.getClaimsReader());
+            if (tokenCache != null) {
+                tokenCache.put(key, principal, info.getExpirationTime());
+            }
+            return principal;
+        } catch (TokenRejectedException e) {
+            metrics.count(Outcome.of(e.getReason()));
+            if (rejectedCache != null) {
+                rejectedCache.put(key, e);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Takes one permit from the {@link VerificationBudget} of a client, if
+     * configured.
+     *
+     * @param client
+     *            The client source address
+     * @throws WebApplicationException
+     *             with HTTP 429 if the budget of the client is exhausted
+     */
+    private void acquireBudget(final String client) {
+        if (verificationBudget != null && !verificationBudget.tryAcquire(client)) {
+            log.debug("Verification budget exhausted for client: {}", client);
+            metrics.count(Outcome.THROTTLED);
+            throw new WebApplicationException(
+                        "Too many token verifications",
+                        Response.status(STATUS_TOO_MANY_REQUESTS).header(HttpHeaders.RETRY_AFTER, 1).build());
+        }
+    }
+
+    /**
+     * @return The source address of the current request, "unknown" if not
+     *         available
+     */
+    private String clientAddress() {
+        String address = null;
+        try {
+            address = servletRequest != null ? servletRequest.getRemoteAddr() : null;
+        } catch (IllegalStateException e) {
+            log.trace("No servlet request bound to the current thread");
+        }
+        return address != null ? address : "unknown";
+    }
+
+    /**
+     * @param issuer
+     *            The "iss" claim of a token, may be null
+     * @return The {@link IssuerPolicy} of the issuer if listed, the default
+     *         policy otherwise
+     */
+    private IssuerPolicy policyFor(final String issuer) {
+        IssuerPolicy policy = issuer != null ? policies.get(issuer) : null;
+        return policy != null ? policy : defaultPolicy;
+    }
+
+    /**
+     * Builds the policy of an issuer from its properties, falling back to the
+     * top level ones, e.g. "api.security.issuer.partner.roles.claim" then
+     * "api.security.roles.claim".
+     *
+     * @param id
+     *            The issuer id, null for the default policy
+     * @return The {@link IssuerPolicy}
+     */
+    private static IssuerPolicy loadPolicy(final String id) {
+        String audience = KeyMaterial.getProperty(id, PROP_AUDIENCE, System.getProperty(PROP_AUDIENCE, ""));
+        String roles    = KeyMaterial.getProperty(id, PROP_ROLES_CLAIM,
+                                System.getProperty(PROP_ROLES_CLAIM, DEFAULT_ROLES_CLAIM));
+        String orgs     = KeyMaterial.getProperty(id, PROP_ORGANIZATIONS_CLAIM,
+                                System.getProperty(PROP_ORGANIZATIONS_CLAIM, DEFAULT_ORGANIZATIONS_CLAIM));
+
+        Set<String> audiences = new HashSet<>();
+        for (String value : audience.split(",")) {
+            if (!value.trim().isEmpty()) {
+                audiences.add(value.trim());
+            }
+        }
+        return new IssuerPolicy(audiences, new ClaimsReader(roles, orgs));
+    }
+
     /**
      * Creates a new instance of {@link JWTPrincipal} from JSON Web Token (JWT)
-     * claims.
+     * payload, with the claim mapping of the default policy.
+     *
+     * @param payload
+     *            The decoded JWT payload, verified by signature
+     * @return A new instance of {@link JWTPrincipal}
+     */
+    JWTPrincipal buildPrincipal(final byte[] payload) {
+        return buildPrincipal(payload, defaultPolicy.getClaimsReader());
+    }
+
+    /**
+     * Creates a new instance of {@link JWTPrincipal} from JSON Web Token (JWT)
+     * payload.
      *
      * <pre>
      * JWT: {
@@ -132,149 +430,115 @@ public class JWTRequestFilter implements ContainerRequestFilter {
      *    "email": "john.doe@idp.com",
           "name": "John Doe",
           "family_name": "Doe",
-          "given_name": "John"
+          "given_name": "John",
+          "realm_access": { "roles": ["USER"] },
+          "organizations": ["sixturtle"]
        }
      * </pre>
+     * <p>
+     * The principal keeps the decoded payload and reads the claims above with
+     * {@link ClaimsReader} on first access, e.g. a role check, skipping every
+     * other claim. The roles and organizations are then turned into a role
+     * mask once, so that the principal cached in {@link VerifiedTokenCache}
+     * serves every later role check. Claims which can not be read reject the
+     * token at that first access, and at every later one, with
+     * {@link Reason#INVALID_CLAIMS}.
+     * </p>
      *
-     * @param claims
-     *            The JWT claims set
-     * @return A new instance of {@link JWTPrincipal} from JSON Web Token (JWT)
-     *         claims
+     * @param payload
+     *            The decoded JWT payload, verified by signature
+     * @param claimsReader
+     *            The claim mapping of the token issuer
+     * @return A new instance of {@link JWTPrincipal}
      */
-    private JWTPrincipal buildPrincipal(final JWTClaimsSet claims) {
-        JWTPrincipal principal = null;
-
-        try {
-            if (claims != null) {
-                String subject   = claims.getSubject();
-                String email     = (String) claims.getClaim("email");
-                String firstName = (String) claims.getClaim("given_name");
-                String lastName  = (String) claims.getClaim("family_name");
-
-                // TODO: Extract custom attributes, e.g. roles, organization affiliation etc. and put into principal.
-
-                principal = new JWTPrincipal(subject, email, firstName, lastName);
-            }
-        } catch (Exception e) {
-            log.error(e.getMessage(), e);
-        }
-        return principal;
+    JWTPrincipal buildPrincipal(final byte[] payload, final ClaimsReader claimsReader) {
+        return new JWTPrincipal(payload, claimsReader);
     }
 
     /**
-     * Validate the JSON Web Token for signature, expiration and not before
-     * time.
+     * Parses a JSON Web Token which has passed {@link TokenPreValidator}.
      *
      * @param token
      *            The JSON Web Token
-     * @return {@link JWTClaimsSet} in case of success, null otherwise
+     * @return The {@link SignedJWT}
      */
-    private JWTClaimsSet validateToken(final String token) {
-        JWTClaimsSet claims = null;
-
+    SignedJWT parseToken(final String token) {
         try {
             JWT jwt = JWTParser.parse(token);
             if (jwt instanceof SignedJWT) {
-                SignedJWT signedJWT = (SignedJWT) jwt;
-                if (signedJWT.verify(jwsVerifier)) {
-                    claims = signedJWT.getJWTClaimsSet();
-                    log.trace("JWT claims: {}", claims.getClaims());
-
-                    Date expirationTime = claims.getExpirationTime();
-                    Date now = new Date();
-                    Date notBeforeTime = claims.getNotBeforeTime();
-                    if (notBeforeTime.compareTo(now) > 0) {
-                        throw new NotAuthorizedException(
-                                    "Unauthorized: too early, token not valid yet",
-                                    Response.status(Status.UNAUTHORIZED));
-                    }
-                    if (expirationTime.compareTo(now) <= 0) {
-                        throw new NotAuthorizedException(
-                                    "Unauthorized: too late, token expired",
-                                    Response.status(Status.UNAUTHORIZED));
-                    }
-                } else {
-                    throw new NotAuthorizedException(
-                                "Unauthorized: Unable to verify Bearer token",
-                                Response.status(Status.UNAUTHORIZED));
-                }
-            } else {
-                throw new NotAuthorizedException(
-                            "Unauthorized: Unexpected JWT type",
-                            Response.status(Status.UNAUTHORIZED));
+                return (SignedJWT) jwt;
             }
-        } catch (ParseException | JOSEException e) {
-            throw new NotAuthorizedException(
-                        e.getMessage(),
-                        Response.status(Status.UNAUTHORIZED),
-                        e);
+            throw new TokenRejectedException(Reason.MALFORMED, "Unauthorized: Unexpected JWT type");
+        } catch (ParseException e) {
+            throw new TokenRejectedException(Reason.MALFORMED, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Validate the JSON Web Token signature. The expiration and not before
+     * time have already been checked by {@link TokenPreValidator} on the same
+     * signed payload. The claims are not parsed here, see
+     * {@link #buildPrincipal(byte[], ClaimsReader)}.
+     *
+     * @param signedJWT
+     *            The parsed JSON Web Token
+     * @param issuer
+     *            The "iss" claim read by {@link TokenPreValidator}, may be null
+     * @throws TokenRejectedException
+     *             if the signature can not be verified
+     */
+    void validateToken(final SignedJWT signedJWT, final String issuer) {
+        try {
+            JWSVerifier jwsVerifier = verifiers.getVerifier(issuer, signedJWT.getHeader());
+            if (jwsVerifier == null) {
+                throw new TokenRejectedException(Reason.UNKNOWN_KEY, "Unauthorized: Unknown signing key");
+            }
+            if (!signedJWT.verify(jwsVerifier)) {
+                throw new TokenRejectedException(Reason.BAD_SIGNATURE, "Unauthorized: Unable to verify Bearer token");
+            }
+            log.trace("JWT signature verified, key id: {}", signedJWT.getHeader().getKeyID());
+        } catch (JOSEException e) {
+            throw new TokenRejectedException(Reason.BAD_SIGNATURE, e.getMessage(), e);
         }
-        return claims;
     }
 
     /**
-     * Extract Bearer token value from string "Bearer [value]".
+     * Extract Bearer token value from string "Bearer [value]". The scheme is
+     * matched case insensitively by scanning the string in place.
      *
      * @param bearerToken
      *            The Bearer token string of the form "Bearer [value]"
      * @return The value part of the token if scheme (prefix) matches with
      *         Bearer, null otherwise
      */
-    private String parseBearerToken(final String bearerToken) {
+    String parseBearerToken(final String bearerToken) {
         String tokenValue = null;
-        if (bearerToken  != null) {
-            String[] parts = bearerToken.split(" ");
-            if (parts.length == 2) {
-                String scheme       = parts[0];
-                String credentials  = parts[1];
-                if (tokenPattern.matcher(scheme).matches()) {
-                    tokenValue = credentials;
-                }
+        if (bearerToken != null) {
+            int begin = BEARER_SCHEME.length() + 1;
+            if (bearerToken.length() > begin
+                    && bearerToken.charAt(begin - 1) == ' '
+                    && bearerToken.regionMatches(true, 0, BEARER_SCHEME, 0, BEARER_SCHEME.length())
+                    && bearerToken.indexOf(' ', begin) < 0) {
+                tokenValue = bearerToken.substring(begin);
             }
         }
         return tokenValue;
     }
 
     /**
-     * Gets public key from a JKS keystore.
-     *
-     * @param keystoreFile
-     *            The keystore file pathname
-     * @param password
-     *            The keystore password
-     * @param alias
-     *            The key alias name
-     * @return {@link RSAPublicKey} for the alias if found, null otherwise
+     * @param values
+     *            The values, may be null
+     * @param value
+     *            The value to look for
+     * @return true if the values contain the value
      */
-    private PublicKey loadPublicKey(String keystoreFile, String password, String alias) {
-        PublicKey publicKey = null;
-        log.debug("Loading public key: {} from keystore: {}", alias, keystoreFile);
-        try {
-            KeyStore keystore = KeyStore.getInstance(KeyStore.getDefaultType());
-
-            File file = new File(keystoreFile);
-            InputStream is = null;
-            if (file.exists()) {
-                is = new BufferedInputStream(new FileInputStream(file));
-            } else {
-                is = getClass().getResourceAsStream(keystoreFile);
+    private static boolean contains(final String[] values, final String value) {
+        for (int iIndex = 0; values != null && iIndex < values.length; ++iIndex) {
+            if (values[iIndex].equals(value)) {
+                return true;
             }
-
-            if (is != null) {
-              keystore.load(is, password.toCharArray());
-              Certificate cert = keystore.getCertificate(alias);
-              if (cert != null) {
-                  publicKey = cert.getPublicKey();
-              } else {
-                  log.error("Invalid key alias provided, key not found");
-              }
-            } else {
-                log.error("Unable to load keystore file: {}", keystoreFile);
-            }
-        } catch (Exception e) {
-            log.error(e.getMessage(), e);
         }
-        return publicKey;
+        return false;
     }
 
     /**
@@ -292,6 +556,13 @@ public class JWTRequestFilter implements ContainerRequestFilter {
         private String lastName;
         private String[] organizations;
         private String[] roles;
+        private long     roleMask;
+
+        // set until the claims are read from the payload on first access
+        private byte[]                 payload;
+        private ClaimsReader           reader;
+        private TokenRejectedException rejection;
+        private volatile boolean       materialized;
 
         /**
          * Init {@link JWTPrincipal}.
@@ -316,6 +587,57 @@ public class JWTRequestFilter implements ContainerRequestFilter {
             this.email          = email;
             this.firstName      = firstName;
             this.lastName       = lastName;
+            this.materialized   = true;
+        }
+
+        /**
+         * Init a {@link JWTPrincipal} whose claims are read from the verified
+         * token payload on first access only.
+         *
+         * @param payload
+         *            The decoded JWT payload JSON
+         * @param reader
+         *            The {@link ClaimsReader}
+         */
+        JWTPrincipal(final byte[] payload, final ClaimsReader reader) {
+            this.payload = payload;
+            this.reader  = reader;
+        }
+
+        /**
+         * Reads the claims from the payload if not done yet, then drops the
+         * payload.
+         *
+         * @throws TokenRejectedException
+         *             if the claims can not be read
+         */
+        private void materialize() {
+            if (!materialized) {
+                synchronized (this) {
+                    if (!materialized) {
+                        try {
+                            ClaimsReader.Claims claims = reader.read(payload);
+                            name          = claims.getSubject();
+                            email         = claims.getEmail();
+                            firstName     = claims.getGivenName();
+                            lastName      = claims.getFamilyName();
+                            roles         = claims.getRoles();
+                            organizations = claims.getOrganizations();
+                            updateRoleMask();
+                        } catch (IOException e) {
+                            log.debug("Unable to read JWT claims: {}", e.getMessage(), e);
+                            rejection = new TokenRejectedException(Reason.INVALID_CLAIMS, "Unauthorized: Invalid JWT claims", e);
+                        }
+                        payload      = null;
+                        reader       = null;
+                        materialized = true;
+                    }
+                }
+            }
+            if (rejection != null) {
+                metrics.count(Outcome.INVALID_CLAIMS);
+                throw rejection;
+            }
         }
 
         /* (non-Javadoc)
@@ -323,12 +645,14 @@ public class JWTRequestFilter implements ContainerRequestFilter {
          */
         @Override
         public String getName() {
+            materialize();
             return name;
         }
         /**
          * @param name the name to set
          */
         public void setName(String name) {
+            materialize();
             this.name = name;
         }
 
@@ -336,6 +660,7 @@ public class JWTRequestFilter implements ContainerRequestFilter {
          * @return the email
          */
         public String getEmail() {
+            materialize();
             return email;
         }
 
@@ -343,6 +668,7 @@ public class JWTRequestFilter implements ContainerRequestFilter {
          * @param email the email to set
          */
         public void setEmail(String email) {
+            materialize();
             this.email = email;
         }
 
@@ -350,6 +676,7 @@ public class JWTRequestFilter implements ContainerRequestFilter {
          * @return the firstName
          */
         public String getFirstName() {
+            materialize();
             return firstName;
         }
 
@@ -357,6 +684,7 @@ public class JWTRequestFilter implements ContainerRequestFilter {
          * @param firstName the firstName to set
          */
         public void setFirstName(String firstName) {
+            materialize();
             this.firstName = firstName;
         }
 
@@ -364,6 +692,7 @@ public class JWTRequestFilter implements ContainerRequestFilter {
          * @return the lastName
          */
         public String getLastName() {
+            materialize();
             return lastName;
         }
 
@@ -371,6 +700,7 @@ public class JWTRequestFilter implements ContainerRequestFilter {
          * @param lastName the lastName to set
          */
         public void setLastName(String lastName) {
+            materialize();
             this.lastName = lastName;
         }
 
@@ -378,6 +708,7 @@ public class JWTRequestFilter implements ContainerRequestFilter {
          * @return the organizations
          */
         public String[] getOrganizations() {
+            materialize();
             return organizations;
         }
 
@@ -385,13 +716,16 @@ public class JWTRequestFilter implements ContainerRequestFilter {
          * @param organizations the organizations to set
          */
         public void setOrganizations(String[] organizations) {
+            materialize();
             this.organizations = organizations;
+            updateRoleMask();
         }
 
         /**
          * @return the roles
          */
         public String[] getRoles() {
+            materialize();
             return roles;
         }
 
@@ -399,7 +733,40 @@ public class JWTRequestFilter implements ContainerRequestFilter {
          * @param roles the roles to set
          */
         public void setRoles(String[] roles) {
+            materialize();
             this.roles = roles;
+            updateRoleMask();
+        }
+
+        /**
+         * @return the bits of the roles and organizations registered in
+         *         {@link RoleDictionary}
+         */
+        public long getRoleMask() {
+            materialize();
+            return roleMask;
+        }
+
+        /**
+         * @param role
+         *            The role or organization name
+         * @return true if the principal has the role
+         */
+        public boolean hasRole(final String role) {
+            materialize();
+            long mask = RoleDictionary.getInstance().maskOf(role);
+            if (mask != 0L) {
+                return (roleMask & mask) != 0L;
+            }
+            return contains(roles, role) || contains(organizations, role);
+        }
+
+        /**
+         * Recomputes the role mask from the roles and organizations.
+         */
+        private void updateRoleMask() {
+            RoleDictionary dictionary = RoleDictionary.getInstance();
+            roleMask = dictionary.maskOf(roles) | dictionary.maskOf(organizations);
         }
 
         /* (non-Javadoc)
@@ -407,6 +774,7 @@ public class JWTRequestFilter implements ContainerRequestFilter {
          */
         @Override
         public String toString() {
+            materialize();
             StringBuilder builder = new StringBuilder();
             builder.append("JWTPrincipal {")
                    .append("name:").append(name).append(",")
@@ -426,7 +794,6 @@ public class JWTRequestFilter implements ContainerRequestFilter {
     public static class JWTSecurityContext implements SecurityContext {
         private JWTPrincipal principal;
         private boolean      isSecure;
-        private Set<String>  roles = new HashSet<>();
 
         /**
          * Init context.
@@ -439,15 +806,7 @@ public class JWTRequestFilter implements ContainerRequestFilter {
         public JWTSecurityContext(final JWTPrincipal principal, final boolean isSecure) {
             this.principal  = principal;
             this.isSecure   = isSecure;
-            String[] names  = principal.getRoles();
-            for (int iIndex = 0; names != null && iIndex < names.length; ++iIndex) {
-                roles.add(names[iIndex]);
-            }
-            names = principal.getOrganizations();
-            for (int iIndex = 0; names != null && iIndex < names.length; ++iIndex) {
-                roles.add(names[iIndex]);
-            }
-            log.trace("JWTSecurityContext() - principal: {}, roles: {}, isSecure: {}", principal, roles, isSecure);
+            log.trace("JWTSecurityContext() - principal: {}, isSecure: {}", principal, isSecure);
         }
 
         /*
@@ -483,7 +842,16 @@ public class JWTRequestFilter implements ContainerRequestFilter {
          */
         @Override
         public boolean isUserInRole(final String role) {
-            return roles.contains(role);
+            return principal.hasRole(role);
+        }
+
+        /**
+         * @param mask
+         *            The bits of the allowed roles, see {@link RoleDictionary}
+         * @return true if the principal has any of the roles
+         */
+        public boolean hasAnyRole(final long mask) {
+            return (principal.getRoleMask() & mask) != 0L;
         }
 
         /* (non-Javadoc)
@@ -494,7 +862,6 @@ public class JWTRequestFilter implements ContainerRequestFilter {
             StringBuilder builder = new StringBuilder();
             builder.append("JWTSecurityContext {")
                    .append("principal:").append(principal).append(",")
-                   .append("roles:").append(roles).append(",")
                    .append("isSecure:").append(isSecure)
                    .append("}");
             return builder.toString();
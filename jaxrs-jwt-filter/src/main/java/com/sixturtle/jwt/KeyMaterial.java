@@ -0,0 +1,264 @@
+package com.sixturtle.jwt;
+
+import static com.sixturtle.jwt.JWTRequestFilter.PROP_HMAC_ISSUER;
+import static com.sixturtle.jwt.JWTRequestFilter.PROP_HMAC_SECRET;
+import static com.sixturtle.jwt.JWTRequestFilter.PROP_ISSUERS;
+import static com.sixturtle.jwt.JWTRequestFilter.PROP_JWKS_REFRESH;
+import static com.sixturtle.jwt.JWTRequestFilter.PROP_JWKS_URL;
+import static com.sixturtle.jwt.JWTRequestFilter.PROP_JWT_ALGORITHMS;
+import static com.sixturtle.jwt.JWTRequestFilter.PROP_SECURITY_KEYSTORE;
+import static com.sixturtle.jwt.JWTRequestFilter.PROP_SECURITY_KEY_ALIAS;
+import static com.sixturtle.jwt.JWTRequestFilter.PROP_SECURITY_PASSWORD;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.servlet.ServletContext;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.nimbusds.jose.JWSAlgorithm;
+
+/**
+ * Holds the key material of the deployment, i.e. the {@link VerifierRegistry}
+ * built from the system properties.
+ * <p>
+ * The container may create {@link JWTRequestFilter} more than once, so the
+ * keystore or JWK Set is loaded once per deployment by
+ * {@link KeyMaterialListener}, which keeps it as a {@link ServletContext}
+ * attribute shared by all the filter instances, and closes it when the
+ * application is undeployed. Key changes after startup are picked up by the
+ * resolvers themselves: {@link KeystoreKeyResolver} watches the keystore file
+ * and {@link JWKSKeyResolver} refreshes the key set, each with its own thread
+ * which {@link #close()} stops.
+ * </p>
+ * <p>
+ * Each issuer listed in "api.security.issuers" gets its own resolver,
+ * registered for its "iss" value only, from the same properties prefixed by
+ * "api.security.issuer.&lt;id&gt;.", e.g.
+ * "api.security.issuer.partner.jwks.url". The top level keystore or JWK Set
+ * then serves the tokens of other issuers, if configured explicitly.
+ * </p>
+ */
+public final class KeyMaterial implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(KeyMaterial.class);
+
+    /**
+     * Name of the {@link ServletContext} attribute holding the key material.
+     */
+    public static final String ATTRIBUTE = KeyMaterial.class.getName();
+
+    private static final String DEFAULT_KEYSTORE_KEY_ALIAS = "jwt";
+    private static final String DEFAULT_KEYSTORE_PASSWORD  = "changeit";
+    private static final String DEFAULT_KEYSTORE           = "secure-keystore.jks";
+    private static final long   DEFAULT_JWKS_REFRESH       = 300;
+    private static final String DEFAULT_JWT_ALGORITHMS     = "RS256,RS384,RS512,ES256,ES384,ES512";
+
+    private static final String PROP_PREFIX        = "api.security.";
+    private static final String PROP_ISSUER_PREFIX = "api.security.issuer.";
+    private static final String PROP_ISSUER_ISS    = "iss";
+
+    private final VerifierRegistry verifiers = new VerifierRegistry();
+    private final List<Closeable>  resolvers = new ArrayList<>();
+
+    /**
+     * Hidden, use {@link #load()}.
+     */
+    private KeyMaterial() {
+    }
+
+    /**
+     * Builds the verifiers from the system properties.
+     *
+     * @return The new {@link KeyMaterial}, to be closed by the caller
+     * @throws Exception
+     *             in case of error loading the key material
+     */
+    public static KeyMaterial load() throws Exception {
+        KeyMaterial keyMaterial = new KeyMaterial();
+        try {
+            keyMaterial.register();
+        } catch (Exception e) {
+            keyMaterial.close();
+            throw e;
+        }
+        return keyMaterial;
+    }
+
+    /**
+     * @param servletContext
+     *            The context of the application
+     * @return The key material loaded by {@link KeyMaterialListener}
+     */
+    public static KeyMaterial get(final ServletContext servletContext) {
+        KeyMaterial keyMaterial = (KeyMaterial) servletContext.getAttribute(ATTRIBUTE);
+        if (keyMaterial == null) {
+            throw new IllegalStateException("Configuration error: " + KeyMaterialListener.class.getName() + " is not registered");
+        }
+        return keyMaterial;
+    }
+
+    /**
+     * @return The {@link VerifierRegistry} of the deployment
+     */
+    public VerifierRegistry getVerifiers() {
+        return verifiers;
+    }
+
+    /**
+     * Stops the keystore watchers and the JWK Set refreshes.
+     */
+    @Override
+    public void close() {
+        for (Closeable resolver : resolvers) {
+            try {
+                resolver.close();
+            } catch (IOException e) {
+                log.warn("Unable to close key resolver: {}", resolver, e);
+            }
+        }
+        resolvers.clear();
+    }
+
+    /**
+     * Registers the resolvers configured by the system properties.
+     *
+     * @throws Exception
+     *             in case of error loading the key material
+     */
+    private void register() throws Exception {
+        String[] issuerIds = getIssuerIds();
+        for (String id : issuerIds) {
+            String iss = getIssuer(id);
+            verifiers.register(
+                        iss,
+                        loadResolver(id),
+                        toAlgorithms(getProperty(id, PROP_JWT_ALGORITHMS, System.getProperty(PROP_JWT_ALGORITHMS, DEFAULT_JWT_ALGORITHMS))));
+        }
+        if (issuerIds.length == 0
+                || System.getProperty(PROP_JWKS_URL) != null
+                || System.getProperty(PROP_SECURITY_KEYSTORE) != null) {
+            verifiers.register(
+                        VerifierRegistry.ANY_ISSUER,
+                        loadResolver(null),
+                        toAlgorithms(System.getProperty(PROP_JWT_ALGORITHMS, DEFAULT_JWT_ALGORITHMS)));
+        }
+
+        String hmacSecret = System.getProperty(PROP_HMAC_SECRET);
+        if (hmacSecret != null) {
+            String hmacIssuer = System.getProperty(PROP_HMAC_ISSUER);
+            if (hmacIssuer == null || VerifierRegistry.ANY_ISSUER.equals(hmacIssuer)) {
+                throw new RuntimeException("Configuration error: " + PROP_HMAC_ISSUER + " is required with " + PROP_HMAC_SECRET);
+            }
+            verifiers.register(hmacIssuer, new HMACKeyResolver(hmacSecret), JWSAlgorithm.HS256);
+        }
+    }
+
+    /**
+     * @return The ids of the issuers listed in "api.security.issuers", empty
+     *         if none
+     */
+    static String[] getIssuerIds() {
+        String ids = System.getProperty(PROP_ISSUERS);
+        return ids == null || ids.trim().isEmpty() ? new String[0] : ids.trim().split("\\s*,\\s*");
+    }
+
+    /**
+     * @param id
+     *            The issuer id
+     * @return The "iss" value of the issuer
+     */
+    static String getIssuer(final String id) {
+        String iss = System.getProperty(PROP_ISSUER_PREFIX + id + "." + PROP_ISSUER_ISS);
+        if (iss == null) {
+            throw new RuntimeException("Configuration error: " + PROP_ISSUER_PREFIX + id + "." + PROP_ISSUER_ISS + " is required");
+        }
+        return iss;
+    }
+
+    /**
+     * Reads the issuer specific variant of a property, e.g.
+     * "api.security.issuer.partner.jwks.url" for "api.security.jwks.url".
+     *
+     * @param id
+     *            The issuer id, null for the top level property
+     * @param property
+     *            The top level property name
+     * @param defaultValue
+     *            The value if the property is not set
+     * @return The property value
+     */
+    static String getProperty(final String id, final String property, final String defaultValue) {
+        if (id == null) {
+            return System.getProperty(property, defaultValue);
+        }
+        return System.getProperty(PROP_ISSUER_PREFIX + id + "." + property.substring(PROP_PREFIX.length()), defaultValue);
+    }
+
+    /**
+     * Builds the resolver of an issuer, or the top level one, and keeps it
+     * for {@link #close()}.
+     *
+     * @param id
+     *            The issuer id, null for the top level resolver
+     * @return The {@link KeyResolver}
+     * @throws Exception
+     *             in case of error loading the key material
+     */
+    private KeyResolver loadResolver(final String id) throws Exception {
+        String jwksUrl = getProperty(id, PROP_JWKS_URL, null);
+        if (jwksUrl != null) {
+            long refresh = Long.parseLong(getProperty(id, PROP_JWKS_REFRESH, String.valueOf(Long.getLong(PROP_JWKS_REFRESH, DEFAULT_JWKS_REFRESH))));
+            JWKSKeyResolver resolver = new JWKSKeyResolver(toURL(jwksUrl), refresh);
+            resolvers.add(resolver);
+            return resolver;
+        }
+        String keystore = getProperty(id, PROP_SECURITY_KEYSTORE,  id == null ? DEFAULT_KEYSTORE : null);
+        String password = getProperty(id, PROP_SECURITY_PASSWORD,  DEFAULT_KEYSTORE_PASSWORD);
+        String alias    = getProperty(id, PROP_SECURITY_KEY_ALIAS, DEFAULT_KEYSTORE_KEY_ALIAS);
+        if (keystore == null) {
+            throw new RuntimeException("Configuration error: no JWK Set or keystore for issuer: " + id);
+        }
+        KeystoreKeyResolver resolver = new KeystoreKeyResolver(keystore, password, alias);
+        resolvers.add(resolver);
+        return resolver;
+    }
+
+    /**
+     * Parses a comma separated list of "alg" values.
+     *
+     * @param names
+     *            The algorithm names, e.g. "RS256,ES256"
+     * @return The {@link JWSAlgorithm}s
+     */
+    private static JWSAlgorithm[] toAlgorithms(final String names) {
+        String[] parts = names.split(",");
+        JWSAlgorithm[] algorithms = new JWSAlgorithm[parts.length];
+        for (int iIndex = 0; iIndex < parts.length; ++iIndex) {
+            algorithms[iIndex] = JWSAlgorithm.parse(parts[iIndex].trim());
+        }
+        return algorithms;
+    }
+
+    /**
+     * Converts a URL or a plain file path into a {@link URL}.
+     *
+     * @param location
+     *            The URL or file path
+     * @return The {@link URL}
+     * @throws MalformedURLException
+     *             in case of invalid URL
+     */
+    private static URL toURL(final String location) throws MalformedURLException {
+        if (location.indexOf(':') > 1) {
+            return new URL(location);
+        }
+        return new File(location).toURI().toURL();
+    }
+}
@@ -0,0 +1,42 @@
+package com.sixturtle.jwt;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+/**
+ * Loads the {@link KeyMaterial} of the deployment when the application starts
+ * and closes it when the application is undeployed, so that the keystore
+ * watcher and JWK Set refresh threads do not outlive the deployment.
+ * <p>
+ * Registered in web.xml, ahead of the JAX-RS providers which read the key
+ * material from the {@link javax.servlet.ServletContext}.
+ * </p>
+ */
+public class KeyMaterialListener implements ServletContextListener {
+
+    /*
+     * (non-Javadoc)
+     * @see javax.servlet.ServletContextListener#contextInitialized(javax.servlet.ServletContextEvent)
+     */
+    @Override
+    public void contextInitialized(final ServletContextEvent event) {
+        try {
+            event.getServletContext().setAttribute(KeyMaterial.ATTRIBUTE, KeyMaterial.load());
+        } catch (Exception e) {
+            throw new RuntimeException("Unable to load the key material", e);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see javax.servlet.ServletContextListener#contextDestroyed(javax.servlet.ServletContextEvent)
+     */
+    @Override
+    public void contextDestroyed(final ServletContextEvent event) {
+        KeyMaterial keyMaterial = (KeyMaterial) event.getServletContext().getAttribute(KeyMaterial.ATTRIBUTE);
+        if (keyMaterial != null) {
+            event.getServletContext().removeAttribute(KeyMaterial.ATTRIBUTE);
+            keyMaterial.close();
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.sixturtle.jwt;
+
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSVerifier;
+
+/**
+ * Resolves the {@link JWSVerifier} to be used for checking the signature of a
+ * JSON Web Token. Implementations are called for every request which is not
+ * served from {@link VerifiedTokenCache}, so the lookup must be cheap and must
+ * never block on key loading.
+ */
+public interface KeyResolver {
+    /**
+     * Finds the verifier for the key which signed a token.
+     *
+     * @param header
+     *            The JWS header of the token, e.g. carrying "kid" and "alg"
+     * @return The {@link JWSVerifier} for the signing key if known, null
+     *         otherwise
+     */
+    JWSVerifier getVerifier(JWSHeader header);
+}
@@ -0,0 +1,209 @@
+package com.sixturtle.jwt;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.KeyStore;
+import java.security.PublicKey;
+import java.security.cert.Certificate;
+import java.security.interfaces.RSAPublicKey;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSVerifier;
+
+/**
+ * A {@link KeyResolver} backed by a single certificate in a JKS keystore. The
+ * same verifier is returned for every token regardless of its "kid" header.
+ * <p>
+ * When the keystore is a file, its directory is watched and the verifier is
+ * rebuilt as soon as the file is replaced, e.g. by a certificate renewal. The
+ * new verifier is published with a single volatile write; if the new keystore
+ * can not be loaded the current verifier is kept.
+ * </p>
+ */
+public class KeystoreKeyResolver implements KeyResolver, Closeable {
+    private static final Logger log = LoggerFactory.getLogger(KeystoreKeyResolver.class);
+
+    private final String       keystoreFile;
+    private final String       password;
+    private final String       alias;
+    private final WatchService watcher;
+
+    private volatile JWSVerifier jwsVerifier;
+
+    /**
+     * Loads the signing public key from a keystore and starts watching the
+     * keystore file.
+     *
+     * @param keystoreFile
+     *            The keystore file pathname or class path resource
+     * @param password
+     *            The keystore password
+     * @param alias
+     *            The key alias name
+     */
+    public KeystoreKeyResolver(final String keystoreFile, final String password, final String alias) {
+        this.keystoreFile = keystoreFile;
+        this.password     = password;
+        this.alias        = alias;
+
+        PublicKey publicKey = loadPublicKey(keystoreFile, password, alias);
+        if (publicKey != null) {
+            jwsVerifier = new PooledRSASSAVerifier((RSAPublicKey) publicKey);
+        } else {
+            throw new RuntimeException("Configuration error: unable to load JWT signing public key from keystore: " + keystoreFile);
+        }
+
+        File file = new File(keystoreFile);
+        watcher = file.exists() ? watch(file.getAbsoluteFile().toPath()) : null;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see com.sixturtle.jwt.KeyResolver#getVerifier(com.nimbusds.jose.JWSHeader)
+     */
+    @Override
+    public JWSVerifier getVerifier(final JWSHeader header) {
+        return jwsVerifier;
+    }
+
+    /**
+     * Stops watching the keystore file.
+     */
+    @Override
+    public void close() {
+        if (watcher != null) {
+            try {
+                watcher.close();
+            } catch (IOException e) {
+                log.warn("Unable to stop watching keystore: {}", keystoreFile, e);
+            }
+        }
+    }
+
+    /**
+     * Starts a daemon thread reloading the keystore whenever its file is
+     * created or modified.
+     *
+     * @param path
+     *            The absolute keystore path
+     * @return The {@link WatchService}, null if the file can not be watched
+     */
+    private WatchService watch(final Path path) {
+        try {
+            WatchService service = FileSystems.getDefault().newWatchService();
+            path.getParent().register(
+                    service,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+
+            Thread t = new Thread(() -> watchLoop(service, path.getFileName()), "keystore-watch");
+            t.setDaemon(true);
+            t.start();
+            return service;
+        } catch (IOException e) {
+            log.warn("Unable to watch keystore: {}, certificate changes need a redeploy", keystoreFile, e);
+            return null;
+        }
+    }
+
+    /**
+     * Waits for changes of the keystore file until the watch service is
+     * closed.
+     *
+     * @param service
+     *            The {@link WatchService}
+     * @param fileName
+     *            The keystore file name within the watched directory
+     */
+    private void watchLoop(final WatchService service, final Path fileName) {
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    changed |= fileName.equals(event.context());
+                }
+                key.reset();
+                if (changed) {
+                    reload();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            log.debug("Stopped watching keystore: {}", keystoreFile);
+        }
+    }
+
+    /**
+     * Rebuilds the verifier from the keystore, keeping the current one in case
+     * of error.
+     */
+    private void reload() {
+        PublicKey publicKey = loadPublicKey(keystoreFile, password, alias);
+        if (publicKey instanceof RSAPublicKey) {
+            jwsVerifier = new PooledRSASSAVerifier((RSAPublicKey) publicKey);
+            log.info("Reloaded JWT signing public key: {} from keystore: {}", alias, keystoreFile);
+        } else {
+            log.error("Unable to reload keystore: {}, keeping current key", keystoreFile);
+        }
+    }
+
+    /**
+     * Gets public key from a JKS keystore.
+     *
+     * @param keystoreFile
+     *            The keystore file pathname
+     * @param password
+     *            The keystore password
+     * @param alias
+     *            The key alias name
+     * @return {@link RSAPublicKey} for the alias if found, null otherwise
+     */
+    private PublicKey loadPublicKey(String keystoreFile, String password, String alias) {
+        PublicKey publicKey = null;
+        log.debug("Loading public key: {} from keystore: {}", alias, keystoreFile);
+        try {
+            KeyStore keystore = KeyStore.getInstance(KeyStore.getDefaultType());
+
+            File file = new File(keystoreFile);
+            InputStream is = null;
+            if (file.exists()) {
+                is = new BufferedInputStream(new FileInputStream(file));
+            } else {
+                is = getClass().getResourceAsStream(keystoreFile);
+            }
+
+            if (is != null) {
+                try {
+                    keystore.load(is, password.toCharArray());
+                } finally {
+                    is.close();
+                }
+                Certificate cert = keystore.getCertificate(alias);
+                if (cert != null) {
+                    publicKey = cert.getPublicKey();
+                } else {
+                    log.error("Invalid key alias provided, key not found");
+                }
+            } else {
+                log.error("Unable to load keystore file: {}", keystoreFile);
+            }
+        } catch (Exception e) {
+            log.error(e.getMessage(), e);
+        }
+        return publicKey;
+    }
+}
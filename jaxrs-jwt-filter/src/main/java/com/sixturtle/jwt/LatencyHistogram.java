@@ -0,0 +1,92 @@
+package com.sixturtle.jwt;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A latency histogram with fixed buckets, from 5 microseconds to 100
+ * milliseconds, recorded without locks or allocation.
+ * <p>
+ * Each bucket is a {@link LongAdder}, which stripes its count across cells
+ * under contention, so concurrent request threads recording the same bucket do
+ * not fight over one cache line. Buckets hold non cumulative counts; they are
+ * summed up when the histogram is written out.
+ * </p>
+ */
+public class LatencyHistogram {
+    private static final long[] BOUNDS_NANOS = {
+        TimeUnit.MICROSECONDS.toNanos(5),
+        TimeUnit.MICROSECONDS.toNanos(10),
+        TimeUnit.MICROSECONDS.toNanos(25),
+        TimeUnit.MICROSECONDS.toNanos(50),
+        TimeUnit.MICROSECONDS.toNanos(100),
+        TimeUnit.MICROSECONDS.toNanos(250),
+        TimeUnit.MICROSECONDS.toNanos(500),
+        TimeUnit.MILLISECONDS.toNanos(1),
+        TimeUnit.MICROSECONDS.toNanos(2500),
+        TimeUnit.MILLISECONDS.toNanos(5),
+        TimeUnit.MILLISECONDS.toNanos(10),
+        TimeUnit.MILLISECONDS.toNanos(25),
+        TimeUnit.MILLISECONDS.toNanos(50),
+        TimeUnit.MILLISECONDS.toNanos(100)
+    };
+    private static final String[] BOUNDS_SECONDS = new String[BOUNDS_NANOS.length];
+    static {
+        for (int iIndex = 0; iIndex < BOUNDS_NANOS.length; ++iIndex) {
+            BOUNDS_SECONDS[iIndex] = BigDecimal.valueOf(BOUNDS_NANOS[iIndex], 9).stripTrailingZeros().toPlainString();
+        }
+    }
+
+    // one more bucket for the values above the last bound
+    private final LongAdder[] buckets = new LongAdder[BOUNDS_NANOS.length + 1];
+    private final LongAdder   sumNanos = new LongAdder();
+
+    /**
+     * Init an empty histogram.
+     */
+    public LatencyHistogram() {
+        for (int iIndex = 0; iIndex < buckets.length; ++iIndex) {
+            buckets[iIndex] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records one measure.
+     *
+     * @param nanos
+     *            The elapsed time in nanoseconds
+     */
+    public void record(final long nanos) {
+        int index = 0;
+        while (index < BOUNDS_NANOS.length && nanos > BOUNDS_NANOS[index]) {
+            ++index;
+        }
+        buckets[index].increment();
+        sumNanos.add(nanos);
+    }
+
+    /**
+     * Writes the histogram in Prometheus text format, without the HELP and
+     * TYPE lines.
+     *
+     * @param out
+     *            The output
+     * @param name
+     *            The metric name, e.g. "jwt_auth_phase_seconds"
+     * @param labels
+     *            The labels of the histogram, e.g. phase="verify"
+     */
+    public void writeTo(final StringBuilder out, final String name, final String labels) {
+        long count = 0;
+        for (int iIndex = 0; iIndex < buckets.length; ++iIndex) {
+            count += buckets[iIndex].sum();
+            String bound = iIndex < BOUNDS_SECONDS.length ? BOUNDS_SECONDS[iIndex] : "+Inf";
+            out.append(name).append("_bucket{").append(labels).append(",le=\"").append(bound).append("\"} ")
+               .append(count).append('\n');
+        }
+        out.append(name).append("_sum{").append(labels).append("} ")
+           .append(BigDecimal.valueOf(sumNanos.sum(), 9).toPlainString()).append('\n');
+        out.append(name).append("_count{").append(labels).append("} ").append(count).append('\n');
+    }
+}
@@ -0,0 +1,27 @@
+package com.sixturtle.jwt;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.Response;
+
+/**
+ * Exposes {@link AuthMetrics} in Prometheus text format for scraping.
+ * <p>
+ * The endpoint is not {@link JWTSecured} since scrapers do not carry tokens;
+ * restrict it at the network level if needed.
+ * </p>
+ */
+@Path("/metrics")
+public class MetricsAPI {
+    public static final String PROMETHEUS_TEXT = "text/plain; version=0.0.4; charset=utf-8";
+
+    /**
+     * @return the authentication metrics
+     */
+    @GET
+    @Produces(PROMETHEUS_TEXT)
+    public Response metrics() {
+        return Response.ok().entity(AuthMetrics.getInstance().toPrometheus()).build();
+    }
+}
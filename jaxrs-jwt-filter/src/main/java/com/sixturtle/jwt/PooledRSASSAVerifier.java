@@ -0,0 +1,96 @@
+package com.sixturtle.jwt;
+
+import java.security.GeneralSecurityException;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.RSASSAVerifier;
+import com.nimbusds.jose.util.Base64URL;
+
+/**
+ * An {@link RSASSAVerifier} which reuses {@link Signature} objects already
+ * initialized with its public key for RS256, RS384 and RS512.
+ * <p>
+ * The stock verifier looks up a new {@link Signature} through the JCA provider
+ * list on every call, which takes synchronized sections and shows up as lock
+ * contention under many request threads. Here each algorithm has a lock-free
+ * pool of initialized instances; a {@link Signature} resets itself after
+ * {@code verify} so it can serve the next token right away. A pool never
+ * holds more instances than the peak number of concurrent verifications. It
+ * belongs to the verifier, so a rotated key, which comes with a new verifier,
+ * starts with a fresh pool, and unlike a thread local nothing outlives a
+ * redeploy in the container threads.
+ * </p>
+ * <p>
+ * Other RSA algorithms (PS256...) and tokens with "crit" parameters are left
+ * to the stock implementation.
+ * </p>
+ */
+public class PooledRSASSAVerifier extends RSASSAVerifier {
+    private final Queue<Signature> rs256 = new ConcurrentLinkedQueue<>();
+    private final Queue<Signature> rs384 = new ConcurrentLinkedQueue<>();
+    private final Queue<Signature> rs512 = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Init the verifier.
+     *
+     * @param publicKey
+     *            The RSA public key
+     */
+    public PooledRSASSAVerifier(final RSAPublicKey publicKey) {
+        super(publicKey);
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see com.nimbusds.jose.crypto.RSASSAVerifier#verify(com.nimbusds.jose.JWSHeader, byte[], com.nimbusds.jose.util.Base64URL)
+     */
+    @Override
+    public boolean verify(
+            final JWSHeader header,
+            final byte[] signedContent,
+            final Base64URL signature) throws JOSEException {
+        JWSAlgorithm algorithm = header.getAlgorithm();
+        Queue<Signature> pool;
+        String           jcaName;
+        if (JWSAlgorithm.RS256.equals(algorithm)) {
+            pool    = rs256;
+            jcaName = "SHA256withRSA";
+        } else if (JWSAlgorithm.RS384.equals(algorithm)) {
+            pool    = rs384;
+            jcaName = "SHA384withRSA";
+        } else if (JWSAlgorithm.RS512.equals(algorithm)) {
+            pool    = rs512;
+            jcaName = "SHA512withRSA";
+        } else {
+            return super.verify(header, signedContent, signature);
+        }
+        if (header.getCriticalParams() != null && !header.getCriticalParams().isEmpty()) {
+            return super.verify(header, signedContent, signature);
+        }
+
+        Signature verifier = pool.poll();
+        try {
+            if (verifier == null) {
+                verifier = Signature.getInstance(jcaName);
+                verifier.initVerify(getPublicKey());
+            }
+            verifier.update(signedContent);
+            boolean valid = verifier.verify(signature.decode());
+            pool.offer(verifier);
+            return valid;
+        } catch (SignatureException e) {
+            // e.g. a signature of the wrong length, the instance is not pooled again
+            return false;
+        } catch (GeneralSecurityException e) {
+            // the instance may be left in an unknown state, it is not pooled again
+            throw new JOSEException("RSA signature verification failed: " + e.getMessage(), e);
+        }
+    }
+}
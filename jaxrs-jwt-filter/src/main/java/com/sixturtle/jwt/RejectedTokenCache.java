@@ -0,0 +1,57 @@
+package com.sixturtle.jwt;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A short lived cache of JSON Web Tokens which have been rejected, along with
+ * the reason of rejection. A client retrying in a loop with the same bad token
+ * is then turned down at the cost of a lookup instead of a parse and a
+ * signature verification.
+ * <p>
+ * Only rejections which can not change over time are cached, see
+ * {@link TokenRejectedException.Reason#isCacheable()}.
+ * </p>
+ */
+public class RejectedTokenCache extends ExpiringTokenCache<TokenRejectedException> {
+    private final long ttlMillis;
+
+    /**
+     * Creates a cache which holds at most {@code maxEntries} rejected tokens.
+     *
+     * @param maxEntries
+     *            The maximum number of cached tokens, must be positive
+     * @param ttlSeconds
+     *            How long a rejection is remembered
+     */
+    public RejectedTokenCache(final int maxEntries, final long ttlSeconds) {
+        super(maxEntries);
+        this.ttlMillis = TimeUnit.SECONDS.toMillis(ttlSeconds);
+    }
+
+    /**
+     * Remembers the rejection of a token if its reason is cacheable.
+     *
+     * @param key
+     *            The token key computed by {@link #hash(String)}
+     * @param rejection
+     *            The rejection
+     */
+    public void put(final String key, final TokenRejectedException rejection) {
+        if (rejection.getReason().isCacheable()) {
+            put(key, rejection, System.currentTimeMillis() + ttlMillis);
+        }
+    }
+
+    /**
+     * Looks up a previous rejection and builds a fresh exception from it.
+     *
+     * @param key
+     *            The token key computed by {@link #hash(String)}
+     * @return A new {@link TokenRejectedException} if the token was rejected
+     *         recently, null otherwise
+     */
+    public TokenRejectedException getRejection(final String key) {
+        TokenRejectedException cached = get(key);
+        return cached == null ? null : new TokenRejectedException(cached.getReason(), cached.getMessage());
+    }
+}
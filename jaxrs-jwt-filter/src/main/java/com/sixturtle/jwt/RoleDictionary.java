@@ -0,0 +1,97 @@
+package com.sixturtle.jwt;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Assigns a bit to each role name checked by the application, so that the
+ * roles of a principal fit in a single {@code long} and an authorization check
+ * is a single AND.
+ * <p>
+ * Roles are registered at deploy time by {@link RolesAllowedFeature} from the
+ * {@code @RolesAllowed} annotations, before any request is authenticated. A
+ * role of a token which is not in the dictionary can not be required by any
+ * resource method, so it does not get a bit. The dictionary holds at most
+ * {@link #MAX_ROLES} roles, any role beyond is left unindexed and checked by
+ * name.
+ * </p>
+ */
+public final class RoleDictionary {
+    private static final Logger log = LoggerFactory.getLogger(RoleDictionary.class);
+
+    public static final int MAX_ROLES = Long.SIZE;
+
+    private static final RoleDictionary INSTANCE = new RoleDictionary();
+
+    private final ConcurrentMap<String, Integer> indexes = new ConcurrentHashMap<>();
+    private final AtomicInteger                  next    = new AtomicInteger();
+
+    /**
+     * @return The dictionary shared by {@link JWTRequestFilter} and
+     *         {@link RolesAllowedFeature}
+     */
+    public static RoleDictionary getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Hidden, use {@link #getInstance()}.
+     */
+    private RoleDictionary() {
+    }
+
+    /**
+     * Assigns a bit to a role name if not done yet.
+     *
+     * @param role
+     *            The role name
+     * @return The bit index of the role, -1 if the dictionary is full
+     */
+    public int register(final String role) {
+        Integer index = indexes.get(role);
+        if (index == null) {
+            synchronized (this) {
+                index = indexes.get(role);
+                if (index == null) {
+                    if (next.get() >= MAX_ROLES) {
+                        log.warn("Role dictionary full, role: {} will be checked by name", role);
+                        return -1;
+                    }
+                    index = next.getAndIncrement();
+                    indexes.put(role, index);
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * @param role
+     *            The role name
+     * @return The bit mask of the role, 0 if the role is not registered
+     */
+    public long maskOf(final String role) {
+        Integer index = role != null ? indexes.get(role) : null;
+        return index != null ? 1L << index : 0L;
+    }
+
+    /**
+     * Computes the bit mask of a set of role names, ignoring the roles which
+     * are not registered.
+     *
+     * @param roles
+     *            The role names, may be null
+     * @return The bit mask of the roles
+     */
+    public long maskOf(final String[] roles) {
+        long mask = 0L;
+        for (int iIndex = 0; roles != null && iIndex < roles.length; ++iIndex) {
+            mask |= maskOf(roles[iIndex]);
+        }
+        return mask;
+    }
+}
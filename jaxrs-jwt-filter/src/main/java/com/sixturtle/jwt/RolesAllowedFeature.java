@@ -0,0 +1,119 @@
+package com.sixturtle.jwt;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+
+import javax.annotation.Priority;
+import javax.annotation.security.DenyAll;
+import javax.annotation.security.PermitAll;
+import javax.annotation.security.RolesAllowed;
+import javax.ws.rs.ForbiddenException;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.DynamicFeature;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.core.FeatureContext;
+import javax.ws.rs.core.SecurityContext;
+import javax.ws.rs.ext.Provider;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sixturtle.jwt.JWTRequestFilter.JWTSecurityContext;
+
+/**
+ * Enforces {@link RolesAllowed}, {@link PermitAll} and {@link DenyAll} on
+ * resource methods, replacing the container role based security.
+ * <p>
+ * The required roles of each resource method are registered in the
+ * {@link RoleDictionary} and turned into a bit mask once, at deploy time. A
+ * request authenticated by {@link JWTRequestFilter} is then authorized with a
+ * single AND against the precomputed role mask of its principal, without
+ * allocating.
+ * </p>
+ */
+@Provider
+public class RolesAllowedFeature implements DynamicFeature {
+    private static final Logger log = LoggerFactory.getLogger(RolesAllowedFeature.class);
+
+    /*
+     * (non-Javadoc)
+     * @see javax.ws.rs.container.DynamicFeature#configure(javax.ws.rs.container.ResourceInfo, javax.ws.rs.core.FeatureContext)
+     */
+    @Override
+    public void configure(final ResourceInfo resourceInfo, final FeatureContext context) {
+        Method   method = resourceInfo.getResourceMethod();
+        Class<?> type   = resourceInfo.getResourceClass();
+
+        // method level annotations take precedence over class level ones
+        if (method.isAnnotationPresent(DenyAll.class)) {
+            context.register(new RolesAllowedFilter(null));
+        } else if (method.isAnnotationPresent(RolesAllowed.class)) {
+            context.register(new RolesAllowedFilter(method.getAnnotation(RolesAllowed.class).value()));
+        } else if (method.isAnnotationPresent(PermitAll.class)) {
+            return;
+        } else if (type.isAnnotationPresent(DenyAll.class)) {
+            context.register(new RolesAllowedFilter(null));
+        } else if (type.isAnnotationPresent(RolesAllowed.class)) {
+            context.register(new RolesAllowedFilter(type.getAnnotation(RolesAllowed.class).value()));
+        }
+    }
+
+    /**
+     * Checks the roles of a single resource method.
+     */
+    @Priority(Priorities.AUTHORIZATION)
+    private static class RolesAllowedFilter implements ContainerRequestFilter {
+        private final String[] roles;
+        private final long     mask;
+        private final boolean  indexed;
+
+        /**
+         * Registers the roles in the {@link RoleDictionary} and computes their
+         * mask.
+         *
+         * @param roles
+         *            The allowed roles, null to deny all
+         */
+        RolesAllowedFilter(final String[] roles) {
+            this.roles = roles != null ? roles : new String[0];
+            boolean allIndexed = true;
+            for (String role : this.roles) {
+                allIndexed &= RoleDictionary.getInstance().register(role) >= 0;
+            }
+            this.mask    = RoleDictionary.getInstance().maskOf(this.roles);
+            this.indexed = allIndexed;
+        }
+
+        /*
+         * (non-Javadoc)
+         * @see javax.ws.rs.container.ContainerRequestFilter#filter(javax.ws.rs.container.ContainerRequestContext)
+         */
+        @Override
+        public void filter(final ContainerRequestContext requestContext) throws IOException {
+            SecurityContext ctx = requestContext.getSecurityContext();
+            if (!isAllowed(ctx)) {
+                log.debug("Access denied to principal: {}", ctx.getUserPrincipal());
+                throw new ForbiddenException("Forbidden: missing role");
+            }
+        }
+
+        /**
+         * @param ctx
+         *            The security context of the request
+         * @return true if the principal has any of the allowed roles
+         */
+        private boolean isAllowed(final SecurityContext ctx) {
+            if (indexed && ctx instanceof JWTSecurityContext) {
+                return ((JWTSecurityContext) ctx).hasAnyRole(mask);
+            }
+            for (String role : roles) {
+                if (ctx.isUserInRole(role)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.sixturtle.jwt;
+
+/**
+ * The few token fields read by {@link TokenPreValidator} before signature
+ * verification, along with the decoded payload, made available to the later
+ * stages so they need not be decoded again.
+ */
+public class TokenInfo {
+    private final String   issuer;
+    private final String[] audience;
+    private final long     expirationTime;
+    private final byte[]   payload;
+
+    /**
+     * Init the token info.
+     *
+     * @param issuer
+     *            The "iss" claim, may be null
+     * @param audience
+     *            The "aud" claim, may be null
+     * @param expirationTime
+     *            The "exp" claim in milliseconds
+     * @param payload
+     *            The decoded payload JSON
+     */
+    public TokenInfo(final String issuer, final String[] audience, final long expirationTime, final byte[] payload) {
+        this.issuer         = issuer;
+        this.audience       = audience;
+        this.expirationTime = expirationTime;
+        this.payload        = payload;
+    }
+
+    /**
+     * @return the issuer, null if the token has no "iss" claim
+     */
+    public String getIssuer() {
+        return issuer;
+    }
+
+    /**
+     * @return the audience, null if the token has no "aud" claim
+     */
+    public String[] getAudience() {
+        return audience;
+    }
+
+    /**
+     * @return the expiration time in milliseconds
+     */
+    public long getExpirationTime() {
+        return expirationTime;
+    }
+
+    /**
+     * @return the decoded payload JSON, not to be modified
+     */
+    public byte[] getPayload() {
+        return payload;
+    }
+}
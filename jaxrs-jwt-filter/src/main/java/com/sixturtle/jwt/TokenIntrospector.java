@@ -0,0 +1,299 @@
+package com.sixturtle.jwt;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import com.sixturtle.jwt.JWTRequestFilter.JWTPrincipal;
+import com.sixturtle.jwt.TokenRejectedException.Reason;
+
+/**
+ * Resolves opaque (reference) Bearer tokens with an OAuth 2.0 Token
+ * Introspection endpoint (RFC 7662).
+ * <p>
+ * The principal of an active token is cached until the token expires, capped
+ * by a maximum time to live so that a revocation is noticed eventually. When
+ * many requests present the same token which is not cached yet, only the first
+ * one calls the endpoint and the others wait for its result.
+ * </p>
+ * <p>
+ * Calls go through {@link HttpURLConnection}, whose keep-alive cache pools the
+ * connections to the endpoint; its size is set by the "http.maxConnections"
+ * system property.
+ * </p>
+ */
+public class TokenIntrospector {
+    private static final Logger log = LoggerFactory.getLogger(TokenIntrospector.class);
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private static final int  CONNECT_TIMEOUT_MILLIS = 2000;
+    private static final int  READ_TIMEOUT_MILLIS    = 5000;
+    private static final long WAIT_TIMEOUT_MILLIS    = CONNECT_TIMEOUT_MILLIS + READ_TIMEOUT_MILLIS;
+
+    private final URL                                               endpoint;
+    private final String                                            authorization;
+    private final long                                              maxTtlMillis;
+    private final Function<byte[], JWTPrincipal>                    principalFactory;
+    private final VerifiedTokenCache                                cache;
+    private final ConcurrentMap<String, CompletableFuture<JWTPrincipal>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Init the introspector.
+     *
+     * @param endpoint
+     *            The introspection endpoint
+     * @param clientId
+     *            The client id of this resource server
+     * @param clientSecret
+     *            The client secret of this resource server
+     * @param cacheSize
+     *            The maximum number of cached tokens, must be positive
+     * @param maxTtlSeconds
+     *            How long an active token is cached at most
+     * @param principalFactory
+     *            Builds the principal from the introspection response JSON
+     */
+    public TokenIntrospector(
+            final URL endpoint,
+            final String clientId,
+            final String clientSecret,
+            final int cacheSize,
+            final long maxTtlSeconds,
+            final Function<byte[], JWTPrincipal> principalFactory) {
+        this.endpoint         = endpoint;
+        this.authorization    = "Basic " + Base64.getEncoder().encodeToString(
+                                        (clientId + ":" + clientSecret).getBytes(StandardCharsets.UTF_8));
+        this.maxTtlMillis     = TimeUnit.SECONDS.toMillis(maxTtlSeconds);
+        this.principalFactory = principalFactory;
+        this.cache            = new VerifiedTokenCache(cacheSize);
+    }
+
+    /**
+     * @param key
+     *            The token key computed by {@link ExpiringTokenCache#hash(String)}
+     * @return The cached {@link JWTPrincipal} of the token, null if
+     *         {@link #introspect(String, String)} would call the endpoint
+     */
+    public JWTPrincipal getCached(final String key) {
+        return cache.get(key);
+    }
+
+    /**
+     * Resolves the principal of an opaque token.
+     *
+     * @param key
+     *            The token key computed by {@link ExpiringTokenCache#hash(String)}
+     * @param token
+     *            The opaque token
+     * @return The {@link JWTPrincipal} of the active token
+     * @throws TokenRejectedException
+     *             if the token is not active
+     * @throws WebApplicationException
+     *             with HTTP 503 if the endpoint can not be reached
+     */
+    public JWTPrincipal introspect(final String key, final String token) {
+        JWTPrincipal principal = cache.get(key);
+        if (principal != null) {
+            return principal;
+        }
+
+        CompletableFuture<JWTPrincipal> created  = new CompletableFuture<>();
+        CompletableFuture<JWTPrincipal> existing = inFlight.putIfAbsent(key, created);
+        if (existing != null) {
+            log.trace("Waiting for introspection in flight");
+            return await(existing);
+        }
+        try {
+            principal = cache.get(key);
+            if (principal == null) {
+                principal = load(key, token);
+            }
+            created.complete(principal);
+            return principal;
+        } catch (RuntimeException e) {
+            created.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, created);
+        }
+    }
+
+    /**
+     * Calls the endpoint and caches the principal of an active token.
+     *
+     * @param key
+     *            The token key
+     * @param token
+     *            The opaque token
+     * @return The {@link JWTPrincipal}
+     */
+    private JWTPrincipal load(final String key, final String token) {
+        byte[] response;
+        long   exp;
+        try {
+            response = post(token);
+            exp      = readExpiration(response);
+        } catch (IOException e) {
+            // not cached: the next request with the token calls the endpoint again
+            log.error("Unable to introspect token at: {}", endpoint, e);
+            throw new WebApplicationException(
+                        "Token introspection unavailable",
+                        Response.status(Status.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, 1).build());
+        }
+
+        long now = System.currentTimeMillis();
+        if (exp <= now) {
+            throw new TokenRejectedException(Reason.INACTIVE, "Unauthorized: token is not active");
+        }
+        JWTPrincipal principal = principalFactory.apply(response);
+        cache.put(key, principal, Math.min(exp, now + maxTtlMillis));
+        return principal;
+    }
+
+    /**
+     * Waits for the result of a call made by another request.
+     *
+     * @param future
+     *            The call in flight
+     * @return The {@link JWTPrincipal}
+     */
+    private JWTPrincipal await(final CompletableFuture<JWTPrincipal> future) {
+        try {
+            return future.get(WAIT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new WebApplicationException(e.getCause(), Status.SERVICE_UNAVAILABLE);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WebApplicationException(e, Status.SERVICE_UNAVAILABLE);
+        } catch (TimeoutException e) {
+            throw new WebApplicationException(e, Status.SERVICE_UNAVAILABLE);
+        }
+    }
+
+    /**
+     * Posts the token to the introspection endpoint.
+     *
+     * @param token
+     *            The opaque token
+     * @return The response JSON
+     * @throws IOException
+     *             in case of network error or unexpected HTTP status
+     */
+    private byte[] post(final String token) throws IOException {
+        byte[] body = ("token=" + URLEncoder.encode(token, "UTF-8") + "&token_type_hint=access_token")
+                        .getBytes(StandardCharsets.UTF_8);
+
+        HttpURLConnection connection = (HttpURLConnection) endpoint.openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+        connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setFixedLengthStreamingMode(body.length);
+        connection.setRequestProperty(HttpHeaders.AUTHORIZATION, authorization);
+        connection.setRequestProperty(HttpHeaders.CONTENT_TYPE, "application/x-www-form-urlencoded");
+        connection.setRequestProperty(HttpHeaders.ACCEPT, "application/json");
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(body);
+        }
+
+        int status = connection.getResponseCode();
+        if (status != HttpURLConnection.HTTP_OK) {
+            // drain the error body so that the connection goes back to the keep-alive cache
+            try (InputStream err = connection.getErrorStream()) {
+                if (err != null) {
+                    read(err);
+                }
+            }
+            throw new IOException("Unexpected HTTP status: " + status + " from introspection endpoint: " + endpoint);
+        }
+        try (InputStream is = connection.getInputStream()) {
+            return read(is);
+        }
+    }
+
+    /**
+     * @param is
+     *            The input stream
+     * @return All the bytes of the stream
+     * @throws IOException
+     *             in case of read error
+     */
+    private static byte[] read(final InputStream is) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int len;
+        while ((len = is.read(buffer)) != -1) {
+            out.write(buffer, 0, len);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Reads "active" and "exp" of an introspection response.
+     *
+     * @param response
+     *            The response JSON
+     * @return The "exp" claim in milliseconds, {@link Long#MAX_VALUE} if
+     *         missing, {@link Long#MIN_VALUE} if "active" is false
+     * @throws IOException
+     *             if the response is not a complete JSON object with a boolean
+     *             "active" member, e.g. an HTML error page or a truncated body
+     */
+    private static long readExpiration(final byte[] response) throws IOException {
+        Boolean active = null;
+        long    exp    = Long.MAX_VALUE;
+        try (JsonParser parser = JSON.createParser(response)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Introspection response is not a JSON object");
+            }
+            JsonToken token;
+            while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("active".equals(name) && (value == JsonToken.VALUE_TRUE || value == JsonToken.VALUE_FALSE)) {
+                    active = value == JsonToken.VALUE_TRUE;
+                } else if ("exp".equals(name) && value == JsonToken.VALUE_NUMBER_INT) {
+                    exp = TimeUnit.SECONDS.toMillis(parser.getLongValue());
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            if (token != JsonToken.END_OBJECT) {
+                throw new IOException("Truncated introspection response");
+            }
+        }
+        if (active == null) {
+            throw new IOException("Introspection response without boolean \"active\"");
+        }
+        return active ? exp : Long.MIN_VALUE;
+    }
+}
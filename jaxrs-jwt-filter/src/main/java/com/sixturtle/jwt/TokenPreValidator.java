@@ -0,0 +1,233 @@
+package com.sixturtle.jwt;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import com.sixturtle.jwt.TokenRejectedException.Reason;
+
+/**
+ * Performs the cheap structural checks of a compact serialized JWS before any
+ * signature verification takes place.
+ * <p>
+ * It locates the three segments by index, decodes the header only to check
+ * "alg" against an allow-list, and decodes the payload only to check "exp" and
+ * "nbf" (with a configurable clock skew) and to pick up "iss" and "aud", using
+ * a streaming parser which stops as soon as these claims are found. Expired,
+ * premature and garbage tokens are therefore rejected without paying for an
+ * RSA or ECDSA verification.
+ * </p>
+ * <p>
+ * Since the signature covers the exact header and payload bytes checked here,
+ * a token passing this stage and the signature verification needs no further
+ * time checks.
+ * </p>
+ */
+public class TokenPreValidator {
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private final Set<String> allowedAlgorithms;
+    private final long        clockSkewMillis;
+
+    /**
+     * Init the validator.
+     *
+     * @param allowedAlgorithms
+     *            The accepted "alg" header values, e.g. RS256
+     * @param clockSkewSeconds
+     *            The tolerated clock difference with the token issuer
+     */
+    public TokenPreValidator(final Set<String> allowedAlgorithms, final long clockSkewSeconds) {
+        this.allowedAlgorithms = Collections.unmodifiableSet(new HashSet<>(allowedAlgorithms));
+        this.clockSkewMillis   = TimeUnit.SECONDS.toMillis(clockSkewSeconds);
+    }
+
+    /**
+     * @return The accepted "alg" header values
+     */
+    public Set<String> getAllowedAlgorithms() {
+        return allowedAlgorithms;
+    }
+
+    /**
+     * Checks the structure, algorithm and validity period of a token.
+     *
+     * @param token
+     *            The compact serialized JWS
+     * @return The {@link TokenInfo} read from the payload
+     * @throws TokenRejectedException
+     *             if the token must be rejected
+     */
+    public TokenInfo validate(final String token) {
+        int first  = token.indexOf('.');
+        int second = first < 0 ? -1 : token.indexOf('.', first + 1);
+        if (first <= 0 || second < 0 || second == first + 1 || token.indexOf('.', second + 1) >= 0) {
+            throw rejected(Reason.MALFORMED, "Unauthorized: Malformed JWT");
+        }
+
+        String algorithm = readAlgorithm(decode(token, 0, first));
+        if (algorithm == null || !allowedAlgorithms.contains(algorithm)) {
+            throw rejected(Reason.UNSUPPORTED_ALGORITHM, "Unauthorized: Unsupported signing algorithm: " + algorithm);
+        }
+
+        byte[]     payload  = decode(token, first + 1, second);
+        String[]   issuer   = new String[1];
+        String[][] audience = new String[1][];
+        long[]     times    = readClaims(payload, issuer, audience);
+        long       now      = System.currentTimeMillis();
+        long       exp      = times[0];
+        long       nbf      = times[1];
+        if (exp == Long.MIN_VALUE) {
+            throw rejected(Reason.MISSING_EXPIRATION, "Unauthorized: token has no expiration time");
+        }
+        if (nbf != Long.MIN_VALUE && nbf - clockSkewMillis > now) {
+            throw rejected(Reason.NOT_YET_VALID, "Unauthorized: too early, token not valid yet");
+        }
+        if (exp + clockSkewMillis <= now) {
+            throw rejected(Reason.EXPIRED, "Unauthorized: too late, token expired");
+        }
+        return new TokenInfo(issuer[0], audience[0], exp, payload);
+    }
+
+    /**
+     * Decodes one base64url segment of the token.
+     *
+     * @param token
+     *            The compact serialized JWS
+     * @param begin
+     *            The segment start index, inclusive
+     * @param end
+     *            The segment end index, exclusive
+     * @return The decoded bytes
+     */
+    private static byte[] decode(final String token, final int begin, final int end) {
+        try {
+            return Base64.getUrlDecoder().decode(token.substring(begin, end));
+        } catch (IllegalArgumentException e) {
+            throw rejected(Reason.MALFORMED, "Unauthorized: Malformed JWT");
+        }
+    }
+
+    /**
+     * Reads the "alg" member of the JOSE header.
+     *
+     * @param header
+     *            The decoded header JSON
+     * @return The algorithm name if present, null otherwise
+     */
+    private static String readAlgorithm(final byte[] header) {
+        try (JsonParser parser = JSON.createParser(header)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw rejected(Reason.MALFORMED, "Unauthorized: Malformed JWT");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("alg".equals(name)) {
+                    return value == JsonToken.VALUE_STRING ? parser.getText() : null;
+                }
+                parser.skipChildren();
+            }
+            return null;
+        } catch (IOException e) {
+            throw rejected(Reason.MALFORMED, "Unauthorized: Malformed JWT");
+        }
+    }
+
+    /**
+     * Reads the "exp", "nbf", "iss" and "aud" claims of the payload, stopping
+     * as soon as all four are found.
+     *
+     * @param payload
+     *            The decoded payload JSON
+     * @param issuer
+     *            Receives the "iss" claim at index 0, left null if missing
+     * @param audience
+     *            Receives the "aud" claim at index 0, left null if missing
+     * @return [exp, nbf] in milliseconds, {@link Long#MIN_VALUE} for a missing
+     *         claim
+     */
+    private static long[] readClaims(final byte[] payload, final String[] issuer, final String[][] audience) {
+        long[] times = {Long.MIN_VALUE, Long.MIN_VALUE};
+        try (JsonParser parser = JSON.createParser(payload)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw rejected(Reason.MALFORMED, "Unauthorized: Malformed JWT");
+            }
+            int found = 0;
+            while (found < 4 && parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                int index = "exp".equals(name) ? 0 : "nbf".equals(name) ? 1 : -1;
+                if ("iss".equals(name)) {
+                    if (value != JsonToken.VALUE_STRING) {
+                        throw rejected(Reason.INVALID_CLAIMS, "Unauthorized: Invalid iss claim");
+                    }
+                    issuer[0] = parser.getText();
+                    ++found;
+                } else if ("aud".equals(name)) {
+                    audience[0] = readAudience(parser, value);
+                    ++found;
+                } else if (index >= 0) {
+                    if (value != JsonToken.VALUE_NUMBER_INT) {
+                        throw rejected(Reason.INVALID_CLAIMS, "Unauthorized: Invalid " + name + " claim");
+                    }
+                    times[index] = TimeUnit.SECONDS.toMillis(parser.getLongValue());
+                    ++found;
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        } catch (IOException e) {
+            throw rejected(Reason.MALFORMED, "Unauthorized: Malformed JWT");
+        }
+        return times;
+    }
+
+    /**
+     * Reads the "aud" claim, either a single string or an array of strings.
+     *
+     * @param parser
+     *            The parser, positioned on the claim value
+     * @param value
+     *            The current token
+     * @return The audience values
+     * @throws IOException
+     *             in case of malformed JSON
+     */
+    private static String[] readAudience(final JsonParser parser, final JsonToken value) throws IOException {
+        if (value == JsonToken.VALUE_STRING) {
+            return new String[] {parser.getText()};
+        }
+        if (value != JsonToken.START_ARRAY) {
+            throw rejected(Reason.INVALID_CLAIMS, "Unauthorized: Invalid aud claim");
+        }
+        List<String> audience = new ArrayList<>(2);
+        while (parser.nextToken() == JsonToken.VALUE_STRING) {
+            audience.add(parser.getText());
+        }
+        if (parser.getCurrentToken() != JsonToken.END_ARRAY) {
+            throw rejected(Reason.INVALID_CLAIMS, "Unauthorized: Invalid aud claim");
+        }
+        return audience.toArray(new String[audience.size()]);
+    }
+
+    /**
+     * @param reason
+     *            The reason of rejection
+     * @param message
+     *            The error message
+     * @return A new {@link TokenRejectedException}
+     */
+    private static TokenRejectedException rejected(final Reason reason, final String message) {
+        return new TokenRejectedException(reason, message);
+    }
+}
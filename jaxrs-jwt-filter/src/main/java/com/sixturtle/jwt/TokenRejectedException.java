@@ -0,0 +1,109 @@
+package com.sixturtle.jwt;
+
+import javax.ws.rs.NotAuthorizedException;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+
+/**
+ * Represents a Bearer token rejected by {@link JWTRequestFilter}, mapped to
+ * HTTP 401.
+ * <p>
+ * Token rejections are part of the normal request flow, e.g. a client
+ * retrying with an expired token, so this exception does not capture a stack
+ * trace.
+ * </p>
+ */
+public class TokenRejectedException extends NotAuthorizedException {
+    private static final long serialVersionUID = 2912493386180396402L;
+
+    /**
+     * The reasons of rejecting a token.
+     */
+    public enum Reason {
+        MALFORMED (true),
+        UNSUPPORTED_ALGORITHM (true),
+        MISSING_EXPIRATION (true),
+        EXPIRED (true),
+        NOT_YET_VALID (false),
+        UNKNOWN_KEY (false),
+        BAD_SIGNATURE (true),
+        INVALID_CLAIMS (true),
+        INACTIVE (true);
+
+        private boolean cacheable;
+
+        /**
+         * @param cacheable
+         *            true if the same token is always rejected for this reason
+         */
+        private Reason(final boolean cacheable) {
+            this.cacheable = cacheable;
+        }
+
+        /**
+         * A "not yet valid" token becomes valid later and an unknown key may be
+         * published by the next key refresh, every other reason is final.
+         *
+         * @return true if the rejection can be remembered for the token
+         */
+        public boolean isCacheable() {
+            return cacheable;
+        }
+    }
+
+    private final Reason reason;
+
+    /**
+     * Init the exception.
+     *
+     * @param reason
+     *            The reason of rejection
+     * @param message
+     *            The error message
+     */
+    public TokenRejectedException(final Reason reason, final String message) {
+        super(message, unauthorized());
+        this.reason = reason;
+    }
+
+    /**
+     * Init the exception.
+     *
+     * @param reason
+     *            The reason of rejection
+     * @param message
+     *            The error message
+     * @param cause
+     *            The underlying parse or crypto error
+     */
+    public TokenRejectedException(final Reason reason, final String message, final Throwable cause) {
+        super(message, unauthorized(), cause);
+        this.reason = reason;
+    }
+
+    /**
+     * @return A 401 response challenging for a Bearer token
+     */
+    private static Response unauthorized() {
+        return Response.status(Status.UNAUTHORIZED)
+                       .header(HttpHeaders.WWW_AUTHENTICATE, "Bearer")
+                       .build();
+    }
+
+    /**
+     * @return the reason
+     */
+    public Reason getReason() {
+        return reason;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see java.lang.Throwable#fillInStackTrace()
+     */
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+}
@@ -0,0 +1,149 @@
+package com.sixturtle.jwt;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caps the number of signature verifications, and introspection calls, a
+ * single client can trigger per second, using one token bucket per source
+ * address.
+ * <p>
+ * A bucket holds up to {@code permitsPerSecond} permits, and at least one,
+ * and refills continuously at that rate, so a client may burst up to one
+ * second worth of verifications, and a rate below one per second still lets
+ * one verification through every {@code 1 / permitsPerSecond} seconds. Buckets which are full again carry no state and are swept
+ * away, at most once per second, when the number of tracked clients exceeds
+ * the configured bound.
+ * </p>
+ */
+public class VerificationBudget {
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final double permitsPerSecond;
+    private final double capacity;
+    private final int    maxClients;
+
+    private final ConcurrentMap<String, Bucket> buckets   = new ConcurrentHashMap<>();
+    private final AtomicLong                    lastSweep = new AtomicLong(System.nanoTime());
+
+    /**
+     * Init the budget.
+     *
+     * @param permitsPerSecond
+     *            The verifications allowed per client and per second
+     * @param maxClients
+     *            The number of tracked clients above which idle buckets are
+     *            swept
+     */
+    public VerificationBudget(final double permitsPerSecond, final int maxClients) {
+        if (permitsPerSecond <= 0) {
+            throw new IllegalArgumentException("Permits per second must be positive: " + permitsPerSecond);
+        }
+        this.permitsPerSecond = permitsPerSecond;
+        this.capacity         = Math.max(1, permitsPerSecond);
+        this.maxClients       = maxClients;
+    }
+
+    /**
+     * Takes one permit from the bucket of a client.
+     *
+     * @param client
+     *            The client source address
+     * @return true if the client may run one more verification, false if its
+     *         budget is exhausted
+     */
+    public boolean tryAcquire(final String client) {
+        long now = System.nanoTime();
+        Bucket bucket = buckets.get(client);
+        if (bucket == null) {
+            sweep(now);
+            bucket = buckets.computeIfAbsent(client, c -> new Bucket(capacity, now));
+        }
+        return bucket.tryAcquire(permitsPerSecond, capacity, now);
+    }
+
+    /**
+     * Removes the buckets which are full again when too many clients are
+     * tracked.
+     *
+     * @param now
+     *            The current {@link System#nanoTime()}
+     */
+    private void sweep(final long now) {
+        long last = lastSweep.get();
+        if (buckets.size() >= maxClients && now - last >= SWEEP_INTERVAL_NANOS && lastSweep.compareAndSet(last, now)) {
+            for (Iterator<Bucket> it = buckets.values().iterator(); it.hasNext();) {
+                if (it.next().isFull(permitsPerSecond, capacity, now)) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * A token bucket of a single client.
+     */
+    private static final class Bucket {
+        private double permits;
+        private long   refilledAt;
+
+        /**
+         * @param permits
+         *            The initial permits
+         * @param now
+         *            The current {@link System#nanoTime()}
+         */
+        private Bucket(final double permits, final long now) {
+            this.permits    = permits;
+            this.refilledAt = now;
+        }
+
+        /**
+         * @param rate
+         *            The permits per second
+         * @param capacity
+         *            The maximum permits of the bucket
+         * @param now
+         *            The current {@link System#nanoTime()}
+         * @return true if a permit was taken
+         */
+        private synchronized boolean tryAcquire(final double rate, final double capacity, final long now) {
+            refill(rate, capacity, now);
+            if (permits >= 1) {
+                permits -= 1;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * @param rate
+         *            The permits per second
+         * @param capacity
+         *            The maximum permits of the bucket
+         * @param now
+         *            The current {@link System#nanoTime()}
+         * @return true if the bucket is full
+         */
+        private synchronized boolean isFull(final double rate, final double capacity, final long now) {
+            refill(rate, capacity, now);
+            return permits >= capacity;
+        }
+
+        /**
+         * @param rate
+         *            The permits per second
+         * @param capacity
+         *            The maximum permits of the bucket
+         * @param now
+         *            The current {@link System#nanoTime()}
+         */
+        private void refill(final double rate, final double capacity, final long now) {
+            permits    = Math.min(capacity, permits + (now - refilledAt) * rate / TimeUnit.SECONDS.toNanos(1));
+            refilledAt = now;
+        }
+    }
+}
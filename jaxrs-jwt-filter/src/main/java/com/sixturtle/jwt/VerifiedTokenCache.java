@@ -0,0 +1,35 @@
+package com.sixturtle.jwt;
+
+import com.sixturtle.jwt.JWTRequestFilter.JWTPrincipal;
+
+/**
+ * A cache of JSON Web Tokens which have already passed signature and claims
+ * verification. Each entry holds the {@link JWTPrincipal} built from the token
+ * and lives until the token's "exp" time, unless evicted earlier as the least
+ * recently used one.
+ */
+public class VerifiedTokenCache extends ExpiringTokenCache<JWTPrincipal> {
+    /**
+     * Creates a cache which holds at most {@code maxEntries} verified tokens.
+     *
+     * @param maxEntries
+     *            The maximum number of cached tokens, must be positive
+     */
+    public VerifiedTokenCache(final int maxEntries) {
+        super(maxEntries);
+    }
+
+    /**
+     * Caches the principal of a verified token until its expiration time.
+     *
+     * @param key
+     *            The token key computed by {@link #hash(String)}
+     * @param principal
+     *            The {@link JWTPrincipal} built from the token claims
+     * @param expirationTime
+     *            The "exp" claim of the token in milliseconds
+     */
+    public void put(final String key, final JWTPrincipal principal, final long expirationTime) {
+        super.put(key, principal, expirationTime);
+    }
+}
@@ -0,0 +1,99 @@
+package com.sixturtle.jwt;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSVerifier;
+
+/**
+ * A registry of {@link KeyResolver}s keyed by token issuer and signing
+ * algorithm.
+ * <p>
+ * Binding each resolver to explicit "alg" values means a token is only ever
+ * checked with a verifier built for its algorithm, e.g. an HS256 token is never
+ * verified with an RSA public key used as HMAC secret. Binding a resolver to an
+ * issuer restricts it to tokens carrying that "iss" claim, e.g. an HMAC secret
+ * shared with internal services only. Resolvers registered with
+ * {@link #ANY_ISSUER} serve the issuers which have no resolver registered at
+ * all; a registered issuer is only verified with its own resolvers, so a token
+ * signed with a shared key can not claim its "iss".
+ * </p>
+ * <p>
+ * Verifiers are built once by the resolvers and reused for every request; the
+ * lookup is two hash map reads. Any {@link JWSVerifier} implementation can be
+ * registered, e.g. an EdDSA verifier for "alg": "EdDSA".
+ * </p>
+ */
+public class VerifierRegistry {
+    public static final String ANY_ISSUER = "*";
+
+    private volatile Map<String, Map<String, KeyResolver>> resolvers = Collections.emptyMap();
+
+    /**
+     * Registers a resolver for a set of algorithms. Registrations are expected
+     * at setup time, before the registry serves requests.
+     *
+     * @param issuer
+     *            The "iss" claim value, or {@link #ANY_ISSUER}
+     * @param resolver
+     *            The {@link KeyResolver}
+     * @param algorithms
+     *            The "alg" header values the resolver is trusted for
+     * @return this registry
+     */
+    public synchronized VerifierRegistry register(
+            final String issuer,
+            final KeyResolver resolver,
+            final JWSAlgorithm... algorithms) {
+        Map<String, Map<String, KeyResolver>> copy = new HashMap<>(resolvers);
+        Map<String, KeyResolver> byAlgorithm = new HashMap<>();
+        if (copy.containsKey(issuer)) {
+            byAlgorithm.putAll(copy.get(issuer));
+        }
+        for (JWSAlgorithm algorithm : algorithms) {
+            byAlgorithm.put(algorithm.getName(), resolver);
+        }
+        copy.put(issuer, Collections.unmodifiableMap(byAlgorithm));
+        resolvers = Collections.unmodifiableMap(copy);
+        return this;
+    }
+
+    /**
+     * Finds the verifier for a token.
+     *
+     * @param issuer
+     *            The "iss" claim of the token, may be null
+     * @param header
+     *            The JWS header of the token
+     * @return The {@link JWSVerifier} if a resolver is registered for the
+     *         issuer, or for {@link #ANY_ISSUER} when the issuer has none, and
+     *         the algorithm and knows the signing key, null otherwise
+     */
+    public JWSVerifier getVerifier(final String issuer, final JWSHeader header) {
+        Map<String, Map<String, KeyResolver>> current = resolvers;
+        String algorithm = header.getAlgorithm().getName();
+
+        Map<String, KeyResolver> byAlgorithm = issuer != null ? current.get(issuer) : null;
+        if (byAlgorithm == null) {
+            byAlgorithm = current.get(ANY_ISSUER);
+        }
+        KeyResolver resolver = byAlgorithm != null ? byAlgorithm.get(algorithm) : null;
+        return resolver != null ? resolver.getVerifier(header) : null;
+    }
+
+    /**
+     * @return The names of all registered algorithms, for any issuer
+     */
+    public Set<String> getAlgorithms() {
+        Set<String> algorithms = new LinkedHashSet<>();
+        for (Map<String, KeyResolver> byAlgorithm : resolvers.values()) {
+            algorithms.addAll(byAlgorithm.keySet());
+        }
+        return algorithms;
+    }
+}
@@ -0,0 +1,116 @@
+package com.sixturtle.jwt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * JUnit tests for the conditional refresh of {@link JWKSKeyResolver}, against
+ * an in-process key endpoint honoring If-None-Match.
+ */
+public class JWKSKeyResolverTest {
+    private HttpServer      server;
+    private volatile String body;
+    private volatile String etag;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/certs", this::respond);
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testBrokenKeySetFetchedAgain() throws Exception {
+        body = jwks("first");
+        etag = "\"v1\"";
+        JWKSKeyResolver resolver = new JWKSKeyResolver(
+                new URL("http://localhost:" + server.getAddress().getPort() + "/certs"), 1);
+        try {
+            assertEquals(Collections.singleton("first"), resolver.getKeyIds());
+
+            // a truncated key set is published, then fixed under the same ETag
+            body = "{\"keys\": [";
+            etag = "\"v2\"";
+            Thread.sleep(1500);
+            assertEquals("Broken key set replaced the keys", Collections.singleton("first"), resolver.getKeyIds());
+
+            body = jwks("second");
+            long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+            while (!resolver.getKeyIds().contains("second") && System.currentTimeMillis() < deadline) {
+                Thread.sleep(100);
+            }
+            assertTrue("Fixed key set never fetched", resolver.getKeyIds().contains("second"));
+        } finally {
+            resolver.close();
+        }
+    }
+
+    /**
+     * @param kid
+     *            The key id
+     * @return A JWK Set with one new RSA key
+     * @throws Exception
+     *             in case of key generation error
+     */
+    private static String jwks(final String kid) throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        RSAPublicKey publicKey = (RSAPublicKey) generator.generateKeyPair().getPublic();
+        return new JWKSet(new RSAKey.Builder(publicKey).keyID(kid).build()).toString();
+    }
+
+    /**
+     * Answers 304 when the request validator matches the current ETag, the
+     * current key set otherwise.
+     *
+     * @param exchange
+     *            The {@link HttpExchange}
+     * @throws IOException
+     *             in case of I/O error
+     */
+    private void respond(final HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            while (in.read() != -1) {
+                // drain the request
+            }
+        }
+        String currentEtag = etag;
+        exchange.getResponseHeaders().set("ETag", currentEtag);
+        if (currentEtag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.sixturtle.jwt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.SecurityContext;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.sixturtle.jwt.TokenRejectedException.Reason;
+
+/**
+ * JUnit tests for the rejections of {@link JWTRequestFilter}.
+ */
+public class JWTRequestFilterTest {
+    private JWTRequestFilter filter;
+
+    @Before
+    public void setUp() throws Exception {
+        filter = new JWTRequestFilter(TestKeys.install());
+    }
+
+    @Test
+    public void testValidToken() throws Exception {
+        filter.filter(requestContext(TestKeys.sign(TestKeys.claims("john.doe").build())));
+    }
+
+    @Test
+    public void testGarbageToken() throws Exception {
+        assertUnauthorized(filter, "not-a-jwt.at.all", Reason.MALFORMED);
+    }
+
+    @Test
+    public void testMalformedHeader() throws Exception {
+        String token = TestKeys.sign(TestKeys.claims("john.doe").build());
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        String header = encoder.encodeToString("{\"alg\":\"RS256\",\"kid\":5}".getBytes(StandardCharsets.UTF_8));
+        String malformed = header + token.substring(token.indexOf('.'));
+
+        TokenRejectedException e = assertUnauthorized(filter, malformed, Reason.MALFORMED);
+        assertTrue("Parse error not kept as cause", e.getCause() instanceof ParseException);
+    }
+
+    @Test
+    public void testTamperedSignature() throws Exception {
+        String token = TestKeys.sign(TestKeys.claims("john.doe").build());
+        int signature = token.lastIndexOf('.') + 1;
+        char tampered = token.charAt(signature) == 'A' ? 'B' : 'A';
+        assertUnauthorized(filter, token.substring(0, signature) + tampered + token.substring(signature + 1), Reason.BAD_SIGNATURE);
+    }
+
+    @Test
+    public void testUnreadableClaims() throws Exception {
+        long now = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+        // the pre-validator stops once exp, nbf, iss and aud are read
+        String payload = "{\"exp\":" + (now + 3600) + ",\"nbf\":" + (now - 60)
+                + ",\"iss\":\"https://idp.sixturtle.com\",\"aud\":\"api\",\"sub\":";
+        ContainerRequestContext requestContext = requestContext(TestKeys.sign(payload));
+        filter.filter(requestContext);
+
+        ArgumentCaptor<SecurityContext> securityContext = ArgumentCaptor.forClass(SecurityContext.class);
+        verify(requestContext).setSecurityContext(securityContext.capture());
+        try {
+            securityContext.getValue().getUserPrincipal().getName();
+            fail("expected rejection: " + Reason.INVALID_CLAIMS);
+        } catch (TokenRejectedException e) {
+            assertEquals(Reason.INVALID_CLAIMS, e.getReason());
+            assertEquals(401, e.getResponse().getStatus());
+        }
+    }
+
+    @Test
+    public void testRejectionWithCause() {
+        ParseException cause = new ParseException("Invalid JSON", 0);
+        TokenRejectedException e = new TokenRejectedException(Reason.MALFORMED, "Unauthorized: Malformed JWT", cause);
+
+        assertEquals(cause, e.getCause());
+        assertEquals(401, e.getResponse().getStatus());
+        assertEquals("Bearer", e.getResponse().getHeaderString(HttpHeaders.WWW_AUTHENTICATE));
+    }
+
+    /**
+     * @param jwtFilter
+     *            The {@link JWTRequestFilter}
+     * @param token
+     *            The Bearer token
+     * @param expected
+     *            The expected reason of rejection
+     * @return The rejection
+     * @throws Exception
+     *             in case of unexpected error
+     */
+    private static TokenRejectedException assertUnauthorized(
+            final JWTRequestFilter jwtFilter,
+            final String token,
+            final Reason expected) throws Exception {
+        try {
+            jwtFilter.filter(requestContext(token));
+            fail("expected rejection: " + expected);
+            return null;
+        } catch (TokenRejectedException e) {
+            assertEquals(expected, e.getReason());
+            assertEquals(401, e.getResponse().getStatus());
+            assertEquals("Bearer", e.getResponse().getHeaderString(HttpHeaders.WWW_AUTHENTICATE));
+            return e;
+        }
+    }
+
+    /**
+     * @param token
+     *            The Bearer token
+     * @return A {@link ContainerRequestContext} with the token
+     */
+    private static ContainerRequestContext requestContext(final String token) {
+        ContainerRequestContext requestContext = mock(ContainerRequestContext.class);
+        when(requestContext.getHeaderString(HttpHeaders.AUTHORIZATION)).thenReturn("Bearer " + token);
+        when(requestContext.getSecurityContext()).thenReturn(mock(SecurityContext.class));
+        return requestContext;
+    }
+}
@@ -0,0 +1,42 @@
+package com.sixturtle.jwt;
+
+import static org.junit.Assert.assertNotNull;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+/**
+ * JUnit tests for {@link KeyMaterialListener}.
+ */
+public class KeyMaterialListenerTest {
+
+    @Test
+    public void testLifecycle() throws Exception {
+        TestKeys.install();
+        ServletContext servletContext = mock(ServletContext.class);
+        ServletContextEvent event = new ServletContextEvent(servletContext);
+        KeyMaterialListener listener = new KeyMaterialListener();
+
+        listener.contextInitialized(event);
+        ArgumentCaptor<Object> keyMaterial = ArgumentCaptor.forClass(Object.class);
+        verify(servletContext).setAttribute(eq(KeyMaterial.ATTRIBUTE), keyMaterial.capture());
+        when(servletContext.getAttribute(KeyMaterial.ATTRIBUTE)).thenReturn(keyMaterial.getValue());
+
+        assertNotNull("Filter not built from the context", new JWTRequestFilter(servletContext));
+
+        listener.contextDestroyed(event);
+        verify(servletContext).removeAttribute(KeyMaterial.ATTRIBUTE);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testListenerNotRegistered() throws Exception {
+        new JWTRequestFilter(mock(ServletContext.class));
+    }
+}
@@ -0,0 +1,65 @@
+package com.sixturtle.jwt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import com.sixturtle.jwt.TokenRejectedException.Reason;
+
+/**
+ * JUnit tests for {@link RejectedTokenCache}.
+ */
+public class RejectedTokenCacheTest {
+
+    @Test
+    public void testOnlyCacheableReasonsStored() {
+        RejectedTokenCache cache = new RejectedTokenCache(100, 30);
+        for (Reason reason : Reason.values()) {
+            String key = ExpiringTokenCache.hash("token-" + reason);
+            cache.put(key, new TokenRejectedException(reason, "Unauthorized: " + reason));
+            assertEquals("Cached rejection for: " + reason, reason.isCacheable(), cache.getRejection(key) != null);
+        }
+        assertEquals(Reason.values().length - 2, cache.size());
+    }
+
+    @Test
+    public void testTransientReasonsNotStored() {
+        RejectedTokenCache cache = new RejectedTokenCache(100, 30);
+        String key = ExpiringTokenCache.hash("token");
+
+        cache.put(key, new TokenRejectedException(Reason.NOT_YET_VALID, "Unauthorized: too early"));
+        assertNull("A not yet valid token becomes valid later", cache.getRejection(key));
+
+        cache.put(key, new TokenRejectedException(Reason.UNKNOWN_KEY, "Unauthorized: unknown key"));
+        assertNull("An unknown key may be published later", cache.getRejection(key));
+    }
+
+    @Test
+    public void testRejectionRebuilt() {
+        RejectedTokenCache cache = new RejectedTokenCache(100, 30);
+        String key = ExpiringTokenCache.hash("token");
+        TokenRejectedException rejection = new TokenRejectedException(Reason.BAD_SIGNATURE, "Unauthorized: bad signature");
+        cache.put(key, rejection);
+
+        TokenRejectedException cached = cache.getRejection(key);
+        assertNotNull(cached);
+        assertNotSame("Each lookup must throw a new exception", rejection, cached);
+        assertEquals(Reason.BAD_SIGNATURE, cached.getReason());
+        assertEquals(rejection.getMessage(), cached.getMessage());
+        assertEquals(401, cached.getResponse().getStatus());
+    }
+
+    @Test
+    public void testRejectionExpires() throws InterruptedException {
+        RejectedTokenCache cache = new RejectedTokenCache(100, 1);
+        String key = ExpiringTokenCache.hash("token");
+        cache.put(key, new TokenRejectedException(Reason.MALFORMED, "Unauthorized: Malformed JWT"));
+        assertNotNull(cache.getRejection(key));
+
+        Thread.sleep(1100);
+        assertNull("Rejection remembered beyond its TTL", cache.getRejection(key));
+    }
+}
@@ -0,0 +1,344 @@
+package com.sixturtle.jwt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import javax.annotation.security.DenyAll;
+import javax.annotation.security.PermitAll;
+import javax.annotation.security.RolesAllowed;
+import javax.ws.rs.ForbiddenException;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.core.FeatureContext;
+import javax.ws.rs.core.SecurityContext;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.sixturtle.jwt.JWTRequestFilter.JWTPrincipal;
+import com.sixturtle.jwt.JWTRequestFilter.JWTSecurityContext;
+
+/**
+ * JUnit tests for {@link RolesAllowedFeature} and {@link RoleDictionary}.
+ * <p>
+ * The dictionary is a JVM wide singleton which one test fills up to
+ * {@link RoleDictionary#MAX_ROLES}, so the roles checked by the other tests
+ * are registered upfront.
+ * </p>
+ */
+public class RolesAllowedFeatureTest {
+    private static final String[] ROLES = {"USER", "ADMIN", "AUDITOR", "sixturtle"};
+
+    private static JWTRequestFilter jwtFilter;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        for (String role : ROLES) {
+            RoleDictionary.getInstance().register(role);
+        }
+        jwtFilter = new JWTRequestFilter(TestKeys.install());
+    }
+
+    @Test
+    public void testDictionaryMasks() {
+        RoleDictionary dictionary = RoleDictionary.getInstance();
+        int user  = dictionary.register("USER");
+        int admin = dictionary.register("ADMIN");
+
+        assertEquals("Role registered twice", user, dictionary.register("USER"));
+        assertEquals(1L << user, dictionary.maskOf("USER"));
+        assertEquals((1L << user) | (1L << admin), dictionary.maskOf(new String[] {"USER", "ADMIN", "GUEST"}));
+        assertEquals("Unknown role has a bit", 0L, dictionary.maskOf("GUEST"));
+        assertEquals(0L, dictionary.maskOf((String) null));
+        assertEquals(0L, dictionary.maskOf((String[]) null));
+    }
+
+    @Test
+    public void testMethodAnnotationMask() throws Exception {
+        ContainerRequestFilter filter = configure(AdminResource.class, "read");
+        assertEquals(RoleDictionary.getInstance().maskOf(new String[] {"USER", "AUDITOR"}), maskOf(filter));
+
+        assertAllowed(filter, principal("[\"USER\"]", null));
+        assertAllowed(filter, principal("[\"AUDITOR\"]", null));
+        assertDenied(filter, principal("[\"ADMIN\"]", null));
+    }
+
+    @Test
+    public void testClassAnnotationMask() throws Exception {
+        ContainerRequestFilter filter = configure(AdminResource.class, "list");
+        assertEquals(RoleDictionary.getInstance().maskOf("ADMIN"), maskOf(filter));
+
+        assertAllowed(filter, principal("[\"USER\", \"ADMIN\"]", null));
+        assertDenied(filter, principal("[\"USER\"]", null));
+        assertDenied(filter, principal(null, null));
+    }
+
+    @Test
+    public void testOrganizationAsRole() throws Exception {
+        ContainerRequestFilter filter = configure(OrganizationResource.class, "read");
+
+        assertAllowed(filter, principal(null, "[\"sixturtle\"]"));
+        assertDenied(filter, principal("[\"sixturtle-admin\"]", "[\"acme\"]"));
+    }
+
+    @Test
+    public void testPermitAllAndNoAnnotation() throws Exception {
+        assertNotConfigured(AdminResource.class, "ping");
+        assertNotConfigured(OpenResource.class, "ping");
+    }
+
+    @Test
+    public void testDenyAll() throws Exception {
+        assertDenied(configure(AdminResource.class, "purge"), principal("[\"USER\", \"ADMIN\", \"AUDITOR\"]", null));
+        assertDenied(configure(ClosedResource.class, "ping"), principal("[\"USER\", \"ADMIN\", \"AUDITOR\"]", null));
+    }
+
+    @Test
+    public void testOtherSecurityContextCheckedByName() throws Exception {
+        ContainerRequestFilter filter = configure(AdminResource.class, "read");
+
+        SecurityContext ctx = mock(SecurityContext.class);
+        when(ctx.isUserInRole("AUDITOR")).thenReturn(true);
+        filter.filter(requestContext(ctx));
+
+        try {
+            filter.filter(requestContext(mock(SecurityContext.class)));
+            fail("expected ForbiddenException");
+        } catch (ForbiddenException e) {
+            assertEquals(403, e.getResponse().getStatus());
+        }
+    }
+
+    @Test
+    public void testIsUserInRoleMatchesNameCheck() {
+        JWTPrincipal[] principals = {
+            principal("[\"USER\"]", "[\"sixturtle\"]"),
+            principal("[\"ADMIN\", \"GUEST\"]", null),
+            principal(null, "[\"acme\"]"),
+            principal(null, null)
+        };
+        String[] checked = {"USER", "ADMIN", "AUDITOR", "sixturtle", "GUEST", "acme", "user", ""};
+        for (JWTPrincipal principal : principals) {
+            JWTSecurityContext ctx = new JWTSecurityContext(principal, false);
+            for (String role : checked) {
+                assertEquals(principal + " in role: " + role, hasRoleByName(principal, role), ctx.isUserInRole(role));
+            }
+        }
+    }
+
+    @Test
+    public void testRolesBeyondLimitCheckedByName() throws Exception {
+        RoleDictionary dictionary = RoleDictionary.getInstance();
+        for (int iIndex = 0; dictionary.register("filler-" + iIndex) >= 0; ++iIndex) {
+            assertTrue("Dictionary exceeds its limit", iIndex < RoleDictionary.MAX_ROLES);
+        }
+        assertEquals(-1, dictionary.register("LATECOMER"));
+        assertEquals(0L, dictionary.maskOf("LATECOMER"));
+        assertTrue("Registered role lost its bit", dictionary.maskOf("USER") != 0L);
+
+        ContainerRequestFilter filter = configure(LateResource.class, "read");
+        assertAllowed(filter, principal("[\"LATECOMER\"]", null));
+        assertAllowed(filter, principal(null, "[\"LATECOMER\"]"));
+        assertDenied(filter, principal("[\"USER\"]", null));
+
+        JWTSecurityContext ctx = new JWTSecurityContext(principal("[\"LATECOMER\"]", null), false);
+        assertTrue(ctx.isUserInRole("LATECOMER"));
+    }
+
+    /**
+     * The role check of the former {@link JWTSecurityContext}, which looked up
+     * the role in a set of the principal roles and organizations.
+     *
+     * @param principal
+     *            The {@link JWTPrincipal}
+     * @param role
+     *            The role name
+     * @return true if the principal has the role or organization
+     */
+    private static boolean hasRoleByName(final JWTPrincipal principal, final String role) {
+        return (principal.getRoles() != null && Arrays.asList(principal.getRoles()).contains(role))
+                || (principal.getOrganizations() != null && Arrays.asList(principal.getOrganizations()).contains(role));
+    }
+
+    /**
+     * @param roles
+     *            The JSON array of the "realm_access.roles" claim, null if
+     *            missing
+     * @param organizations
+     *            The JSON array of the "organizations" claim, null if missing
+     * @return A {@link JWTPrincipal} reading the claims on first access
+     */
+    private static JWTPrincipal principal(final String roles, final String organizations) {
+        StringBuilder payload = new StringBuilder("{\"sub\": \"john.doe\"");
+        if (roles != null) {
+            payload.append(", \"realm_access\": {\"roles\": ").append(roles).append("}");
+        }
+        if (organizations != null) {
+            payload.append(", \"organizations\": ").append(organizations);
+        }
+        payload.append("}");
+        return jwtFilter.buildPrincipal(payload.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param type
+     *            The resource class
+     * @param name
+     *            The resource method name
+     * @return The filter registered by {@link RolesAllowedFeature}
+     * @throws Exception
+     *             in case of reflection error
+     */
+    private static ContainerRequestFilter configure(final Class<?> type, final String name) throws Exception {
+        FeatureContext context = mock(FeatureContext.class);
+        new RolesAllowedFeature().configure(resourceInfo(type, name), context);
+
+        ArgumentCaptor<Object> captor = ArgumentCaptor.forClass(Object.class);
+        verify(context).register(captor.capture());
+        assertNotNull(captor.getValue());
+        return (ContainerRequestFilter) captor.getValue();
+    }
+
+    /**
+     * @param type
+     *            The resource class
+     * @param name
+     *            The resource method name
+     * @throws Exception
+     *             in case of reflection error
+     */
+    private static void assertNotConfigured(final Class<?> type, final String name) throws Exception {
+        FeatureContext context = mock(FeatureContext.class);
+        new RolesAllowedFeature().configure(resourceInfo(type, name), context);
+        verifyZeroInteractions(context);
+    }
+
+    /**
+     * @param type
+     *            The resource class
+     * @param name
+     *            The resource method name
+     * @return A {@link ResourceInfo} of the method
+     * @throws Exception
+     *             in case of reflection error
+     */
+    private static ResourceInfo resourceInfo(final Class<?> type, final String name) throws Exception {
+        Method method = type.getMethod(name);
+        ResourceInfo resourceInfo = mock(ResourceInfo.class);
+        doReturn(type).when(resourceInfo).getResourceClass();
+        doReturn(method).when(resourceInfo).getResourceMethod();
+        return resourceInfo;
+    }
+
+    /**
+     * @param filter
+     *            A filter registered by {@link RolesAllowedFeature}
+     * @return The precomputed mask of its allowed roles
+     * @throws Exception
+     *             in case of reflection error
+     */
+    private static long maskOf(final ContainerRequestFilter filter) throws Exception {
+        Field mask = filter.getClass().getDeclaredField("mask");
+        mask.setAccessible(true);
+        return mask.getLong(filter);
+    }
+
+    /**
+     * @param filter
+     *            A filter registered by {@link RolesAllowedFeature}
+     * @param principal
+     *            The authenticated principal
+     * @throws Exception
+     *             in case of filter error
+     */
+    private static void assertAllowed(final ContainerRequestFilter filter, final JWTPrincipal principal) throws Exception {
+        try {
+            filter.filter(requestContext(new JWTSecurityContext(principal, false)));
+        } catch (ForbiddenException e) {
+            fail("Access denied to: " + principal);
+        }
+    }
+
+    /**
+     * @param filter
+     *            A filter registered by {@link RolesAllowedFeature}
+     * @param principal
+     *            The authenticated principal
+     * @throws Exception
+     *             in case of filter error
+     */
+    private static void assertDenied(final ContainerRequestFilter filter, final JWTPrincipal principal) throws Exception {
+        try {
+            filter.filter(requestContext(new JWTSecurityContext(principal, false)));
+            fail("Access granted to: " + principal);
+        } catch (ForbiddenException e) {
+            assertEquals(403, e.getResponse().getStatus());
+        }
+    }
+
+    /**
+     * @param ctx
+     *            The security context set by authentication
+     * @return A {@link ContainerRequestContext} with the security context
+     */
+    private static ContainerRequestContext requestContext(final SecurityContext ctx) {
+        ContainerRequestContext requestContext = mock(ContainerRequestContext.class);
+        when(requestContext.getSecurityContext()).thenReturn(ctx);
+        return requestContext;
+    }
+
+    @RolesAllowed("ADMIN")
+    public static class AdminResource {
+        public void list() {
+        }
+
+        @RolesAllowed({"USER", "AUDITOR"})
+        public void read() {
+        }
+
+        @PermitAll
+        public void ping() {
+        }
+
+        @DenyAll
+        public void purge() {
+        }
+    }
+
+    public static class OpenResource {
+        public void ping() {
+        }
+    }
+
+    @DenyAll
+    public static class ClosedResource {
+        public void ping() {
+        }
+    }
+
+    public static class OrganizationResource {
+        @RolesAllowed("sixturtle")
+        public void read() {
+        }
+    }
+
+    public static class LateResource {
+        @RolesAllowed("LATECOMER")
+        public void read() {
+        }
+    }
+}
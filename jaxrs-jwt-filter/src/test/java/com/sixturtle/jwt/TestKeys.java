@@ -0,0 +1,107 @@
+package com.sixturtle.jwt;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSObject;
+import com.nimbusds.jose.Payload;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+
+/**
+ * Test key material shared by the tests which build a {@link JWTRequestFilter}.
+ * <p>
+ * An RSA key pair is generated once and its public key published as a JWK Set
+ * file, from which a single {@link KeyMaterial} is loaded for all the filters
+ * of the test JVM.
+ * </p>
+ */
+final class TestKeys {
+    private static final String KEY_ID = "test";
+
+    private static KeyPair     keyPair;
+    private static KeyMaterial keyMaterial;
+
+    /**
+     * Hidden, static access only.
+     */
+    private TestKeys() {
+    }
+
+    /**
+     * Publishes the test key to {@link KeyMaterial}.
+     *
+     * @return The key material holding the test key
+     * @throws Exception
+     *             in case of key generation or I/O error
+     */
+    static synchronized KeyMaterial install() throws Exception {
+        if (keyPair == null) {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048);
+            keyPair = generator.generateKeyPair();
+
+            File jwks = File.createTempFile("jwks", ".json");
+            jwks.deleteOnExit();
+            try (OutputStream out = new FileOutputStream(jwks)) {
+                RSAKey key = new RSAKey.Builder((RSAPublicKey) keyPair.getPublic()).keyID(KEY_ID).build();
+                out.write(new JWKSet(key).toString().getBytes(StandardCharsets.UTF_8));
+            }
+            System.setProperty(JWTRequestFilter.PROP_JWKS_URL, jwks.getAbsolutePath());
+            keyMaterial = KeyMaterial.load();
+        }
+        return keyMaterial;
+    }
+
+    /**
+     * @param subject
+     *            The "sub" claim
+     * @return Claims valid for one hour
+     */
+    static JWTClaimsSet.Builder claims(final String subject) {
+        return new JWTClaimsSet.Builder()
+                .subject(subject)
+                .expirationTime(new Date(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1)));
+    }
+
+    /**
+     * @param claimsSet
+     *            The claims
+     * @return The compact serialized token, signed with RS256 by the test key
+     * @throws Exception
+     *             in case of signing error
+     */
+    static synchronized String sign(final JWTClaimsSet claimsSet) throws Exception {
+        install();
+        SignedJWT jwt = new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.RS256).keyID(KEY_ID).build(), claimsSet);
+        jwt.sign(new RSASSASigner((RSAPrivateKey) keyPair.getPrivate()));
+        return jwt.serialize();
+    }
+
+    /**
+     * @param payload
+     *            The payload, signed as is even if it is not valid JSON
+     * @return The compact serialized token, signed with RS256 by the test key
+     * @throws Exception
+     *             in case of signing error
+     */
+    static synchronized String sign(final String payload) throws Exception {
+        install();
+        JWSObject jws = new JWSObject(new JWSHeader.Builder(JWSAlgorithm.RS256).keyID(KEY_ID).build(), new Payload(payload));
+        jws.sign(new RSASSASigner((RSAPrivateKey) keyPair.getPrivate()));
+        return jws.serialize();
+    }
+}
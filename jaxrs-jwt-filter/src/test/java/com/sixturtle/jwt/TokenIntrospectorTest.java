@@ -0,0 +1,228 @@
+package com.sixturtle.jwt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response.Status;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import com.sixturtle.jwt.JWTRequestFilter.JWTPrincipal;
+import com.sixturtle.jwt.TokenRejectedException.Reason;
+
+/**
+ * JUnit tests for {@link TokenIntrospector}, against an in-process stand-in
+ * of the introspection endpoint.
+ */
+public class TokenIntrospectorTest {
+    private static final String TOKEN = "opaque-token";
+    private static final String KEY   = ExpiringTokenCache.hash(TOKEN);
+
+    private final AtomicInteger hits = new AtomicInteger();
+    private final JWTPrincipal  principal = mock(JWTPrincipal.class);
+
+    private HttpServer      server;
+    private volatile int    status = 200;
+    private volatile String body;
+    private volatile long   delayMillis;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/introspect", this::respond);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testActiveTokenCached() throws Exception {
+        body = activeResponse(3600);
+        TokenIntrospector introspector = createIntrospector(300);
+
+        assertSame(principal, introspector.introspect(KEY, TOKEN));
+        assertSame(principal, introspector.introspect(KEY, TOKEN));
+        assertEquals("Active token must be cached", 1, hits.get());
+    }
+
+    @Test
+    public void testInactiveToken() throws Exception {
+        body = "{\"active\": false}";
+        TokenIntrospector introspector = createIntrospector(300);
+
+        try {
+            introspector.introspect(KEY, TOKEN);
+            fail("expected TokenRejectedException");
+        } catch (TokenRejectedException e) {
+            assertEquals(Reason.INACTIVE, e.getReason());
+        }
+    }
+
+    @Test
+    public void testExpirationCappedByMaxTtl() throws Exception {
+        body = activeResponse(3600);
+        TokenIntrospector introspector = createIntrospector(1);
+
+        introspector.introspect(KEY, TOKEN);
+        Thread.sleep(1100);
+        introspector.introspect(KEY, TOKEN);
+
+        assertEquals("Token cached beyond the max TTL", 2, hits.get());
+    }
+
+    @Test
+    public void testServerErrorNotCached() throws Exception {
+        status = 500;
+        body = "{\"error\": \"server_error\"}";
+        TokenIntrospector introspector = createIntrospector(300);
+
+        assertUnavailable(introspector);
+        assertUnavailable(introspector);
+        assertEquals("Server error must not be cached", 2, hits.get());
+
+        status = 200;
+        body = activeResponse(3600);
+        assertSame(principal, introspector.introspect(KEY, TOKEN));
+    }
+
+    @Test
+    public void testUnreadableResponseNotCached() throws Exception {
+        TokenIntrospector introspector = createIntrospector(300);
+
+        body = "<html><body>Bad Gateway</body></html>";
+        assertUnavailable(introspector);
+        body = "{\"active\": true, \"exp\": ";
+        assertUnavailable(introspector);
+        body = "{\"exp\": 4102444800}";
+        assertUnavailable(introspector);
+
+        body = activeResponse(3600);
+        assertSame(principal, introspector.introspect(KEY, TOKEN));
+        assertEquals(4, hits.get());
+    }
+
+    @Test
+    public void testConcurrentCallersShareOneCall() throws Exception {
+        body = activeResponse(3600);
+        delayMillis = 300;
+        final TokenIntrospector introspector = createIntrospector(300);
+
+        int callers = 8;
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        try {
+            List<Future<JWTPrincipal>> results = new ArrayList<>();
+            for (int iIndex = 0; iIndex < callers; ++iIndex) {
+                results.add(executor.submit(new Callable<JWTPrincipal>() {
+                    @Override
+                    public JWTPrincipal call() throws Exception {
+                        start.await();
+                        return introspector.introspect(KEY, TOKEN);
+                    }
+                }));
+            }
+            start.countDown();
+            for (Future<JWTPrincipal> result : results) {
+                assertSame(principal, result.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals("Concurrent callers must share one call", 1, hits.get());
+    }
+
+    /**
+     * @param maxTtlSeconds
+     *            How long an active token is cached at most
+     * @return A {@link TokenIntrospector} calling the stand-in endpoint
+     * @throws IOException
+     *             in case of malformed URL
+     */
+    private TokenIntrospector createIntrospector(final long maxTtlSeconds) throws IOException {
+        URL endpoint = new URL("http://localhost:" + server.getAddress().getPort() + "/introspect");
+        return new TokenIntrospector(endpoint, "resource-server", "secret", 100, maxTtlSeconds, payload -> principal);
+    }
+
+    /**
+     * @param introspector
+     *            The {@link TokenIntrospector}
+     */
+    private void assertUnavailable(final TokenIntrospector introspector) {
+        try {
+            introspector.introspect(KEY, TOKEN);
+            fail("expected WebApplicationException");
+        } catch (TokenRejectedException e) {
+            fail("Unavailable endpoint must not reject the token: " + e.getReason());
+        } catch (WebApplicationException e) {
+            assertEquals(Status.SERVICE_UNAVAILABLE.getStatusCode(), e.getResponse().getStatus());
+        }
+    }
+
+    /**
+     * @param expiresInSeconds
+     *            Seconds until the token expires
+     * @return The response of an active token
+     */
+    private static String activeResponse(final long expiresInSeconds) {
+        long exp = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) + expiresInSeconds;
+        return "{\"active\": true, \"sub\": \"john.doe\", \"exp\": " + exp + "}";
+    }
+
+    /**
+     * Answers the stand-in endpoint requests with the current status and body.
+     *
+     * @param exchange
+     *            The {@link HttpExchange}
+     * @throws IOException
+     *             in case of I/O error
+     */
+    private void respond(final HttpExchange exchange) throws IOException {
+        hits.incrementAndGet();
+        try (InputStream in = exchange.getRequestBody()) {
+            while (in.read() != -1) {
+                // drain the form
+            }
+        }
+        if (delayMillis > 0) {
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
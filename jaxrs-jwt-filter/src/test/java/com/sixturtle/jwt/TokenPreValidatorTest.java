@@ -0,0 +1,159 @@
+package com.sixturtle.jwt;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.sixturtle.jwt.TokenRejectedException.Reason;
+
+/**
+ * JUnit tests for {@link TokenPreValidator}.
+ */
+public class TokenPreValidatorTest {
+    private static final String RS256     = "{\"alg\":\"RS256\",\"typ\":\"JWT\"}";
+    private static final String SIGNATURE = "c2lnbmF0dXJl";
+
+    private final TokenPreValidator validator = createValidator(0);
+
+    @Test
+    public void testSegmentCount() {
+        String payload = claims("\"exp\":" + secondsFromNow(60));
+        assertRejected(validator, encode(RS256), Reason.MALFORMED);
+        assertRejected(validator, encode(RS256) + "." + encode(payload), Reason.MALFORMED);
+        assertRejected(validator, token(RS256, payload) + ".extra", Reason.MALFORMED);
+        assertRejected(validator, "." + encode(payload) + "." + SIGNATURE, Reason.MALFORMED);
+        assertRejected(validator, encode(RS256) + ".." + SIGNATURE, Reason.MALFORMED);
+        assertRejected(validator, "not base64!." + encode(payload) + "." + SIGNATURE, Reason.MALFORMED);
+        assertRejected(validator, token("[\"RS256\"]", payload), Reason.MALFORMED);
+    }
+
+    @Test
+    public void testAlgorithm() {
+        String payload = claims("\"exp\":" + secondsFromNow(60));
+        assertRejected(validator, token("{\"alg\":\"none\"}", payload), Reason.UNSUPPORTED_ALGORITHM);
+        assertRejected(validator, token("{\"alg\":\"HS256\"}", payload), Reason.UNSUPPORTED_ALGORITHM);
+        assertRejected(validator, token("{\"typ\":\"JWT\"}", payload), Reason.UNSUPPORTED_ALGORITHM);
+        assertRejected(validator, token("{\"alg\":256}", payload), Reason.UNSUPPORTED_ALGORITHM);
+
+        validator.validate(token("{\"alg\":\"ES256\"}", payload));
+    }
+
+    @Test
+    public void testMissingExpiration() {
+        assertRejected(validator, token(RS256, claims("\"iat\":" + secondsFromNow(0))), Reason.MISSING_EXPIRATION);
+        assertRejected(validator, token(RS256, claims("\"exp\":\"tomorrow\"")), Reason.INVALID_CLAIMS);
+    }
+
+    @Test
+    public void testExpiration() {
+        assertRejected(validator, token(RS256, claims("\"exp\":" + secondsFromNow(-30))), Reason.EXPIRED);
+
+        TokenPreValidator skewed = createValidator(60);
+        skewed.validate(token(RS256, claims("\"exp\":" + secondsFromNow(-30))));
+        assertRejected(skewed, token(RS256, claims("\"exp\":" + secondsFromNow(-90))), Reason.EXPIRED);
+    }
+
+    @Test
+    public void testNotBefore() {
+        String notYet = claims("\"exp\":" + secondsFromNow(600) + ",\"nbf\":" + secondsFromNow(30));
+        assertRejected(validator, token(RS256, notYet), Reason.NOT_YET_VALID);
+
+        TokenPreValidator skewed = createValidator(60);
+        skewed.validate(token(RS256, notYet));
+        String later = claims("\"exp\":" + secondsFromNow(600) + ",\"nbf\":" + secondsFromNow(90));
+        assertRejected(skewed, token(RS256, later), Reason.NOT_YET_VALID);
+    }
+
+    @Test
+    public void testIssuerAndAudience() {
+        long exp = secondsFromNow(60);
+        TokenInfo info = validator.validate(token(RS256,
+                claims("\"iss\":\"https://idp.example.com\",\"aud\":\"orders\",\"exp\":" + exp)));
+        assertEquals("https://idp.example.com", info.getIssuer());
+        assertArrayEquals(new String[] {"orders"}, info.getAudience());
+        assertEquals(TimeUnit.SECONDS.toMillis(exp), info.getExpirationTime());
+
+        info = validator.validate(token(RS256, claims("\"aud\":[\"orders\",\"billing\"],\"exp\":" + exp)));
+        assertNull(info.getIssuer());
+        assertArrayEquals(new String[] {"orders", "billing"}, info.getAudience());
+
+        info = validator.validate(token(RS256, claims("\"exp\":" + exp)));
+        assertNull(info.getAudience());
+
+        assertRejected(validator, token(RS256, claims("\"iss\":42,\"exp\":" + exp)), Reason.INVALID_CLAIMS);
+        assertRejected(validator, token(RS256, claims("\"aud\":[\"orders\",7],\"exp\":" + exp)), Reason.INVALID_CLAIMS);
+    }
+
+    /**
+     * @param clockSkewSeconds
+     *            The tolerated clock difference
+     * @return A {@link TokenPreValidator} accepting RS256 and ES256
+     */
+    private static TokenPreValidator createValidator(final long clockSkewSeconds) {
+        return new TokenPreValidator(new HashSet<>(Arrays.asList("RS256", "ES256")), clockSkewSeconds);
+    }
+
+    /**
+     * @param tokenValidator
+     *            The {@link TokenPreValidator}
+     * @param token
+     *            The token to validate
+     * @param expected
+     *            The expected reason of rejection
+     */
+    private static void assertRejected(final TokenPreValidator tokenValidator, final String token, final Reason expected) {
+        try {
+            tokenValidator.validate(token);
+            fail("expected rejection: " + expected);
+        } catch (TokenRejectedException e) {
+            assertEquals(expected, e.getReason());
+        }
+    }
+
+    /**
+     * @param header
+     *            The header JSON
+     * @param payload
+     *            The payload JSON
+     * @return A compact serialized JWS with a dummy signature
+     */
+    private static String token(final String header, final String payload) {
+        return encode(header) + "." + encode(payload) + "." + SIGNATURE;
+    }
+
+    /**
+     * @param members
+     *            The claim members
+     * @return The payload JSON
+     */
+    private static String claims(final String members) {
+        return "{\"sub\":\"john.doe\"," + members + "}";
+    }
+
+    /**
+     * @param json
+     *            The JSON
+     * @return The base64url encoded JSON, without padding
+     */
+    private static String encode(final String json) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param seconds
+     *            Seconds from now, negative in the past
+     * @return The NumericDate
+     */
+    private static long secondsFromNow(final long seconds) {
+        return TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) + seconds;
+    }
+}
@@ -0,0 +1,166 @@
+package com.sixturtle.jwt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.SecurityContext;
+
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * JUnit tests for {@link VerificationBudget}, alone and applied by
+ * {@link JWTRequestFilter}.
+ */
+public class VerificationBudgetTest {
+
+    @Test
+    public void testBurstThenDenied() {
+        VerificationBudget budget = new VerificationBudget(5, 100);
+        for (int iIndex = 0; iIndex < 5; ++iIndex) {
+            assertTrue("Permit " + iIndex + " of the burst denied", budget.tryAcquire("10.0.0.1"));
+        }
+        assertFalse("Budget not exhausted", budget.tryAcquire("10.0.0.1"));
+        assertTrue("Budget shared between clients", budget.tryAcquire("10.0.0.2"));
+    }
+
+    @Test
+    public void testRefill() throws InterruptedException {
+        VerificationBudget budget = new VerificationBudget(10, 100);
+        while (budget.tryAcquire("10.0.0.1")) {
+            // drain the bucket
+        }
+
+        Thread.sleep(250);
+        assertTrue("Bucket not refilled", budget.tryAcquire("10.0.0.1"));
+        assertTrue("Bucket not refilled at the configured rate", budget.tryAcquire("10.0.0.1"));
+
+        Thread.sleep(1100);
+        int permits = 0;
+        while (budget.tryAcquire("10.0.0.1")) {
+            ++permits;
+        }
+        assertEquals("Bucket refilled above its capacity", 10, permits);
+    }
+
+    @Test
+    public void testRateBelowOnePerSecond() {
+        VerificationBudget budget = new VerificationBudget(0.5, 100);
+        assertTrue("Rate below one per second never grants a permit", budget.tryAcquire("10.0.0.1"));
+        assertFalse("Budget not exhausted", budget.tryAcquire("10.0.0.1"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidRate() {
+        new VerificationBudget(0, 100);
+    }
+
+    @Test
+    public void testFilterAnswersTooManyRequests() throws Exception {
+        KeyMaterial keyMaterial = TestKeys.install();
+        System.setProperty(JWTRequestFilter.PROP_VERIFY_RATE, "1");
+        System.setProperty(JWTRequestFilter.PROP_TOKEN_CACHE_SIZE, "0");
+        JWTRequestFilter filter;
+        try {
+            filter = new JWTRequestFilter(keyMaterial);
+        } finally {
+            System.clearProperty(JWTRequestFilter.PROP_VERIFY_RATE);
+            System.clearProperty(JWTRequestFilter.PROP_TOKEN_CACHE_SIZE);
+        }
+        String first  = TestKeys.sign(TestKeys.claims("john.doe").build());
+        String second = TestKeys.sign(TestKeys.claims("jane.doe").build());
+
+        filter.filter(requestContext(first));
+        try {
+            filter.filter(requestContext(second));
+            fail("expected HTTP 429");
+        } catch (TokenRejectedException e) {
+            fail("Throttled token must not be rejected: " + e.getReason());
+        } catch (WebApplicationException e) {
+            assertEquals(429, e.getResponse().getStatus());
+            assertEquals("1", e.getResponse().getHeaderString(HttpHeaders.RETRY_AFTER));
+        }
+
+        Thread.sleep(1100);
+        filter.filter(requestContext(second));
+    }
+
+    @Test
+    public void testIntrospectionMissesAreThrottled() throws Exception {
+        final AtomicInteger hits = new AtomicInteger();
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/introspect", exchange -> {
+            hits.incrementAndGet();
+            try (InputStream in = exchange.getRequestBody()) {
+                while (in.read() != -1) {
+                    // drain the form
+                }
+            }
+            long exp = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) + 300;
+            byte[] bytes = ("{\"active\": true, \"sub\": \"john.doe\", \"exp\": " + exp + "}").getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        server.start();
+
+        KeyMaterial keyMaterial = TestKeys.install();
+        System.setProperty(JWTRequestFilter.PROP_INTROSPECTION_URL,
+                "http://localhost:" + server.getAddress().getPort() + "/introspect");
+        System.setProperty(JWTRequestFilter.PROP_VERIFY_RATE, "1");
+        System.setProperty(JWTRequestFilter.PROP_TOKEN_CACHE_SIZE, "0");
+        JWTRequestFilter filter;
+        try {
+            filter = new JWTRequestFilter(keyMaterial);
+        } finally {
+            System.clearProperty(JWTRequestFilter.PROP_INTROSPECTION_URL);
+            System.clearProperty(JWTRequestFilter.PROP_VERIFY_RATE);
+            System.clearProperty(JWTRequestFilter.PROP_TOKEN_CACHE_SIZE);
+        }
+
+        try {
+            filter.filter(requestContext("opaque-1"));
+            filter.filter(requestContext("opaque-1"));
+            try {
+                filter.filter(requestContext("opaque-2"));
+                fail("expected HTTP 429");
+            } catch (TokenRejectedException e) {
+                fail("Throttled token must not be rejected: " + e.getReason());
+            } catch (WebApplicationException e) {
+                assertEquals(429, e.getResponse().getStatus());
+            }
+            assertEquals("Throttled token must not be introspected", 1, hits.get());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    /**
+     * @param token
+     *            The Bearer token
+     * @return A {@link ContainerRequestContext} with the token
+     */
+    private static ContainerRequestContext requestContext(final String token) {
+        ContainerRequestContext requestContext = mock(ContainerRequestContext.class);
+        when(requestContext.getHeaderString(HttpHeaders.AUTHORIZATION)).thenReturn("Bearer " + token);
+        when(requestContext.getSecurityContext()).thenReturn(mock(SecurityContext.class));
+        return requestContext;
+    }
+}
@@ -0,0 +1,52 @@
+package com.sixturtle.db;
+
+import javax.enterprise.event.Event;
+import javax.inject.Inject;
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+
+import org.hibernate.Hibernate;
+
+import com.sixturtle.db.EntityCounter.Change;
+
+/**
+ * A JPA entity listener firing a {@link Change} event for each entity inserted
+ * or removed, cascades included, to keep {@link EntityCounter} up to date.
+ *
+ * @author Anurag Sharma
+ */
+public class EntityCountListener {
+    @Inject
+    private Event<Change> changes;
+
+    /**
+     * @param entity
+     *            The entity inserted
+     */
+    @PostPersist
+    public void inserted(final Object entity) {
+        fire(entity, 1);
+    }
+
+    /**
+     * @param entity
+     *            The entity removed
+     */
+    @PostRemove
+    public void removed(final Object entity) {
+        fire(entity, -1);
+    }
+
+    /**
+     * @param entity
+     *            The entity
+     * @param delta
+     *            The count change
+     */
+    private void fire(final Object entity, final long delta) {
+        // not injected when the persistence unit runs without CDI, e.g. in unit tests
+        if (changes != null) {
+            changes.fire(new Change(Hibernate.getClass(entity), delta));
+        }
+    }
+}
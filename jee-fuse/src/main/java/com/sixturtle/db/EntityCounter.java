@@ -0,0 +1,145 @@
+package com.sixturtle.db;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.enterprise.event.TransactionPhase;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the number of rows of each entity type in memory, so that paginated
+ * listings do not run a COUNT query per request.
+ * <p>
+ * A count is loaded from the database on first use, then adjusted by the
+ * {@link Change} events fired by {@link EntityCountListener} once the
+ * transaction inserting or removing the entities has committed. Changes made
+ * outside of JPA, or by another node of a cluster, are picked up when the
+ * count is reloaded, at most every "entity.count.reconcile.seconds" (60 by
+ * default), so the count may be off by that much.
+ * </p>
+ *
+ * @author Anurag Sharma
+ */
+@ApplicationScoped
+public class EntityCounter {
+    private static final Logger log = LoggerFactory.getLogger(EntityCounter.class);
+
+    private static final long DEFAULT_RECONCILE_SECONDS = 60;
+
+    private final ConcurrentMap<Class<?>, Count> counts = new ConcurrentHashMap<>();
+    private final long reconcileMillis;
+
+    /**
+     * Default constructor reads the reconciliation interval from the
+     * "entity.count.reconcile.seconds" system property.
+     */
+    public EntityCounter() {
+        this(TimeUnit.SECONDS.toMillis(Long.getLong("entity.count.reconcile.seconds", DEFAULT_RECONCILE_SECONDS)));
+    }
+
+    /**
+     * Special constructor to set the reconciliation interval.
+     *
+     * @param reconcileMillis
+     *            How long a count is trusted before being reloaded, in
+     *            milliseconds
+     */
+    public EntityCounter(final long reconcileMillis) {
+        this.reconcileMillis = reconcileMillis;
+    }
+
+    /**
+     * Returns the cached count of an entity type, loading it if missing or
+     * due for reconciliation.
+     *
+     * @param type
+     *            The entity class
+     * @param loader
+     *            Counts the rows in the database
+     * @return The number of entities
+     */
+    public long count(final Class<?> type, final Supplier<Long> loader) {
+        Count count = counts.get(type);
+        long now = System.currentTimeMillis();
+        if (count == null || now - count.loadedAt >= reconcileMillis) {
+            count = new Count(loader.get(), now);
+            counts.put(type, count);
+            log.debug("reconciled count of {}: {}", type.getSimpleName(), count.value);
+        }
+        return count.value.get();
+    }
+
+    /**
+     * Applies a committed change to the cached count, if loaded.
+     *
+     * @param change
+     *            The {@link Change} event
+     */
+    public void onChange(@Observes(during = TransactionPhase.AFTER_SUCCESS) final Change change) {
+        Count count = counts.get(change.getType());
+        if (count != null) {
+            count.value.addAndGet(change.getDelta());
+        }
+    }
+
+    /**
+     * A cached count and its load time.
+     */
+    private static final class Count {
+        private final AtomicLong value;
+        private final long       loadedAt;
+
+        /**
+         * @param value
+         *            The count loaded from the database
+         * @param loadedAt
+         *            The load time in milliseconds
+         */
+        private Count(final long value, final long loadedAt) {
+            this.value    = new AtomicLong(value);
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    /**
+     * The event of entities of a type being inserted or removed.
+     *
+     * @author Anurag Sharma
+     */
+    public static final class Change {
+        private final Class<?> type;
+        private final long     delta;
+
+        /**
+         * @param type
+         *            The entity class
+         * @param delta
+         *            The number of entities inserted, negative if removed
+         */
+        public Change(final Class<?> type, final long delta) {
+            this.type  = type;
+            this.delta = delta;
+        }
+
+        /**
+         * @return the entity class
+         */
+        public Class<?> getType() {
+            return type;
+        }
+
+        /**
+         * @return the number of entities inserted, negative if removed
+         */
+        public long getDelta() {
+            return delta;
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package com.sixturtle.db;
 
+import java.io.IOException;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import javax.persistence.EntityManager;
 
@@ -31,6 +34,19 @@ public interface JPARepository<E extends BasicEntity<L>, L> {
      */
     E create(final E entity) throws InvalidEntityException;
 
+    /**
+     * Creates a large number of entities with JDBC batching. All the entities
+     * are validated before the first insert, so either all or none of them
+     * are persisted.
+     *
+     * @param entities
+     *            {@link Collection} of {@link BasicEntity}
+     * @return {@link List} of the created entities, detached
+     * @throws InvalidEntityException
+     *             when validation fails for any of the entities
+     */
+    List<E> createAll(final Collection<E> entities) throws InvalidEntityException;
+
     /**
      * @param entityId
      *            entityId
@@ -44,6 +60,30 @@ public interface JPARepository<E extends BasicEntity<L>, L> {
      */
     E update(final L entityId, final E entity) throws InvalidEntityException, UnknownEntityException;
 
+    /**
+     * Updates the basic properties of an entity with a single UPDATE
+     * statement matching both its id and version, without loading it. The
+     * associations are left unchanged, and the version is incremented.
+     * <p>
+     * Being a bulk statement, it makes Hibernate drop the whole second level
+     * cache region of the entity, and its natural id region, not just the
+     * updated entry. That is the price of skipping the read, worth it for
+     * entities written less often than they are read from the database.
+     * </p>
+     *
+     * @param entityId
+     *            entityId
+     * @param version
+     *            The version the caller last read
+     * @param entity
+     *            {@link BasicEntity} holding the new values
+     * @return 1 if updated, 0 if the entity is not found or its version
+     *         changed
+     * @throws InvalidEntityException
+     *             when validation fails
+     */
+    int updateIfVersion(final L entityId, final Long version, final E entity) throws InvalidEntityException;
+
     /**
      * @param entityId
      *            entityId
@@ -52,6 +92,44 @@ public interface JPARepository<E extends BasicEntity<L>, L> {
      */
     void delete(final L entityId) throws UnknownEntityException;
 
+    /**
+     * Deletes an entity with a single DELETE statement matching both its id
+     * and version, without loading it. As with {@link #deleteAll(Collection)},
+     * cascades and entity callbacks do not apply, and the whole second level
+     * cache region of the entity is dropped.
+     *
+     * @param entityId
+     *            entityId
+     * @param version
+     *            The version the caller last read
+     * @return 1 if deleted, 0 if the entity is not found or its version
+     *         changed
+     */
+    int deleteIfVersion(final L entityId, final Long version);
+
+    /**
+     * Deletes entities by id with bulk DELETE statements, without loading
+     * them. Cascades and entity callbacks do not apply, and managed instances
+     * of the deleted entities are left stale in the persistence context.
+     *
+     * @param entityIds
+     *            The ids of the entities to delete, unknown ids are ignored
+     * @return The number of entities deleted
+     */
+    int deleteAll(final Collection<L> entityIds);
+
+    /**
+     * Runs a named bulk UPDATE or DELETE statement. As with
+     * {@link #deleteAll(Collection)}, managed instances are not refreshed.
+     *
+     * @param query
+     *            The named query name
+     * @param params
+     *            The query parameters by name
+     * @return The number of entities updated or deleted
+     */
+    int updateWhere(final String query, final Map<String, Object> params);
+
     /**
      * @param entityId
      *            entityId
@@ -61,6 +139,30 @@ public interface JPARepository<E extends BasicEntity<L>, L> {
      */
     E find(final L entityId) throws UnknownEntityException;
 
+    /**
+     * Finds an entity loading the associations of a named entity graph along
+     * with it, in one statement.
+     *
+     * @param entityId
+     *            entityId
+     * @param graph
+     *            The name of the {@link javax.persistence.NamedEntityGraph}
+     * @return E The {@link BasicEntity} type, null if not found
+     */
+    E find(final L entityId, final String graph);
+
+    /**
+     * Finds an entity by its Hibernate {@code @NaturalId}. The id of the
+     * natural id is resolved from the natural id cache region when the
+     * entity declares {@code @NaturalIdCache}, and the entity from its own
+     * region, so a repeated lookup does not reach the database.
+     *
+     * @param naturalId
+     *            The value of the single natural id property
+     * @return E The {@link BasicEntity} type, null if not found
+     */
+    E findByNaturalId(final Object naturalId);
+
     /**
      * @param query
      *            The named query name
@@ -68,6 +170,17 @@ public interface JPARepository<E extends BasicEntity<L>, L> {
      */
     Long count(final String query);
 
+    /**
+     * Returns the number of all the entities of this repository type, kept
+     * in memory between calls when an {@link EntityCounter} is available, so
+     * it may lag behind the database by the counter reconciliation interval.
+     *
+     * @param query
+     *            The named query name, counting all the entities
+     * @return Long count
+     */
+    Long countAll(final String query);
+
     /**
      * @param query
      *            The named query name
@@ -78,4 +191,95 @@ public interface JPARepository<E extends BasicEntity<L>, L> {
      * @return {@link List} of {@link BasicEntity} type
      */
     List<E> list(final String query, final int offset, final int limit);
+
+    /**
+     * Lists the entities following a cursor, in id order. Unlike
+     * {@link #list(String, int, int)} the database seeks the cursor in the
+     * primary key index instead of scanning the skipped rows, so every page
+     * costs the same however deep it is.
+     *
+     * @param query
+     *            The named query name, selecting entities with an id greater
+     *            than the :cursor parameter, ordered by id
+     * @param cursor
+     *            The id of the last entity of the previous page
+     * @param limit
+     *            limit
+     * @return {@link List} of {@link BasicEntity} type
+     */
+    List<E> listAfter(final String query, final L cursor, final int limit);
+
+    /**
+     * Lists a page of entities with their associations in two statements:
+     * the page of ids is selected first, then the entities of those ids are
+     * loaded by a fetch join query. Paging the fetch join query itself would
+     * make the database return one row per collection element, and the page
+     * would be cut in memory.
+     *
+     * @param idQuery
+     *            The named query name, selecting the ordered entity ids
+     * @param fetchQuery
+     *            The named query name, selecting the entities whose id is in
+     *            the :ids parameter with their associations fetched
+     * @param offset
+     *            offset
+     * @param limit
+     *            limit
+     * @return {@link List} of {@link BasicEntity} type, in the order of the ids
+     */
+    List<E> list(final String idQuery, final String fetchQuery, final int offset, final int limit);
+
+    /**
+     * Lists the entities following a cursor, in id order, with their
+     * associations, as {@link #list(String, String, int, int)} does.
+     *
+     * @param idQuery
+     *            The named query name, selecting the ids greater than the
+     *            :cursor parameter, ordered
+     * @param fetchQuery
+     *            The named query name, selecting the entities whose id is in
+     *            the :ids parameter with their associations fetched
+     * @param cursor
+     *            The id of the last entity of the previous page
+     * @param limit
+     *            limit
+     * @return {@link List} of {@link BasicEntity} type, in id order
+     */
+    List<E> listAfter(final String idQuery, final String fetchQuery, final L cursor, final int limit);
+
+    /**
+     * Reads all the entities selected by a named query through a forward only
+     * database cursor and hands them one at a time to the handler. The
+     * entities are detached in chunks as they are read, so the memory held
+     * does not depend on the number of rows.
+     *
+     * @param query
+     *            The named query name
+     * @param handler
+     *            The {@link EntityHandler} called for each entity
+     * @throws IOException
+     *             in case of error thrown by the handler
+     */
+    void stream(final String query, final EntityHandler<E> handler) throws IOException;
+
+    /**
+     * A callback receiving the entities read by {@link JPARepository#stream(String, EntityHandler)}.
+     *
+     * @param <E>
+     *            The Entity Type
+     *
+     * @author Anurag Sharma
+     */
+    interface EntityHandler<E> {
+        /**
+         * Handles an entity. The entity may be detached once this method
+         * returns.
+         *
+         * @param entity
+         *            The entity read
+         * @throws IOException
+         *             in case of error writing the entity
+         */
+        void handle(E entity) throws IOException;
+    }
 }
\ No newline at end of file
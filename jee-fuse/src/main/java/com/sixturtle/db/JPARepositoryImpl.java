@@ -1,19 +1,35 @@
 package com.sixturtle.db;
 
+import java.io.IOException;
+import java.lang.reflect.Field;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 
+import javax.enterprise.context.ContextNotActiveException;
+import javax.enterprise.event.Event;
 import javax.inject.Inject;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityNotFoundException;
 import javax.persistence.PersistenceContext;
 import javax.persistence.Query;
+import javax.persistence.metamodel.Attribute.PersistentAttributeType;
+import javax.persistence.metamodel.EntityType;
+import javax.persistence.metamodel.SingularAttribute;
+import javax.transaction.Transactional;
 import javax.validation.ConstraintViolation;
 import javax.validation.Validator;
 
-import org.apache.commons.beanutils.BeanUtils;
+import org.hibernate.CacheMode;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -36,10 +52,60 @@ public abstract class JPARepositoryImpl<E extends BasicEntity<L>, L> implements
 
     protected static final String HINT_HIBERNATE_CACHEABLE = "org.hibernate.cacheable";
 
+    /**
+     * The persistence unit of the primary database, and of its read replica.
+     */
+    public static final String PRIMARY_UNIT = "sixturtlePersistentUnit";
+    public static final String REPLICA_UNIT = "sixturtleReplicaUnit";
+
+    /**
+     * The parameter of the named queries used by {@link #listAfter(String, Object, int)}.
+     */
+    public static final String PARAM_CURSOR = "cursor";
+
+    /**
+     * The parameter of the fetch queries used by {@link #list(String, String, int, int)}.
+     */
+    public static final String PARAM_IDS = "ids";
+
+    /**
+     * The parameters of the statements of {@link #updateIfVersion(Object, Long, BasicEntity)}
+     * and {@link #deleteIfVersion(Object, Long)}, prefixed not to clash with property names.
+     */
+    protected static final String PARAM_ID = "_id";
+    protected static final String PARAM_VERSION = "_version";
+
+    protected static final String HINT_LOAD_GRAPH = "javax.persistence.loadgraph";
+
+    /**
+     * Rows fetched per round trip by {@link #stream(String, EntityHandler)},
+     * and entities read between two persistence context clears.
+     */
+    protected static final int STREAM_FETCH_SIZE = 500;
+
+    /**
+     * Ids bound to the IN list of one bulk statement, below the limit of
+     * every supported database.
+     */
+    public static final int MAX_IN_SIZE = 1000;
+
+    /**
+     * Entities persisted between two flushes by {@link #createAll(Collection)},
+     * same as hibernate.jdbc.batch_size in persistence.xml.
+     */
+    protected static final int BATCH_SIZE = 50;
+
     private Class<E> entityClass;
+    private Map<String, Field> versionedUpdateFields;
+    private String versionedUpdate;
 
     private EntityManager em;
+    private EntityManager replica;
+    private ReadRouting routing;
     private Validator validator;
+    private ValidationPipeline validationPipeline;
+    private EntityCounter counter;
+    private Event<EntityCounter.Change> changes;
 
     /**
      * Set the {@link EntityManager} or let CDI inject it.
@@ -49,7 +115,7 @@ public abstract class JPARepositoryImpl<E extends BasicEntity<L>, L> implements
      *
      * @see PersistenceContext
      */
-    @PersistenceContext
+    @PersistenceContext(unitName = PRIMARY_UNIT)
     public void setEntityManager(final EntityManager em) {
         this.em = em;
     }
@@ -60,6 +126,40 @@ public abstract class JPARepositoryImpl<E extends BasicEntity<L>, L> implements
         return em;
     }
 
+    /**
+     * Set the {@link EntityManager} of the read replica or let CDI inject it.
+     *
+     * @param replica
+     *            An instance of {@link EntityManager}
+     */
+    @PersistenceContext(unitName = REPLICA_UNIT)
+    public void setReplicaEntityManager(final EntityManager replica) {
+        this.replica = replica;
+    }
+
+    /**
+     * Sets the read routing, without it all the reads go to the primary.
+     *
+     * @param routing
+     *            the new read routing
+     */
+    @Inject
+    public void setReadRouting(final ReadRouting routing) {
+        this.routing = routing;
+    }
+
+    /**
+     * @return The {@link EntityManager} of the replica if the current request
+     *         is read only and the replica is fresh enough, the primary one
+     *         otherwise.
+     */
+    protected EntityManager getReadEntityManager() {
+        if (replica != null && routing != null && routing.useReplica()) {
+            return replica;
+        }
+        return em;
+    }
+
     /**
      * Sets the validator.
      *
@@ -71,6 +171,42 @@ public abstract class JPARepositoryImpl<E extends BasicEntity<L>, L> implements
         this.validator = validator;
     }
 
+    /**
+     * Sets the request scoped validation pipeline, without it each call
+     * validates with {@link #setValidator(Validator)}.
+     *
+     * @param validationPipeline
+     *            the new validation pipeline
+     */
+    @Inject
+    public void setValidationPipeline(final ValidationPipeline validationPipeline) {
+        this.validationPipeline = validationPipeline;
+    }
+
+    /**
+     * Sets the entity counter, without it {@link #countAll(String)} queries
+     * the database each time.
+     *
+     * @param counter
+     *            the new entity counter
+     */
+    @Inject
+    public void setCounter(final EntityCounter counter) {
+        this.counter = counter;
+    }
+
+    /**
+     * Sets the event fired for the entities removed by bulk statements,
+     * which bypass {@link EntityCountListener}.
+     *
+     * @param changes
+     *            the {@link EntityCounter.Change} event
+     */
+    @Inject
+    public void setChanges(final Event<EntityCounter.Change> changes) {
+        this.changes = changes;
+    }
+
 
     /*
      * (non-Javadoc)
@@ -82,7 +218,7 @@ public abstract class JPARepositoryImpl<E extends BasicEntity<L>, L> implements
             throw new InvalidEntityException();
         }
 
-        Set<ConstraintViolation<E>> violations = validator.validate(entity);
+        Set<ConstraintViolation<E>> violations = validate(entity);
         if (!violations.isEmpty()) {
             throw InvalidEntityException.valueOf("Unable to create entity due to validation errors", violations);
         }
@@ -97,6 +233,61 @@ public abstract class JPARepositoryImpl<E extends BasicEntity<L>, L> implements
         return entity;
     }
 
+    /**
+     * Validates all the entities first, then persists them flushing and
+     * clearing the persistence context every {@link #BATCH_SIZE} entities, so
+     * that the inserts are sent as JDBC batches and the memory held by the
+     * persistence context stays bounded whatever the number of entities.
+     * <p>
+     * <strong>
+     * Note: clearing detaches every entity of the persistence context,
+     * including those loaded by the caller before this call in the same
+     * transaction.
+     * </strong>
+     * </p>
+     *
+     * @see com.sixturtle.db.JPARepository#createAll(java.util.Collection)
+     */
+    @Override
+    public List<E> createAll(final Collection<E> entities) throws InvalidEntityException {
+        if (entities == null) {
+            throw new InvalidEntityException();
+        }
+
+        List<E> created = new ArrayList<>(entities);
+        Map<String, String> violations = new HashMap<>();
+        for (int iIndex = 0; iIndex < created.size(); ++iIndex) {
+            E entity = created.get(iIndex);
+            if (entity == null) {
+                violations.put("[" + iIndex + "]", "may not be null");
+                continue;
+            }
+            for (ConstraintViolation<E> v : validate(entity)) {
+                violations.put("[" + iIndex + "]." + v.getPropertyPath(), v.getMessage());
+            }
+        }
+        if (!violations.isEmpty()) {
+            throw new InvalidEntityException("Unable to create entities due to validation errors", violations);
+        }
+
+        try {
+            for (int iIndex = 0; iIndex < created.size(); ++iIndex) {
+                em.persist(created.get(iIndex));
+                if ((iIndex + 1) % BATCH_SIZE == 0) {
+                    em.flush();
+                    em.clear();
+                }
+            }
+            em.flush();
+            em.clear();
+        } catch (final Exception e) {
+            final String message = String.format("Unexpected error occurred while creating %d entities", created.size());
+            log.error(message, e);
+            throw new RuntimeException(message, e);
+        }
+        return created;
+    }
+
     /*
      * (non-Javadoc)
      * @see com.sixturtle.db.JPARepository#update(java.lang.Object, com.sixturtle.model.BasicEntity)
@@ -107,21 +298,21 @@ public abstract class JPARepositoryImpl<E extends BasicEntity<L>, L> implements
             throw new InvalidEntityException();
         }
 
-        E managed = find(id);
+        E managed = find(em, id);
         if (managed == null) {
             throw new UnknownEntityException("Unable to update because the entity was not found by Id: " + id);
         } else {
-            final Set<ConstraintViolation<E>> violations = validator.validate(entity);
+            final Set<ConstraintViolation<E>> violations = validate(entity);
             if (!violations.isEmpty()) {
                 throw InvalidEntityException.valueOf("Unable to update entity due to validation errors", violations);
             }
             try {
                 /*
-                 * Copy property values from the origin bean to the destination
-                 * bean for all cases where the property names are the same.
+                 * Copy the changed property values from the origin bean to the
+                 * destination bean, Hibernate then updates only their columns.
                  */
-                BeanUtils.copyProperties(managed /* destination */, entity /* origin */);
-                em.persist(managed);
+                int changed = PropertyCopier.of(getEntityClass()).copy(managed /* destination */, entity /* origin */);
+                log.trace("{} properties changed on entity: {}", changed, id);
             } catch (Exception e) {
                 final String message = String.format("Unexpected error occurred while updating the entity: %s", entity);
                 throw new RuntimeException(message, e);
@@ -130,13 +321,46 @@ public abstract class JPARepositoryImpl<E extends BasicEntity<L>, L> implements
         return managed;
     }
 
+    /**
+     * Sets every basic property but the id and version, with a statement
+     * built once from the metamodel. Hibernate clears the cache regions of
+     * the entity on execution, so there is nothing left to evict.
+     *
+     * @see com.sixturtle.db.JPARepository#updateIfVersion(java.lang.Object, java.lang.Long, com.sixturtle.model.BasicEntity)
+     */
+    @Override
+    public int updateIfVersion(final L id, final Long version, final E entity) throws InvalidEntityException {
+        if (entity == null) {
+            throw new InvalidEntityException();
+        }
+        final Set<ConstraintViolation<E>> violations = validate(entity);
+        if (!violations.isEmpty()) {
+            throw InvalidEntityException.valueOf("Unable to update entity due to validation errors", violations);
+        }
+
+        int updated;
+        try {
+            em.flush();
+            Query jpqlQuery = em.createQuery(getVersionedUpdate());
+            for (Entry<String, Field> field : versionedUpdateFields.entrySet()) {
+                jpqlQuery.setParameter(field.getKey(), field.getValue().get(entity));
+            }
+            updated = jpqlQuery.setParameter(PARAM_ID, id).setParameter(PARAM_VERSION, version).executeUpdate();
+        } catch (final Exception e) {
+            final String message = String.format("Unexpected error occurred while updating the entity: %s", entity);
+            log.error(message, e);
+            throw new RuntimeException(message, e);
+        }
+        return updated;
+    }
+
     /*
      * (non-Javadoc)
      * @see com.sixturtle.db.JPARepository#delete(java.lang.Object)
      */
     @Override
     public void delete(final L id) throws UnknownEntityException {
-        E managed = find(id);
+        E managed = find(em, id);
 
         if (managed == null) {
             throw new UnknownEntityException("Unable to delete because the entity was not found by Id: " + id);
@@ -150,16 +374,116 @@ public abstract class JPARepositoryImpl<E extends BasicEntity<L>, L> implements
         }
     }
 
+    /*
+     * (non-Javadoc)
+     * @see com.sixturtle.db.JPARepository#deleteIfVersion(java.lang.Object, java.lang.Long)
+     */
+    @Override
+    public int deleteIfVersion(final L id, final Long version) {
+        EntityType<E> type = em.getMetamodel().entity(getEntityClass());
+        String jpql = "DELETE FROM " + type.getName() + " e WHERE e." + idAttribute(type).getName() + " = :" + PARAM_ID
+                + " AND e." + versionAttribute(type).getName() + " = :" + PARAM_VERSION;
+        int deleted;
+        try {
+            em.flush();
+            deleted = em.createQuery(jpql).setParameter(PARAM_ID, id).setParameter(PARAM_VERSION, version).executeUpdate();
+        } catch (final Exception e) {
+            final String message = String.format("Unexpected error occurred while deleting the entity with id: %s", id);
+            log.error(message, e);
+            throw new RuntimeException(message, e);
+        }
+
+        if (changes != null && deleted > 0) {
+            changes.fire(new EntityCounter.Change(getEntityClass(), -deleted));
+        }
+        return deleted;
+    }
+
+    /**
+     * Deletes by chunks of {@link #MAX_IN_SIZE} ids, one statement each, and
+     * evicts the deleted entities from the second level cache.
+     *
+     * @see com.sixturtle.db.JPARepository#deleteAll(java.util.Collection)
+     */
+    @Override
+    public int deleteAll(final Collection<L> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return 0;
+        }
+
+        EntityType<E> type = em.getMetamodel().entity(getEntityClass());
+        String jpql = "DELETE FROM " + type.getName() + " e WHERE e." + idAttribute(type).getName() + " IN :ids";
+        List<L> all = new ArrayList<>(ids);
+        int deleted = 0;
+        try {
+            em.flush();
+            for (int iIndex = 0; iIndex < all.size(); iIndex += MAX_IN_SIZE) {
+                List<L> chunk = all.subList(iIndex, Math.min(iIndex + MAX_IN_SIZE, all.size()));
+                deleted += em.createQuery(jpql).setParameter("ids", chunk).executeUpdate();
+            }
+        } catch (final Exception e) {
+            final String message = String.format("Unexpected error occurred while deleting %d entities", all.size());
+            log.error(message, e);
+            throw new RuntimeException(message, e);
+        }
+
+        for (L id : all) {
+            em.getEntityManagerFactory().getCache().evict(getEntityClass(), id);
+        }
+        if (changes != null && deleted > 0) {
+            changes.fire(new EntityCounter.Change(getEntityClass(), -deleted));
+        }
+        return deleted;
+    }
+
+    /**
+     * Evicts the whole entity region of the second level cache, since the
+     * statement may have changed any entity.
+     *
+     * @see com.sixturtle.db.JPARepository#updateWhere(java.lang.String, java.util.Map)
+     */
+    @Override
+    public int updateWhere(final String queryName, final Map<String, Object> params) {
+        int updated;
+        try {
+            em.flush();
+            Query jpqlQuery = em.createNamedQuery(queryName);
+            for (Entry<String, Object> param : params.entrySet()) {
+                jpqlQuery.setParameter(param.getKey(), param.getValue());
+            }
+            updated = jpqlQuery.executeUpdate();
+        } catch (final Exception e) {
+            final String message = String.format("Unexpected error occurred while running bulk statement: %s", queryName);
+            log.error(message, e);
+            throw new RuntimeException(message, e);
+        }
+
+        em.getEntityManagerFactory().getCache().evict(getEntityClass());
+        return updated;
+    }
+
     /*
      * (non-Javadoc)
      * @see com.sixturtle.db.JPARepository#count(java.lang.String)
      */
     @Override
     public Long count(final String queryName) {
-        Query jpqlQuery = getEntityManager().createNamedQuery(queryName);
+        Query jpqlQuery = getReadEntityManager().createNamedQuery(queryName);
         return (long) jpqlQuery.setHint(HINT_HIBERNATE_CACHEABLE, true).getSingleResult();
     }
 
+    /*
+     * (non-Javadoc)
+     * @see com.sixturtle.db.JPARepository#countAll(java.lang.String)
+     */
+    @Override
+    public Long countAll(final String queryName) {
+        if (counter == null) {
+            return count(queryName);
+        }
+        return counter.count(getEntityClass(), () -> count(queryName));
+    }
+
     /*
      * (non-Javadoc)
      * @see com.sixturtle.controller.BasicRepository#list(int, int)
@@ -167,32 +491,273 @@ public abstract class JPARepositoryImpl<E extends BasicEntity<L>, L> implements
     @SuppressWarnings("unchecked")
     @Override
     public List<E> list(final String queryName, final int offset, final int limit) {
-        Query jpqlQuery = getEntityManager().createNamedQuery(queryName);
+        Query jpqlQuery = getReadEntityManager().createNamedQuery(queryName);
 
         return jpqlQuery.setFirstResult(offset).setMaxResults(limit).setHint(HINT_HIBERNATE_CACHEABLE, true)
                 .getResultList();
     }
 
+    /*
+     * (non-Javadoc)
+     * @see com.sixturtle.db.JPARepository#listAfter(java.lang.String, java.lang.Object, int)
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    public List<E> listAfter(final String queryName, final L cursor, final int limit) {
+        Query jpqlQuery = getReadEntityManager().createNamedQuery(queryName);
+
+        return jpqlQuery.setParameter(PARAM_CURSOR, cursor).setMaxResults(limit).getResultList();
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see com.sixturtle.db.JPARepository#list(java.lang.String, java.lang.String, int, int)
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    public List<E> list(final String idQuery, final String fetchQuery, final int offset, final int limit) {
+        EntityManager reader = getReadEntityManager();
+        Query jpqlQuery = reader.createNamedQuery(idQuery);
+
+        return fetch(reader, fetchQuery, jpqlQuery.setFirstResult(offset).setMaxResults(limit).setHint(HINT_HIBERNATE_CACHEABLE, true)
+                .getResultList());
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see com.sixturtle.db.JPARepository#listAfter(java.lang.String, java.lang.String, java.lang.Object, int)
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    public List<E> listAfter(final String idQuery, final String fetchQuery, final L cursor, final int limit) {
+        EntityManager reader = getReadEntityManager();
+        Query jpqlQuery = reader.createNamedQuery(idQuery);
+
+        return fetch(reader, fetchQuery, jpqlQuery.setParameter(PARAM_CURSOR, cursor).setMaxResults(limit).getResultList());
+    }
+
     /**
-     * Finds entity by determining the generic class name.
+     * Runs in a transaction of its own when called outside of one, e.g. from
+     * a JAX-RS {@link javax.ws.rs.core.StreamingOutput} which is written after
+     * the resource method has returned.
      *
+     * @see com.sixturtle.db.JPARepository#stream(java.lang.String, com.sixturtle.db.JPARepository.EntityHandler)
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    @Transactional
+    public void stream(final String queryName, final EntityHandler<E> handler) throws IOException {
+        EntityManager reader = getReadEntityManager();
+        org.hibernate.Query query = reader.unwrap(Session.class).getNamedQuery(queryName);
+        query.setFetchSize(STREAM_FETCH_SIZE)
+             .setReadOnly(true)
+             .setCacheable(false)
+             .setCacheMode(CacheMode.IGNORE);
+
+        ScrollableResults results = query.scroll(ScrollMode.FORWARD_ONLY);
+        try {
+            for (int iIndex = 1; results.next(); ++iIndex) {
+                handler.handle((E) results.get(0));
+                if (iIndex % STREAM_FETCH_SIZE == 0) {
+                    reader.clear();
+                }
+            }
+        } finally {
+            results.close();
+        }
+    }
+
+    /**
+     * Finds entity by determining the generic class name. The entity is read
+     * from the replica only when it is not in the second level cache of the
+     * primary.
+     *
+     * @param id
+     *            The entity Id
+     * @return {@link BasicEntity} type
+     */
+    public E find(final L id) {
+        return find(getReadEntityManager(id), id);
+    }
+
+    /**
+     * @param manager
+     *            The {@link EntityManager} to read from
      * @param id
      *            The entity Id
      * @return {@link BasicEntity} type
      */
-   public E find(final L id) {
-       E entity = null;
-       try {
-           entity = em.find(getEntityClass(), id);
-       } catch (final EntityNotFoundException e) {
-           log.debug("Entity not found by Id: {}", id);
-       } catch (final Exception e) {
-           final String message = String.format("Unexpected error while looking for an entity by Id: %s", id);
-           log.error(message, e);
-           throw new RuntimeException(message, e);
-       }
-       return entity;
-   }
+    private E find(final EntityManager manager, final L id) {
+        E entity = null;
+        try {
+            entity = manager.find(getEntityClass(), id);
+        } catch (final EntityNotFoundException e) {
+            log.debug("Entity not found by Id: {}", id);
+        } catch (final Exception e) {
+            final String message = String.format("Unexpected error while looking for an entity by Id: %s", id);
+            log.error(message, e);
+            throw new RuntimeException(message, e);
+        }
+        return entity;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see com.sixturtle.db.JPARepository#find(java.lang.Object, java.lang.String)
+     */
+    @Override
+    public E find(final L id, final String graph) {
+        EntityManager reader = getReadEntityManager(id);
+        Map<String, Object> hints = new HashMap<>();
+        hints.put(HINT_LOAD_GRAPH, reader.getEntityGraph(graph));
+        E entity = null;
+        try {
+            entity = reader.find(getEntityClass(), id, hints);
+        } catch (final EntityNotFoundException e) {
+            log.debug("Entity not found by Id: {}", id);
+        } catch (final Exception e) {
+            final String message = String.format("Unexpected error while looking for an entity by Id: %s", id);
+            log.error(message, e);
+            throw new RuntimeException(message, e);
+        }
+        return entity;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see com.sixturtle.db.JPARepository#findByNaturalId(java.lang.Object)
+     */
+    @Override
+    public E findByNaturalId(final Object naturalId) {
+        try {
+            return em.unwrap(Session.class).bySimpleNaturalId(getEntityClass()).load(naturalId);
+        } catch (final Exception e) {
+            final String message = String.format("Unexpected error while looking for an entity by natural Id: %s", naturalId);
+            log.error(message, e);
+            throw new RuntimeException(message, e);
+        }
+    }
+
+    /**
+     * Loads the entities of a page of ids with a fetch join query, by chunks
+     * of {@link #MAX_IN_SIZE} ids.
+     *
+     * @param reader
+     *            The {@link EntityManager} the ids were read from
+     * @param fetchQuery
+     *            The named query name, selecting the entities whose id is in
+     *            the :ids parameter
+     * @param ids
+     *            The ids, in page order
+     * @return The entities, in the order of the ids
+     */
+    @SuppressWarnings("unchecked")
+    private List<E> fetch(final EntityManager reader, final String fetchQuery, final List<L> ids) {
+        Map<L, E> byId = new HashMap<>();
+        for (int iIndex = 0; iIndex < ids.size(); iIndex += MAX_IN_SIZE) {
+            List<L> chunk = ids.subList(iIndex, Math.min(iIndex + MAX_IN_SIZE, ids.size()));
+            Query jpqlQuery = reader.createNamedQuery(fetchQuery);
+            for (E entity : (List<E>) jpqlQuery.setParameter(PARAM_IDS, chunk).getResultList()) {
+                byId.put(entity.getId(), entity);
+            }
+        }
+
+        List<E> entities = new ArrayList<>(ids.size());
+        for (L id : ids) {
+            E entity = byId.get(id);
+            if (entity != null) {
+                entities.add(entity);
+            }
+        }
+        return entities;
+    }
+
+    /**
+     * @param id
+     *            The entity Id
+     * @return The {@link EntityManager} to find an entity with, the primary
+     *         one if the entity is in its second level cache
+     */
+    private EntityManager getReadEntityManager(final L id) {
+        EntityManager reader = getReadEntityManager();
+        if (reader != em && em.getEntityManagerFactory().getCache().contains(getEntityClass(), id)) {
+            return em;
+        }
+        return reader;
+    }
+
+    /**
+     * Validates an entity through the {@link ValidationPipeline} of the
+     * current request, or directly when there is no request, e.g. in a batch
+     * job.
+     *
+     * @param entity
+     *            The entity
+     * @return The violations, empty if valid
+     */
+    private Set<ConstraintViolation<E>> validate(final E entity) {
+        if (validationPipeline != null) {
+            try {
+                return validationPipeline.validate(entity);
+            } catch (ContextNotActiveException e) {
+                log.trace("No request scope, validating directly");
+            }
+        }
+        return validator.validate(entity);
+    }
+
+    /**
+     * Builds, on first call, the UPDATE statement of
+     * {@link #updateIfVersion(Object, Long, BasicEntity)}, with one parameter
+     * per basic property named after it.
+     *
+     * @return The JPQL statement
+     */
+    private synchronized String getVersionedUpdate() {
+        if (versionedUpdate == null) {
+            EntityType<E> type = em.getMetamodel().entity(getEntityClass());
+            SingularAttribute<? super E, ?> idAttribute = idAttribute(type);
+            SingularAttribute<? super E, ?> versionAttribute = versionAttribute(type);
+
+            Map<String, Field> fields = new HashMap<>();
+            StringBuilder jpql = new StringBuilder("UPDATE ").append(type.getName()).append(" e SET ");
+            for (SingularAttribute<? super E, ?> attribute : type.getSingularAttributes()) {
+                if (attribute.isId() || attribute.isVersion()
+                        || attribute.getPersistentAttributeType() != PersistentAttributeType.BASIC) {
+                    continue;
+                }
+                Field field = (Field) attribute.getJavaMember();
+                field.setAccessible(true);
+                fields.put(attribute.getName(), field);
+                jpql.append("e.").append(attribute.getName()).append(" = :").append(attribute.getName()).append(", ");
+            }
+            jpql.append("e.").append(versionAttribute.getName()).append(" = e.").append(versionAttribute.getName()).append(" + 1")
+                .append(" WHERE e.").append(idAttribute.getName()).append(" = :").append(PARAM_ID)
+                .append(" AND e.").append(versionAttribute.getName()).append(" = :").append(PARAM_VERSION);
+
+            versionedUpdateFields = fields;
+            versionedUpdate = jpql.toString();
+        }
+        return versionedUpdate;
+    }
+
+    /**
+     * @param type
+     *            The entity type
+     * @return The id attribute
+     */
+    private SingularAttribute<? super E, ?> idAttribute(final EntityType<E> type) {
+        return type.getId(type.getIdType().getJavaType());
+    }
+
+    /**
+     * @param type
+     *            The entity type
+     * @return The version attribute
+     */
+    private SingularAttribute<? super E, ?> versionAttribute(final EntityType<E> type) {
+        return type.getVersion(Long.class);
+    }
 
     /**
      * Get the class of the generic type E.
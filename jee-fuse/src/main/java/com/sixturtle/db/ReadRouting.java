@@ -0,0 +1,148 @@
+package com.sixturtle.db;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Decides whether the reads of the current thread may be served by the read
+ * replica persistence unit instead of the primary one.
+ * <p>
+ * Reads go to the replica only between {@link #beginReadOnly()} and
+ * {@link #end()}, which the web layer calls around GET and HEAD requests, so
+ * the writes, and the reads of a request which writes, stay on the primary.
+ * </p>
+ * <p>
+ * The replica is also skipped while it lags behind the primary by more than
+ * "datasource.replica.max.lag.seconds" (5 by default). The lag is measured,
+ * at most once a second, by running the native query of the
+ * "datasource.replica.lag.query" system property on the replica, e.g. for
+ * PostgreSQL
+ * <code>SELECT COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()), 0)</code>.
+ * Without the query the replica is assumed to be in sync, and when the query
+ * fails the reads fall back to the primary until the next measure.
+ * </p>
+ *
+ * @author Anurag Sharma
+ */
+@ApplicationScoped
+public class ReadRouting {
+    private static final Logger log = LoggerFactory.getLogger(ReadRouting.class);
+
+    private static final long DEFAULT_MAX_LAG_SECONDS = 5;
+    private static final long PROBE_INTERVAL_MILLIS   = 1000;
+
+    private final ThreadLocal<Boolean> readOnly = new ThreadLocal<>();
+    private final long                 maxLagMillis;
+    private final String               lagQuery;
+
+    private EntityManager    replica;
+    private volatile boolean fresh = true;
+    private volatile long    probedAt;
+
+    /**
+     * Default constructor reads the staleness bound and the lag query from
+     * the "datasource.replica.max.lag.seconds" and "datasource.replica.lag.query"
+     * system properties.
+     */
+    public ReadRouting() {
+        this(TimeUnit.SECONDS.toMillis(Long.getLong("datasource.replica.max.lag.seconds", DEFAULT_MAX_LAG_SECONDS)),
+             System.getProperty("datasource.replica.lag.query"));
+    }
+
+    /**
+     * Special constructor to set the staleness bound and the lag query.
+     *
+     * @param maxLagMillis
+     *            The replication lag above which reads go to the primary, in
+     *            milliseconds
+     * @param lagQuery
+     *            The native query returning the replica lag in seconds, null
+     *            to assume no lag
+     */
+    public ReadRouting(final long maxLagMillis, final String lagQuery) {
+        this.maxLagMillis = maxLagMillis;
+        this.lagQuery     = lagQuery;
+    }
+
+    /**
+     * Set the {@link EntityManager} of the replica, used to measure its lag,
+     * or let CDI inject it.
+     *
+     * @param replica
+     *            An instance of {@link EntityManager}
+     */
+    @PersistenceContext(unitName = JPARepositoryImpl.REPLICA_UNIT)
+    public void setEntityManager(final EntityManager replica) {
+        this.replica = replica;
+    }
+
+    /**
+     * Lets the reads of the current thread go to the replica.
+     */
+    public void beginReadOnly() {
+        readOnly.set(Boolean.TRUE);
+    }
+
+    /**
+     * Sends the reads of the current thread back to the primary.
+     */
+    public void end() {
+        readOnly.remove();
+    }
+
+    /**
+     * @return true if the current thread runs a read only request
+     */
+    public boolean isReadOnly() {
+        return Boolean.TRUE.equals(readOnly.get());
+    }
+
+    /**
+     * @return true if the reads of the current thread may go to the replica
+     */
+    public boolean useReplica() {
+        return isReadOnly() && isFresh();
+    }
+
+    /**
+     * @return true if the replica lag was within bound at the last measure
+     */
+    public boolean isFresh() {
+        if (lagQuery == null || replica == null) {
+            return true;
+        }
+        if (System.currentTimeMillis() - probedAt >= PROBE_INTERVAL_MILLIS) {
+            probe();
+        }
+        return fresh;
+    }
+
+    /**
+     * Measures the replica lag, unless another thread just did.
+     */
+    private synchronized void probe() {
+        long now = System.currentTimeMillis();
+        if (now - probedAt < PROBE_INTERVAL_MILLIS) {
+            return;
+        }
+        boolean measured;
+        try {
+            Number lag = (Number) replica.createNativeQuery(lagQuery).getSingleResult();
+            measured = lag == null || lag.doubleValue() * 1000 <= maxLagMillis;
+        } catch (final Exception e) {
+            log.warn("Unable to measure replica lag, reading from primary: {}", e.getMessage());
+            measured = false;
+        }
+        if (measured != fresh) {
+            log.info("Replica {}, reading from {}", measured ? "caught up" : "lagging", measured ? "replica" : "primary");
+        }
+        fresh    = measured;
+        probedAt = now;
+    }
+}
@@ -0,0 +1,99 @@
+package com.sixturtle.db;
+
+import java.util.List;
+import java.util.Locale;
+
+import javax.annotation.PostConstruct;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.metamodel.EntityType;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Moves the id sequences of an existing schema to the pooled-lo optimizer at
+ * deployment.
+ * <p>
+ * The legacy hi/lo generator handed out up to allocationSize ids per sequence
+ * value, with a sequence incremented by 1, so its ids run far ahead of the
+ * sequence. The pooled-lo optimizer uses the sequence value as the first id of
+ * a block, and needs a sequence incremented by the allocationSize. For each
+ * entity with a {@link SequenceGenerator} whose sequence is not incremented
+ * by its allocationSize yet, the sequence is restarted past the greatest id
+ * of the entity, and at least at its initialValue, with the allocationSize as
+ * increment. A migrated sequence is left untouched by the next deployments.
+ * </p>
+ * <p>
+ * The increment is read from INFORMATION_SCHEMA.SEQUENCES (H2, HSQLDB,
+ * PostgreSQL...). A sequence missing from that view, e.g. not created yet by
+ * hbm2ddl, is skipped.
+ * </p>
+ *
+ * @author Anurag Sharma
+ */
+@Singleton
+@Startup
+public class SequenceMigration {
+    private static final Logger log = LoggerFactory.getLogger(SequenceMigration.class);
+
+    private EntityManager em;
+
+    /**
+     * Set the {@link EntityManager} or let CDI inject it.
+     *
+     * @param em
+     *            An instance of {@link EntityManager}
+     *
+     * @see PersistenceContext
+     */
+    @PersistenceContext(unitName = JPARepositoryImpl.PRIMARY_UNIT)
+    public void setEntityManager(final EntityManager em) {
+        this.em = em;
+    }
+
+    /**
+     * Migrates the sequence of each entity having a {@link SequenceGenerator}.
+     */
+    @PostConstruct
+    public void migrate() {
+        for (EntityType<?> type : em.getMetamodel().getEntities()) {
+            SequenceGenerator generator = type.getJavaType().getAnnotation(SequenceGenerator.class);
+            if (generator != null) {
+                migrate(type, generator);
+            }
+        }
+    }
+
+    /**
+     * Restarts the sequence of an entity if it still has the legacy increment.
+     *
+     * @param type
+     *            The entity type
+     * @param generator
+     *            The sequence generator of the entity
+     */
+    private void migrate(final EntityType<?> type, final SequenceGenerator generator) {
+        String sequence = generator.sequenceName();
+        List<?> increments = em.createNativeQuery(
+                "SELECT INCREMENT FROM INFORMATION_SCHEMA.SEQUENCES WHERE UPPER(SEQUENCE_NAME) = '"
+                        + sequence.toUpperCase(Locale.ROOT) + "'")
+                .getResultList();
+        if (increments.isEmpty()
+                || Long.parseLong(String.valueOf(increments.get(0))) == generator.allocationSize()) {
+            return;
+        }
+
+        String id = type.getId(type.getIdType().getJavaType()).getName();
+        Number maxId = (Number) em.createQuery("SELECT MAX(e." + id + ") FROM " + type.getName() + " e")
+                .getSingleResult();
+        long restart = Math.max(generator.initialValue(), maxId == null ? 1 : maxId.longValue() + 1);
+
+        em.createNativeQuery("ALTER SEQUENCE " + sequence + " RESTART WITH " + restart
+                + " INCREMENT BY " + generator.allocationSize()).executeUpdate();
+        log.info("restarted sequence {} with {}, increment {}", sequence, restart, generator.allocationSize());
+    }
+}
@@ -0,0 +1,67 @@
+package com.sixturtle.db;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import javax.enterprise.context.RequestScoped;
+import javax.inject.Inject;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+
+/**
+ * The single Bean Validation pass of a request's writes.
+ * <p>
+ * Entities are validated once, by the repository, before being persisted or
+ * merged: the REST resources do not declare {@code @Valid} and the persistence
+ * unit validates no group on pre-persist and pre-update, so neither the JAX-RS
+ * container nor the flush validates them again. The instances which passed are recorded for the
+ * rest of the request, so a repository call on an instance already validated,
+ * e.g. a bulk create retried or an entity saved through two repositories,
+ * does not walk its graph again.
+ * </p>
+ * <p>
+ * The record holds instances, not values: an entity is expected not to change
+ * between its validation and the end of the request.
+ * </p>
+ *
+ * @author Anurag Sharma
+ */
+@RequestScoped
+public class ValidationPipeline {
+    private final Set<Object> validated = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+
+    private Validator validator;
+
+    /**
+     * Sets the validator.
+     *
+     * @param validator
+     *            the new validator
+     */
+    @Inject
+    public void setValidator(final Validator validator) {
+        this.validator = validator;
+    }
+
+    /**
+     * Validates a bean unless the same instance already passed during this
+     * request.
+     *
+     * @param bean
+     *            The bean to validate
+     * @param <T>
+     *            The bean type
+     * @return The violations, empty if valid
+     */
+    public <T> Set<ConstraintViolation<T>> validate(final T bean) {
+        if (validated.contains(bean)) {
+            return Collections.emptySet();
+        }
+        Set<ConstraintViolation<T>> violations = validator.validate(bean);
+        if (violations.isEmpty()) {
+            validated.add(bean);
+        }
+        return violations;
+    }
+}
@@ -20,8 +20,21 @@ import com.fasterxml.jackson.annotation.JsonInclude.Include;
 @JsonInclude(Include.NON_NULL)
 @JsonIgnoreProperties({ "hibernateLazyInitializer", "handler" })
 public interface BasicEntity<E> extends Serializable {
+    /**
+     * First value of the id sequences of a new schema, lower ids are left to
+     * seed data. Sequences of an existing schema are moved past its ids by
+     * {@link com.sixturtle.db.SequenceMigration}.
+     */
+    int FIRST_GENERATED_ID = 1000;
+
     /**
      * @return The primary key of the entity
      */
     E getId();
+
+    /**
+     * @return The optimistic lock version of the entity, null before it is
+     *         persisted
+     */
+    Long getVersion();
 }
@@ -5,6 +5,7 @@ import java.io.Serializable;
 import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.EntityListeners;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
 import javax.persistence.NamedQueries;
@@ -15,6 +16,13 @@ import javax.persistence.Version;
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Size;
 
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.annotations.NaturalId;
+import org.hibernate.annotations.NaturalIdCache;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import com.sixturtle.db.EntityCountListener;
 
 /**
  * Person entity in database.
@@ -22,13 +30,20 @@ import javax.validation.constraints.Size;
  * @author Anurag Sharma
  */
 @Entity
+@DynamicUpdate
 @Cacheable
+@NaturalIdCache
+@EntityListeners(EntityCountListener.class)
 @Table(name = "PERSON")
-@SequenceGenerator(name = "PERSON_ID_GENERATOR", sequenceName = "PERSON_ID_SEQ")
+@SequenceGenerator(name = "PERSON_ID_GENERATOR", sequenceName = "PERSON_ID_SEQ",
+        initialValue = BasicEntity.FIRST_GENERATED_ID, allocationSize = 50)
 @NamedQueries({
     @NamedQuery(
             name = PersonEntity.QUERY_FIND_ALL,
             query = "SELECT p FROM PersonEntity p"),
+    @NamedQuery(
+            name = PersonEntity.QUERY_FIND_AFTER,
+            query = "SELECT p FROM PersonEntity p WHERE p.id > :cursor ORDER BY p.id"),
     @NamedQuery(
             name = PersonEntity.QUERY_COUNT_ALL,
             query = "SELECT COUNT(1) FROM PersonEntity p")
@@ -37,6 +52,7 @@ public class PersonEntity implements BasicEntity<Long>, Serializable {
     private static final long serialVersionUID = 8990255112980205427L;
     public static final String QUERY_FIND_ALL  = "PersonEntity.findAll";
     public static final String QUERY_COUNT_ALL = "PersonEntity.countAll";
+    public static final String QUERY_FIND_AFTER = "PersonEntity.findAfter";
 
     @Id
     @Column(name = "ID")
@@ -55,6 +71,7 @@ public class PersonEntity implements BasicEntity<Long>, Serializable {
     private String lastName;
 
     @NotNull @Size(min = 1, max = 255)
+    @NaturalId(mutable = true)
     @Column(name = "EMAIL", nullable = false, length = 255, unique = true)
     private String email;
 
@@ -105,6 +122,15 @@ public class PersonEntity implements BasicEntity<Long>, Serializable {
     public Long getId() {
         return id;
     }
+
+    /**
+     * @return the version
+     */
+    @Override
+    @JsonIgnore
+    public Long getVersion() {
+        return version;
+    }
     /**
      * @return the firstName
      */
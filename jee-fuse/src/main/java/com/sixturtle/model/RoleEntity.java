@@ -15,6 +15,9 @@ import javax.persistence.Table;
 import javax.persistence.Version;
 import javax.validation.constraints.NotNull;
 
+import org.hibernate.annotations.DynamicUpdate;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
 
 /**
  *
@@ -23,8 +26,10 @@ import javax.validation.constraints.NotNull;
  * @author Anurag Sharma
  */
 @Entity
+@DynamicUpdate
 @Table(name = "ROLE")
-@SequenceGenerator(name = "ROLE_ID_GENERATOR", sequenceName = "ROLE_ID_SEQ")
+@SequenceGenerator(name = "ROLE_ID_GENERATOR", sequenceName = "ROLE_ID_SEQ",
+        initialValue = BasicEntity.FIRST_GENERATED_ID, allocationSize = 50)
 @NamedQueries({
     @NamedQuery(
             name = RoleEntity.QUERY_FIND_BY_ROLE_TYPE,
@@ -63,6 +68,15 @@ public class RoleEntity implements BasicEntity<Long>, Serializable {
     public Long getId() {
         return id;
     }
+
+    /**
+     * @return the version
+     */
+    @Override
+    @JsonIgnore
+    public Long getVersion() {
+        return version;
+    }
     /**
      * @return the name
      */
@@ -8,12 +8,15 @@ import javax.persistence.Cacheable;
 import javax.persistence.CascadeType;
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.EntityListeners;
 import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
 import javax.persistence.JoinColumn;
 import javax.persistence.JoinTable;
 import javax.persistence.ManyToMany;
+import javax.persistence.NamedAttributeNode;
+import javax.persistence.NamedEntityGraph;
 import javax.persistence.NamedQueries;
 import javax.persistence.NamedQuery;
 import javax.persistence.OneToOne;
@@ -23,6 +26,11 @@ import javax.persistence.Version;
 import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
 
+import org.hibernate.annotations.DynamicUpdate;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import com.sixturtle.db.EntityCountListener;
 
 /**
  * A database entity representing a tenant user.
@@ -30,22 +38,49 @@ import javax.validation.constraints.NotNull;
  * @author Anurag Sharma
  */
 @Entity
+@DynamicUpdate
 @Cacheable
+@EntityListeners(EntityCountListener.class)
 @Table(name = "USER")
-@SequenceGenerator(name = "USER_ID_GENERATOR", sequenceName = "USER_ID_SEQ")
+@SequenceGenerator(name = "USER_ID_GENERATOR", sequenceName = "USER_ID_SEQ",
+        initialValue = BasicEntity.FIRST_GENERATED_ID, allocationSize = 50)
+@NamedEntityGraph(
+        name = UserEntity.GRAPH_DETAILS,
+        attributeNodes = { @NamedAttributeNode("person"), @NamedAttributeNode("roles") })
 @NamedQueries({
     @NamedQuery(
             name = UserEntity.QUERY_COUNT_ALL,
             query = "SELECT COUNT(1) FROM UserEntity u"),
     @NamedQuery(
             name = UserEntity.QUERY_FIND_ALL,
-            query = "SELECT u FROM UserEntity u")
+            query = "SELECT u FROM UserEntity u"),
+    @NamedQuery(
+            name = UserEntity.QUERY_FIND_AFTER,
+            query = "SELECT u FROM UserEntity u WHERE u.id > :cursor ORDER BY u.id"),
+    @NamedQuery(
+            name = UserEntity.QUERY_FIND_IDS,
+            query = "SELECT u.id FROM UserEntity u ORDER BY u.id"),
+    @NamedQuery(
+            name = UserEntity.QUERY_FIND_IDS_AFTER,
+            query = "SELECT u.id FROM UserEntity u WHERE u.id > :cursor ORDER BY u.id"),
+    @NamedQuery(
+            name = UserEntity.QUERY_FETCH_BY_IDS,
+            query = "SELECT DISTINCT u FROM UserEntity u JOIN FETCH u.person LEFT JOIN FETCH u.roles WHERE u.id IN :ids"),
+    @NamedQuery(
+            name = UserEntity.QUERY_SET_ACTIVE,
+            query = "UPDATE UserEntity u SET u.active = :active, u.version = u.version + 1 WHERE u.id IN :ids")
 })
 public class UserEntity implements BasicEntity<Long>, Serializable {
     private static final long serialVersionUID = 5906694206059291913L;
 
     public static final String QUERY_COUNT_ALL = "UserEntity.countAll";
     public static final String QUERY_FIND_ALL = "UserEntity.findAll";
+    public static final String QUERY_FIND_AFTER = "UserEntity.findAfter";
+    public static final String QUERY_SET_ACTIVE = "UserEntity.setActive";
+    public static final String QUERY_FIND_IDS = "UserEntity.findIds";
+    public static final String QUERY_FIND_IDS_AFTER = "UserEntity.findIdsAfter";
+    public static final String QUERY_FETCH_BY_IDS = "UserEntity.fetchByIds";
+    public static final String GRAPH_DETAILS = "UserEntity.details";
 
 
     @Id
@@ -82,6 +117,15 @@ public class UserEntity implements BasicEntity<Long>, Serializable {
     public Long getId() {
         return id;
     }
+
+    /**
+     * @return the version
+     */
+    @Override
+    @JsonIgnore
+    public Long getVersion() {
+        return version;
+    }
     /**
      * Gets the person.
      *
@@ -1,5 +1,7 @@
 package com.sixturtle.remote;
 
+import java.security.Principal;
+
 import javax.ws.rs.ClientErrorException;
 import javax.ws.rs.ForbiddenException;
 import javax.ws.rs.NotAuthorizedException;
@@ -32,6 +34,7 @@ public abstract class AbstractRestClient {
 
     private Client client;
     private ClientResponseMapper mapper = new ClientResponseMapper();
+    private TokenRelay tokenRelay;
 
     /**
      * Default constructor sets up all the required providers.
@@ -73,9 +76,51 @@ public abstract class AbstractRestClient {
         return mapper;
     }
 
+    /**
+     * @return the token relay, null if the caller identity is not relayed
+     */
+    public TokenRelay getTokenRelay() {
+        return tokenRelay;
+    }
+
+    /**
+     * @param tokenRelay
+     *            The {@link TokenRelay} to call the downstream API on behalf
+     *            of the authenticated caller
+     */
+    public void setTokenRelay(final TokenRelay tokenRelay) {
+        this.tokenRelay = tokenRelay;
+    }
+
+    /**
+     * Builds the Authorization header value to call the downstream API on
+     * behalf of the authenticated caller, with a token obtained by
+     * {@link TokenRelay}. The token is cached by the relay, so calling this
+     * for each request costs a map lookup once the first exchange is done.
+     *
+     * @param principal
+     *            The verified principal of the caller
+     * @param subjectToken
+     *            The Bearer token presented by the caller
+     * @param audience
+     *            The downstream audience
+     * @return The Authorization header value
+     * @throws RemoteCallException
+     *             in case of error from the token exchange endpoint
+     */
+    protected String relayAuthorization(final Principal principal, final String subjectToken, final String audience)
+            throws RemoteCallException {
+        if (tokenRelay == null) {
+            throw new IllegalStateException("No TokenRelay set on " + getClass().getSimpleName());
+        }
+        return String.format(AUTH_BEARER_TOKEN, tokenRelay.getToken(principal.getName(), subjectToken, audience));
+    }
+
     /**
      * An abstract method that subclass must implement to handle HTTP 401/403
-     * errors that may occur during {@link #invoke(InvokeCommand)}.
+     * errors that may occur during {@link #invoke(InvokeCommand)}. A client
+     * relaying the caller identity drops the rejected token here with
+     * {@link TokenRelay#invalidate(String, String)}.
      *
      * @throws RemoteCallException
      *                  in case of runtime error from Rest API call to authenticate
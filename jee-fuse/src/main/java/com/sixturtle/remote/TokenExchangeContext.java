@@ -0,0 +1,95 @@
+package com.sixturtle.remote;
+
+import java.io.Serializable;
+
+/**
+ * Configuration of the OAuth 2.0 Token Exchange (RFC 8693) endpoint used by
+ * {@link TokenRelay}.
+ *
+ * @author Anurag Sharma
+ */
+public class TokenExchangeContext implements Serializable {
+    private static final long serialVersionUID = -3290547710236412850L;
+
+    private String tokenUrl;
+    private String clientId;
+    private String clientSecret;
+    private long   refreshAheadSeconds = 30;
+    private int    maxEntries          = 10000;
+
+    /**
+     * @return the tokenUrl
+     */
+    public String getTokenUrl() {
+        return tokenUrl;
+    }
+    /**
+     * @param tokenUrl the tokenUrl to set
+     */
+    public void setTokenUrl(String tokenUrl) {
+        this.tokenUrl = tokenUrl;
+    }
+    /**
+     * @return the clientId
+     */
+    public String getClientId() {
+        return clientId;
+    }
+    /**
+     * @param clientId the clientId to set
+     */
+    public void setClientId(String clientId) {
+        this.clientId = clientId;
+    }
+    /**
+     * @return the clientSecret
+     */
+    public String getClientSecret() {
+        return clientSecret;
+    }
+    /**
+     * @param clientSecret the clientSecret to set
+     */
+    public void setClientSecret(String clientSecret) {
+        this.clientSecret = clientSecret;
+    }
+    /**
+     * @return how long before expiry a downstream token is refreshed
+     */
+    public long getRefreshAheadSeconds() {
+        return refreshAheadSeconds;
+    }
+    /**
+     * @param refreshAheadSeconds the refreshAheadSeconds to set
+     */
+    public void setRefreshAheadSeconds(long refreshAheadSeconds) {
+        this.refreshAheadSeconds = refreshAheadSeconds;
+    }
+    /**
+     * @return the maximum number of cached downstream tokens
+     */
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+    /**
+     * @param maxEntries the maxEntries to set
+     */
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("TokenExchangeContext {")
+               .append("tokenUrl:").append(tokenUrl).append(",")
+               .append("clientId:").append(clientId).append(",")
+               .append("refreshAheadSeconds:").append(refreshAheadSeconds).append(",")
+               .append("maxEntries:").append(maxEntries)
+               .append("}");
+        return builder.toString();
+    }
+}
@@ -0,0 +1,472 @@
+package com.sixturtle.remote;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.Form;
+import javax.ws.rs.core.GenericType;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import com.sixturtle.exception.RemoteCallException;
+
+/**
+ * Relays the identity of the caller to a downstream service by exchanging the
+ * caller's access token for a token meant for that service, using OAuth 2.0
+ * Token Exchange (RFC 8693).
+ * <p>
+ * Exchanged tokens are cached per subject, audience and subject token, so only
+ * the first call of a user to a downstream service pays the exchange round
+ * trip, and a token obtained with one subject token is never served to a
+ * request presenting another one. A token in use is exchanged again on a
+ * background thread shortly before it expires, and a token not used since its
+ * last exchange is dropped instead of refreshed. When the cache holds
+ * maxEntries tokens, the expired ones and then the oldest one make room for a
+ * new token.
+ * </p>
+ * <p>
+ * An exchanged token never outlives the subject token it was exchanged for:
+ * when the subject token is a JWT, the cached token expires at the "exp" of
+ * the subject token at the latest, and is then dropped instead of exchanged
+ * again with an expired subject token.
+ * </p>
+ * <p>
+ * The JAX-RS client is shared by the request threads and the refresh thread;
+ * pass a pooled {@link Client} to {@link #TokenRelay(Client, TokenExchangeContext)}
+ * if the implementation does not pool connections by default.
+ * </p>
+ *
+ * @author Anurag Sharma
+ */
+@ApplicationScoped
+public class TokenRelay extends AbstractRestClient implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(TokenRelay.class);
+
+    private static final String GRANT_TYPE_TOKEN_EXCHANGE = "urn:ietf:params:oauth:grant-type:token-exchange";
+    private static final String TOKEN_TYPE_ACCESS_TOKEN   = "urn:ietf:params:oauth:token-type:access_token";
+    private static final long   MIN_VALIDITY_MILLIS       = 5000;
+    private static final long   WAIT_TIMEOUT_SECONDS      = 10;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private TokenExchangeContext                                      context;
+    private String                                                    authorization;
+    private final Clock                                               clock;
+    private final ScheduledExecutorService                            refresher;
+    private final ConcurrentMap<String, Exchanged>                    cache    = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, CompletableFuture<Exchanged>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Default constructor loads the {@link TokenExchangeContext} from a JSON
+     * file passed as -Dtoken.exchange.config=/path/to/tokenExchangeConfig.json
+     * or the bundled one.
+     */
+    public TokenRelay() {
+        this(ClientBuilder.newClient(),
+             ConfigLoader.loadJsonFileContent(TokenExchangeContext.class,
+                     System.getProperty("token.exchange.config", "config/tokenExchangeConfig.json")));
+    }
+
+    /**
+     * Special constructor to pass a custom {@link Client} and configuration.
+     *
+     * @param client
+     *            An instance of {@link Client}
+     * @param context
+     *            The token exchange endpoint configuration
+     */
+    public TokenRelay(final Client client, final TokenExchangeContext context) {
+        this(client, context, Clock.systemUTC(), Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "token-relay-refresh");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    /**
+     * Special constructor to pass the clock the token expiry is checked
+     * against and the executor running the refreshes, e.g. in unit tests.
+     *
+     * @param client
+     *            An instance of {@link Client}
+     * @param context
+     *            The token exchange endpoint configuration
+     * @param clock
+     *            The clock giving the current time
+     * @param refresher
+     *            The executor the refreshes and removals are scheduled on,
+     *            shut down by {@link #close()}
+     */
+    public TokenRelay(final Client client, final TokenExchangeContext context,
+            final Clock clock, final ScheduledExecutorService refresher) {
+        super(client);
+        this.clock     = clock;
+        this.refresher = refresher;
+        init(context);
+    }
+
+    /**
+     * @return the context
+     */
+    public TokenExchangeContext getContext() {
+        return context;
+    }
+
+    /**
+     * Returns a token of the subject for the downstream audience, from cache
+     * if it is valid for a few more seconds, otherwise by exchanging the
+     * subject token.
+     *
+     * @param subject
+     *            The verified subject of the caller, e.g. the principal name
+     * @param subjectToken
+     *            The access token presented by the caller
+     * @param audience
+     *            The downstream service the token is requested for
+     * @return The downstream access token
+     * @throws RemoteCallException
+     *             in case of error from the token exchange endpoint
+     */
+    public String getToken(final String subject, final String subjectToken, final String audience) throws RemoteCallException {
+        String key = key(subject, audience) + hash(subjectToken);
+        Exchanged exchanged = cache.get(key);
+        if (exchanged != null && clock.millis() < exchanged.expiresAt - MIN_VALIDITY_MILLIS) {
+            exchanged.used = true;
+            return exchanged.accessToken;
+        }
+
+        CompletableFuture<Exchanged> created  = new CompletableFuture<>();
+        CompletableFuture<Exchanged> existing = inFlight.putIfAbsent(key, created);
+        if (existing != null) {
+            return await(existing).accessToken;
+        }
+        try {
+            exchanged = exchange(subjectToken, audience);
+            exchanged.used = true;
+            store(key, audience, exchanged);
+            created.complete(exchanged);
+            return exchanged.accessToken;
+        } catch (RemoteCallException | RuntimeException e) {
+            created.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, created);
+        }
+    }
+
+    /**
+     * Drops the cached tokens of a subject, whatever subject token they were
+     * exchanged for, e.g. after the downstream service answered 401 to one.
+     *
+     * @param subject
+     *            The subject
+     * @param audience
+     *            The downstream audience
+     */
+    public void invalidate(final String subject, final String audience) {
+        String prefix = key(subject, audience);
+        cache.keySet().removeIf(key -> key.startsWith(prefix));
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see java.io.Closeable#close()
+     */
+    @Override
+    @PreDestroy
+    public void close() {
+        refresher.shutdownNow();
+        cache.clear();
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see com.sixturtle.remote.AbstractRestClient#authenticate()
+     */
+    @Override
+    protected void authenticate() throws RemoteCallException {
+        // NONE: the client credentials are sent with each exchange
+    }
+
+    /**
+     * @param tokenExchangeContext
+     *            The token exchange endpoint configuration
+     */
+    private void init(final TokenExchangeContext tokenExchangeContext) {
+        this.context       = tokenExchangeContext;
+        this.authorization = "Basic " + Base64.getEncoder().encodeToString(
+                                (context.getClientId() + ":" + context.getClientSecret()).getBytes(StandardCharsets.UTF_8));
+        log.debug("loaded token exchange context: {}", context);
+    }
+
+    /**
+     * Caches an exchanged token and schedules its refresh, or its removal
+     * when it expires with the subject token. A full cache first drops its
+     * expired tokens, then its oldest one.
+     *
+     * @param key
+     *            The cache key
+     * @param audience
+     *            The downstream audience
+     * @param exchanged
+     *            The exchanged token
+     */
+    private void store(final String key, final String audience, final Exchanged exchanged) {
+        long now   = clock.millis();
+        long delay = exchanged.isRenewable()
+                        ? exchanged.expiresAt - TimeUnit.SECONDS.toMillis(context.getRefreshAheadSeconds()) - now
+                        : exchanged.expiresAt - MIN_VALIDITY_MILLIS - now;
+        if (delay <= 0) {
+            return;
+        }
+        if (cache.size() >= context.getMaxEntries() && !cache.containsKey(key)) {
+            evict(now);
+        }
+        cache.put(key, exchanged);
+        if (exchanged.isRenewable()) {
+            refresher.schedule(() -> refresh(key, audience, exchanged), delay, TimeUnit.MILLISECONDS);
+        } else {
+            refresher.schedule(() -> cache.remove(key, exchanged), delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Drops the tokens which can no longer be served and, if the cache is
+     * still full, the token exchanged first.
+     *
+     * @param now
+     *            The current time in milliseconds
+     */
+    private void evict(final long now) {
+        cache.values().removeIf(exchanged -> exchanged.expiresAt - MIN_VALIDITY_MILLIS <= now);
+        if (cache.size() >= context.getMaxEntries()) {
+            cache.entrySet().stream()
+                .min(Comparator.comparingLong(entry -> entry.getValue().exchangedAt))
+                .ifPresent(entry -> cache.remove(entry.getKey(), entry.getValue()));
+        }
+    }
+
+    /**
+     * Exchanges again a token which was used since its last exchange, drops
+     * it otherwise. Runs on the refresh thread.
+     *
+     * @param key
+     *            The cache key
+     * @param audience
+     *            The downstream audience
+     * @param current
+     *            The cached token to refresh
+     */
+    private void refresh(final String key, final String audience, final Exchanged current) {
+        if (cache.get(key) != current) {
+            return;
+        }
+        if (!current.used || current.subjectExpiresAt - MIN_VALIDITY_MILLIS <= clock.millis()) {
+            cache.remove(key, current);
+            return;
+        }
+        try {
+            store(key, audience, exchange(current.subjectToken, audience));
+        } catch (RemoteCallException | RuntimeException e) {
+            log.warn("Unable to refresh token for audience: {}, {}", audience, e.getMessage());
+            cache.remove(key, current);
+        }
+    }
+
+    /**
+     * Calls the token exchange endpoint.
+     *
+     * @param subjectToken
+     *            The access token of the caller
+     * @param audience
+     *            The downstream audience
+     * @return The exchanged token
+     * @throws RemoteCallException
+     *             in case of error from the endpoint
+     */
+    private Exchanged exchange(final String subjectToken, final String audience) throws RemoteCallException {
+        Form form = new Form()
+                        .param("grant_type", GRANT_TYPE_TOKEN_EXCHANGE)
+                        .param("subject_token", subjectToken)
+                        .param("subject_token_type", TOKEN_TYPE_ACCESS_TOKEN)
+                        .param("requested_token_type", TOKEN_TYPE_ACCESS_TOKEN)
+                        .param("audience", audience);
+
+        Map<String, Object> response = super.<Map<String, Object>>invoke(new InvokeCommand<Map<String, Object>>() {
+            /*
+             * (non-Javadoc)
+             * @see com.sixturtle.remote.AbstractRestClient.InvokeCommand#execute()
+             */
+            @Override
+            public Map<String, Object> execute() {
+                return getClient()
+                            .target(getContext().getTokenUrl())
+                            .request()
+                            .accept(MediaType.APPLICATION_JSON)
+                            .header(HDR_AUTHORIZATION, authorization)
+                            .post(Entity.form(form), new GenericType<Map<String, Object>>() { });
+            }
+        });
+
+        Object accessToken = response.get("access_token");
+        Object expiresIn   = response.get("expires_in");
+        if (!(accessToken instanceof String)) {
+            throw new RemoteCallException(
+                    "Token exchange response without access_token",
+                    Response.Status.BAD_GATEWAY.getStatusCode(),
+                    String.valueOf(response.get("error")));
+        }
+        long now       = clock.millis();
+        long expiresAt = now + (expiresIn instanceof Number ? TimeUnit.SECONDS.toMillis(((Number) expiresIn).longValue()) : 0);
+        return new Exchanged((String) accessToken, now, expiresAt, subjectToken, expirationOf(subjectToken));
+    }
+
+    /**
+     * Reads the "exp" claim of a JWT subject token, without verifying it: the
+     * token was verified by the caller, and the claim only bounds how long the
+     * exchanged token is cached.
+     *
+     * @param subjectToken
+     *            The access token of the caller
+     * @return The expiry time in milliseconds, {@link Long#MAX_VALUE} if the
+     *         token is not a JWT or has no "exp"
+     */
+    private static long expirationOf(final String subjectToken) {
+        int first  = subjectToken.indexOf('.');
+        int second = first < 0 ? -1 : subjectToken.indexOf('.', first + 1);
+        if (first <= 0 || second < 0) {
+            return Long.MAX_VALUE;
+        }
+        try {
+            JsonNode exp = MAPPER.readTree(Base64.getUrlDecoder().decode(subjectToken.substring(first + 1, second))).get("exp");
+            return exp != null && exp.isIntegralNumber() ? TimeUnit.SECONDS.toMillis(exp.asLong()) : Long.MAX_VALUE;
+        } catch (IOException | IllegalArgumentException e) {
+            log.debug("Unable to read exp of subject token: {}", e.getMessage());
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Waits for an exchange made by another request for the same key.
+     *
+     * @param future
+     *            The exchange in flight
+     * @return The exchanged token
+     * @throws RemoteCallException
+     *             in case of error from the endpoint
+     */
+    private Exchanged await(final CompletableFuture<Exchanged> future) throws RemoteCallException {
+        try {
+            return future.get(WAIT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RemoteCallException) {
+                throw (RemoteCallException) e.getCause();
+            }
+            throw new RemoteCallException(
+                    "Token exchange failed",
+                    e.getCause(),
+                    Response.Status.INTERNAL_SERVER_ERROR.getStatusCode(),
+                    String.valueOf(e.getCause().getMessage()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteCallException("Interrupted waiting for token exchange", e, Response.Status.SERVICE_UNAVAILABLE.getStatusCode(), "");
+        } catch (TimeoutException e) {
+            throw new RemoteCallException("Timed out waiting for token exchange", e, Response.Status.GATEWAY_TIMEOUT.getStatusCode(), "");
+        }
+    }
+
+    /**
+     * @param subject
+     *            The subject
+     * @param audience
+     *            The downstream audience
+     * @return The prefix of the cache keys of the subject and audience
+     */
+    private static String key(final String subject, final String audience) {
+        return subject + '\u0000' + audience + '\u0000';
+    }
+
+    /**
+     * @param subjectToken
+     *            The access token of the caller
+     * @return The base64url SHA-256 of the token, a short key part whatever
+     *         the token size
+     */
+    private static String hash(final String subjectToken) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(
+                        digest.digest(subjectToken.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * A downstream token and the subject token to exchange again on refresh.
+     */
+    private static final class Exchanged {
+        private final String     accessToken;
+        private final long       exchangedAt;
+        private final long       expiresAt;
+        private final String     subjectToken;
+        private final long       subjectExpiresAt;
+        private volatile boolean used;
+
+        /**
+         * @param accessToken
+         *            The downstream access token
+         * @param exchangedAt
+         *            The exchange time in milliseconds
+         * @param expiresAt
+         *            The expiry time in milliseconds, capped to the subject
+         *            token expiry
+         * @param subjectToken
+         *            The subject token it was exchanged for
+         * @param subjectExpiresAt
+         *            The expiry time of the subject token in milliseconds
+         */
+        private Exchanged(final String accessToken, final long exchangedAt, final long expiresAt,
+                final String subjectToken, final long subjectExpiresAt) {
+            this.accessToken      = accessToken;
+            this.exchangedAt      = exchangedAt;
+            this.expiresAt        = Math.min(expiresAt, subjectExpiresAt);
+            this.subjectToken     = subjectToken;
+            this.subjectExpiresAt = subjectExpiresAt;
+        }
+
+        /**
+         * @return true if the subject token outlives this token, so that it
+         *         can be exchanged again before this token expires
+         */
+        private boolean isRenewable() {
+            return expiresAt < subjectExpiresAt;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.sixturtle.web;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import com.sixturtle.db.JPARepository;
+import com.sixturtle.model.BasicEntity;
+
+/**
+ * Writes all the entities of a named query as newline delimited JSON
+ * (NDJSON), one entity per line, as they are read from the database by
+ * {@link JPARepository#stream(String, JPARepository.EntityHandler)}.
+ * <p>
+ * Neither the result set nor the response is held in memory: entities are
+ * serialized into the response buffer, which the container sends in chunks,
+ * so a client can export a table of any size.
+ * </p>
+ *
+ * @author Anurag Sharma
+ *
+ * @param <E>
+ *            The Entity Type
+ * @param <L>
+ *            The Entity ID Type
+ */
+public class EntityStreamingOutput<E extends BasicEntity<L>, L> implements StreamingOutput {
+    public static final String MEDIA_TYPE_NDJSON = "application/x-ndjson";
+
+    // no separator between root values, each entity is followed by a newline instead
+    private static final ObjectMapper MAPPER = new ObjectMapper(new JsonFactory().setRootValueSeparator(null))
+                                                    .disable(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+    private final JPARepository<E, L> repository;
+    private final String              queryName;
+
+    /**
+     * Init the output.
+     *
+     * @param repository
+     *            The repository to read the entities from
+     * @param queryName
+     *            The named query selecting the entities
+     */
+    public EntityStreamingOutput(final JPARepository<E, L> repository, final String queryName) {
+        this.repository = repository;
+        this.queryName  = queryName;
+    }
+
+    /* (non-Javadoc)
+     * @see javax.ws.rs.core.StreamingOutput#write(java.io.OutputStream)
+     */
+    @Override
+    public void write(final OutputStream output) throws IOException, WebApplicationException {
+        JsonGenerator generator = MAPPER.getFactory().createGenerator(output);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        try {
+            repository.stream(queryName, entity -> {
+                MAPPER.writeValue(generator, entity);
+                generator.writeRaw('\n');
+            });
+        } finally {
+            generator.close();
+        }
+    }
+}
@@ -23,7 +23,8 @@ public class PaginatedModel<T> {
      * @param limit
      *            Max number of elements requested
      * @param count
-     *            Total number of the elements available
+     *            Total number of the elements available, null if not
+     *            counted
      * @param data
      *            Actual list of elements
      */
@@ -66,10 +67,17 @@ public class PaginatedModel<T> {
         return (offset > 0);
     }
     /**
-     * @return true if next exists, false otherwise
+     * @return true if the total count is known, false otherwise
+     */
+    public boolean hasCount() {
+        return count != null;
+    }
+    /**
+     * @return true if next exists, false otherwise. Without a count, a full
+     *         page is assumed to have a next one.
      */
     public boolean hasNext() {
-        return ((offset + limit) < count);
+        return hasCount() ? ((offset + limit) < count) : (data.size() >= limit);
     }
     /**
      * @return offset of the first position
@@ -90,7 +98,7 @@ public class PaginatedModel<T> {
         return (hasNext() ? (offset + limit) : offset);
     }
     /**
-     * @return offset of the last position
+     * @return offset of the last position, only known if {@link #hasCount()}
      */
     public int last() {
         return (int) ((count % limit > 0)
@@ -0,0 +1,83 @@
+package com.sixturtle.web;
+
+import java.io.IOException;
+
+import javax.inject.Inject;
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.ext.Provider;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+
+import com.sixturtle.db.ReadRouting;
+
+/**
+ * Marks GET and HEAD requests as read only for {@link ReadRouting}, so that
+ * the repositories may serve them from the read replica. Any other request,
+ * and the reads it makes before writing, stay on the primary.
+ * <p>
+ * The mark is kept until the response entity is written, since a streamed
+ * entity reads the database as it is written.
+ * </p>
+ *
+ * @author Anurag Sharma
+ */
+@Provider
+public class ReadOnlyRequestFilter implements ContainerRequestFilter, ContainerResponseFilter, WriterInterceptor {
+    private ReadRouting routing;
+
+    /**
+     * Sets the read routing.
+     *
+     * @param routing
+     *            the new read routing
+     */
+    @Inject
+    public void setRouting(final ReadRouting routing) {
+        this.routing = routing;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see javax.ws.rs.container.ContainerRequestFilter#filter(javax.ws.rs.container.ContainerRequestContext)
+     */
+    @Override
+    public void filter(final ContainerRequestContext requestContext) throws IOException {
+        String method = requestContext.getMethod();
+        if (HttpMethod.GET.equals(method) || HttpMethod.HEAD.equals(method)) {
+            routing.beginReadOnly();
+        } else {
+            routing.end();
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see javax.ws.rs.container.ContainerResponseFilter#filter(javax.ws.rs.container.ContainerRequestContext,
+     *      javax.ws.rs.container.ContainerResponseContext)
+     */
+    @Override
+    public void filter(final ContainerRequestContext requestContext, final ContainerResponseContext responseContext)
+            throws IOException {
+        if (!responseContext.hasEntity()) {
+            routing.end();
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see javax.ws.rs.ext.WriterInterceptor#aroundWriteTo(javax.ws.rs.ext.WriterInterceptorContext)
+     */
+    @Override
+    public void aroundWriteTo(final WriterInterceptorContext context) throws IOException, WebApplicationException {
+        try {
+            context.proceed();
+        } finally {
+            routing.end();
+        }
+    }
+}
@@ -4,8 +4,16 @@ import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
 
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.Response.ResponseBuilder;
+import javax.ws.rs.core.Response.Status;
 import javax.ws.rs.core.UriInfo;
 
 import org.apache.commons.lang3.StringUtils;
@@ -26,15 +34,22 @@ public final class URLHelper {
     public static final String PARAM_OFFSET  = "offset";
     public static final String PARAM_LIMIT   = "limit";
     public static final String PARAM_SORT    = "sort";
+    public static final String PARAM_CURSOR  = "cursor";
+    public static final String PARAM_COUNT   = "count";
+    public static final String PARAM_IDS     = "ids";
+    public static final String PARAM_EMAIL   = "email";
 
     public static final String DEFAULT_OFFSET = "0";
     public static final String DEFAULT_LIMIT = "50";
+    public static final String DEFAULT_COUNT = "true";
 
     public static final String HEADER_LINK_FIRST = "first";
     public static final String HEADER_LINK_PREV  = "prev";
     public static final String HEADER_LINK_NEXT  = "next";
     public static final String HEADER_LINK_LAST  = "last";
     public static final String HEADER_TOTAL_COUNT = "X-total-count";
+    public static final String HEADER_DELETED_COUNT = "X-deleted-count";
+    public static final String HEADER_UPDATED_COUNT = "X-updated-count";
 
     /**
      * Utility class, prohibit construction.
@@ -90,7 +105,9 @@ public final class URLHelper {
         String urlTemplate = buildUrlTemplate(uriInfo);
 
         // Add total count
-        builder.header(HEADER_TOTAL_COUNT, list.getCount());
+        if (list.hasCount()) {
+            builder.header(HEADER_TOTAL_COUNT, list.getCount());
+        }
 
         // Add navigation links
         if (list.hasPrev()) {
@@ -109,7 +126,10 @@ public final class URLHelper {
                 builder.link(URI.create(URI_CURRENT), "first last");
             }
         }
-        if (list.hasNext()) {
+        if (list.hasNext() && !list.hasCount()) {
+            String next = String.format(urlTemplate.toString(), list.next(), list.getLimit());
+            builder.link(URI.create(next), "next");
+        } else if (list.hasNext()) {
             String next = String.format(urlTemplate.toString(), list.next(), list.getLimit());
             String last = String.format(urlTemplate.toString(), list.last(), list.getLimit());
             if (last.equals(next)) {
@@ -125,6 +145,115 @@ public final class URLHelper {
         }
     }
 
+    /**
+     * Builds headers for a GET request to a collection of resource paged by
+     * cursor. The "first" link starts the walk with an empty cursor and the
+     * "next" link carries the cursor of the last element returned.
+     *
+     * @param builder
+     *            An instance of {@link ResponseBuilder} creating the response
+     * @param uriInfo
+     *            Base URI of the resource collection
+     * @param nextCursor
+     *            The opaque cursor of the next page, null if this is the last
+     *            page
+     */
+    public static void addNavHeaders(
+            final ResponseBuilder   builder,
+            final UriInfo           uriInfo,
+            final String            nextCursor) {
+        String url = buildUrlTemplate(uriInfo);
+
+        builder.link(URI.create(updateQueryParam(url, PARAM_CURSOR, "")), nextCursor != null ? "first" : "first last");
+        if (nextCursor != null) {
+            builder.link(URI.create(updateQueryParam(url, PARAM_CURSOR, nextCursor)), "next");
+        }
+    }
+
+    /**
+     * Encodes the id of the last element of a page into an opaque cursor.
+     *
+     * @param id
+     *            The entity id
+     * @return The cursor, safe in a URL as is
+     */
+    public static String encodeCursor(final Long id) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(id.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes a cursor built by {@link #encodeCursor(Long)}.
+     *
+     * @param cursor
+     *            The cursor, blank to start from the first element
+     * @return The id to seek after, 0 for a blank cursor since ids are
+     *         positive sequence values
+     * @throws IllegalArgumentException
+     *             if the cursor is not a valid one
+     */
+    public static Long decodeCursor(final String cursor) {
+        if (StringUtils.isBlank(cursor)) {
+            return 0L;
+        }
+        return Long.valueOf(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Parses id query parameters, each holding one or more comma separated
+     * ids.
+     *
+     * @param values
+     *            The query parameter values
+     * @return The ids
+     * @throws BadRequestException
+     *             if an id is not a number
+     */
+    public static List<Long> parseIds(final List<String> values) {
+        List<Long> ids = new ArrayList<>();
+        for (String value : values) {
+            for (String id : StringUtils.split(value, ',')) {
+                try {
+                    ids.add(Long.valueOf(id.trim()));
+                } catch (NumberFormatException e) {
+                    throw new BadRequestException("Invalid id: " + id, e);
+                }
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * @param version
+     *            The version of an entity
+     * @return The strong entity tag of the entity representation
+     */
+    public static EntityTag entityTag(final Long version) {
+        return new EntityTag(String.valueOf(version));
+    }
+
+    /**
+     * Parses an If-Match header holding one entity tag built by
+     * {@link #entityTag(Long)}.
+     *
+     * @param ifMatch
+     *            The If-Match header value
+     * @return The version of the tag, null if the header is absent or "*"
+     * @throws WebApplicationException
+     *             with 412 status if the header can not match any version,
+     *             e.g. a weak or a foreign tag
+     */
+    public static Long parseVersion(final String ifMatch) {
+        String tag = StringUtils.trim(ifMatch);
+        if (StringUtils.isEmpty(tag) || "*".equals(tag)) {
+            return null;
+        }
+        try {
+            return Long.valueOf(StringUtils.removeEnd(StringUtils.removeStart(tag, "\""), "\""));
+        } catch (NumberFormatException e) {
+            throw new WebApplicationException("Entity tag does not match: " + tag, e, Status.PRECONDITION_FAILED);
+        }
+    }
+
     /**
      * Converts existing URL into a template where offset and limit
      * values can be updated.
@@ -1,16 +1,17 @@
 package com.sixturtle.web.service;
 
+import java.util.Collections;
 import java.util.List;
 
 import javax.inject.Inject;
 import javax.transaction.Transactional;
-import javax.validation.Valid;
 import javax.ws.rs.BadRequestException;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
 import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.HEAD;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.NotFoundException;
 import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
@@ -18,8 +19,12 @@ import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriInfo;
 import javax.ws.rs.core.Response.ResponseBuilder;
@@ -32,6 +37,7 @@ import com.sixturtle.db.PersonRepository;
 import com.sixturtle.exception.InvalidEntityException;
 import com.sixturtle.exception.UnknownEntityException;
 import com.sixturtle.model.PersonEntity;
+import com.sixturtle.web.EntityStreamingOutput;
 import com.sixturtle.web.PaginatedModel;
 import com.sixturtle.web.URLHelper;
 
@@ -50,6 +56,9 @@ public class PersonService {
     @Context
     protected UriInfo uriInfo;
 
+    @Context
+    protected Request request;
+
     @Inject
     private PersonRepository repository;
 
@@ -74,7 +83,7 @@ public class PersonService {
      *         </ul>
      */
     @POST
-    public Response createResource(@Valid final PersonEntity resource) {
+    public Response createResource(final PersonEntity resource) {
         try {
             PersonEntity entity = repository.create(resource);
             log.debug("created entity: {}", entity);
@@ -90,24 +99,40 @@ public class PersonService {
      *
      * @param resourceId
      *            The id of type {@link Long} for the resource of type {@link PersonEntity}
+     * @param ifMatch
+     *            The ETag of the resource last read, to update it only if
+     *            it did not change since
      * @param resource
      *            The resource of type {@link PersonEntity}
      *
      * @return {@link Response} with one of the following codes.
      *         <ul>
-     *          <li>204 in case success with no content</li>
+     *          <li>204 in case success with the new ETag</li>
      *          <li>404 if resourceId is not found</li>
      *          <li>400 if input validation fails</li>
+     *          <li>412 if the resource changed since the If-Match ETag</li>
      *          <li>500 in case of system error.</li>
      *         </ul>
      */
     @PUT
     @Path("{id}")
-    public Response updateResource(@PathParam("id") final Long resourceId, @Valid final PersonEntity resource) {
+    public Response updateResource(
+            @PathParam("id") final Long resourceId,
+            @HeaderParam(HttpHeaders.IF_MATCH) final String ifMatch,
+            final PersonEntity resource) {
+        Long version = URLHelper.parseVersion(ifMatch);
         try {
+            if (version != null) {
+                if (repository.updateIfVersion(resourceId, version, resource) == 0) {
+                    throw preconditionFailed(resourceId, version);
+                }
+                log.debug("updated entity: {} at version: {}", resourceId, version);
+                return Response.noContent().tag(URLHelper.entityTag(version + 1)).build();
+            }
             PersonEntity entity = repository.update(resourceId, resource);
+            repository.getEntityManager().flush();
             log.debug("updated entity: {}", entity);
-            return Response.noContent().build();
+            return Response.noContent().tag(URLHelper.entityTag(entity.getVersion())).build();
         } catch (InvalidEntityException e) {
             throw new BadRequestException(e);
         } catch (UnknownEntityException e) {
@@ -120,18 +145,30 @@ public class PersonService {
      *
      * @param resourceId
      *            The id of type {@link Long} for the resource of type {@link PersonEntity}
+     * @param ifMatch
+     *            The ETag of the resource last read, to delete it only if
+     *            it did not change since
      *
      * @return {@link Response} with one of the following codes.
      *         <ul>
      *          <li>204 in case success with no content</li>
      *          <li>404 if resourceId is not found</li>
+     *          <li>412 if the resource changed since the If-Match ETag</li>
      *          <li>500 in case of system error.</li>
      *         </ul>
      */
     @DELETE
     @Path("{id}")
-    public Response deleteResource(@PathParam("id") final Long resourceId) {
+    public Response deleteResource(@PathParam("id") final Long resourceId, @HeaderParam(HttpHeaders.IF_MATCH) final String ifMatch) {
+        Long version = URLHelper.parseVersion(ifMatch);
         try {
+            if (version != null) {
+                if (repository.deleteIfVersion(resourceId, version) == 0) {
+                    throw preconditionFailed(resourceId, version);
+                }
+                log.debug("deleted entity: {} at version: {}", resourceId, version);
+                return Response.noContent().build();
+            }
             repository.delete(resourceId);
             log.debug("deleted entity: {}", resourceId);
             return Response.noContent().build();
@@ -140,6 +177,32 @@ public class PersonService {
         }
     }
 
+    /**
+     * Represents DELETE operation to remove a set of existing resources with
+     * a single bulk statement per thousand ids.
+     *
+     * @param resourceIds
+     *            The ids of the resources, repeated or comma separated, e.g.
+     *            ids=1,2,3
+     *
+     * @return {@link Response} with one of the following codes.
+     *         <ul>
+     *          <li>204 in case success with the number of deleted resources in X-deleted-count</li>
+     *          <li>400 if no valid id is given</li>
+     *          <li>500 in case of system error.</li>
+     *         </ul>
+     */
+    @DELETE
+    public Response deleteResources(@QueryParam(URLHelper.PARAM_IDS) final List<String> resourceIds) {
+        List<Long> ids = URLHelper.parseIds(resourceIds);
+        if (ids.isEmpty()) {
+            throw new BadRequestException("No ids to delete");
+        }
+        int deleted = repository.deleteAll(ids);
+        log.debug("deleted {} entities", deleted);
+        return Response.noContent().header(URLHelper.HEADER_DELETED_COUNT, deleted).build();
+    }
+
     /**
      * Represents GET operation to retrieve an existing resource.
      *
@@ -148,7 +211,8 @@ public class PersonService {
      *
      * @return {@link Response} with one of the following codes.
      *         <ul>
-     *          <li>200 in case success with entity as T</li>
+     *          <li>200 in case success with entity as T and its ETag</li>
+     *          <li>304 if the ETag matches If-None-Match, without entity</li>
      *          <li>404 if resourceId is not found</li>
      *          <li>500 in case of system error.</li>
      *         </ul>
@@ -158,7 +222,12 @@ public class PersonService {
     public Response findResource(@PathParam("id")final Long resourceId) {
         PersonEntity entity = repository.find(resourceId);
         if (entity != null) {
-            return Response.ok().entity(entity).build();
+            EntityTag tag = URLHelper.entityTag(entity.getVersion());
+            ResponseBuilder builder = request.evaluatePreconditions(tag);
+            if (builder == null) {
+                builder = Response.ok().entity(entity);
+            }
+            return builder.tag(tag).build();
         } else {
             throw new NotFoundException("Unable to find " + resourceId);
         }
@@ -173,6 +242,7 @@ public class PersonService {
      * @return {@link Response} with one of the following codes.
      *         <ul>
      *          <li>204 in case success with headers only</li>
+     *          <li>304 if the ETag matches If-None-Match</li>
      *          <li>404 if resourceId is not found</li>
      *          <li>500 in case of system error.</li>
      *         </ul>
@@ -182,9 +252,13 @@ public class PersonService {
     public Response checkResource(@PathParam("id")final Long resourceId) {
         PersonEntity entity = repository.find(resourceId);
         if (entity != null) {
-        return Response.ok(URLHelper.selfLink(uriInfo, entity.getId().toString(), this.getClass()))
-                       .status(Status.NO_CONTENT)
-                       .build();
+            EntityTag tag = URLHelper.entityTag(entity.getVersion());
+            ResponseBuilder builder = request.evaluatePreconditions(tag);
+            if (builder == null) {
+                builder = Response.ok(URLHelper.selfLink(uriInfo, entity.getId().toString(), this.getClass()))
+                                  .status(Status.NO_CONTENT);
+            }
+            return builder.tag(tag).build();
         } else {
             throw new NotFoundException("Unable to find " + resourceId);
         }
@@ -197,24 +271,115 @@ public class PersonService {
      *            The start index of the list
      * @param limit
      *            Max elements in the list
+     * @param cursor
+     *            The opaque cursor from the "next" link of the previous page,
+     *            empty for the first page. When present, offset is ignored
+     *            and the page is sought by id.
+     * @param withCount
+     *            false to skip the total count, and so the "last" link and
+     *            X-total-count header
+     * @param email
+     *            The email of the person to look for. When present, the
+     *            list holds the person with that email or is empty, and the
+     *            other parameters are ignored.
      *
      * @return {@link Response} with one of the following codes.
      *         <ul>
      *          <li>200 in case success with a list of entities of type T and navigation headers</li>
+     *          <li>400 if the cursor is invalid</li>
      *          <li>500 in case of system error.</li>
      *         </ul>
      */
     @GET
     public Response listResources(
             @QueryParam(URLHelper.PARAM_OFFSET) @DefaultValue(URLHelper.DEFAULT_OFFSET)int offset,
-            @QueryParam(URLHelper.PARAM_LIMIT)  @DefaultValue(URLHelper.DEFAULT_LIMIT) int limit) {
+            @QueryParam(URLHelper.PARAM_LIMIT)  @DefaultValue(URLHelper.DEFAULT_LIMIT) int limit,
+            @QueryParam(URLHelper.PARAM_CURSOR) String cursor,
+            @QueryParam(URLHelper.PARAM_COUNT)  @DefaultValue(URLHelper.DEFAULT_COUNT) boolean withCount,
+            @QueryParam(URLHelper.PARAM_EMAIL)  String email) {
 
+        if (email != null) {
+            PersonEntity entity = repository.findByNaturalId(email);
+            return Response.ok().entity(entity != null ? Collections.singletonList(entity) : Collections.emptyList()).build();
+        }
+        if (cursor != null) {
+            return listResourcesAfter(cursor, limit);
+        }
         List<PersonEntity> data = repository.list(PersonEntity.QUERY_FIND_ALL, offset, limit);
-        Long count = repository.count(PersonEntity.QUERY_COUNT_ALL);
+        Long count = withCount ? repository.countAll(PersonEntity.QUERY_COUNT_ALL) : null;
 
         ResponseBuilder builder = Response.ok().entity(data);
         URLHelper.addNavHeaders(builder, uriInfo, new PaginatedModel<>(offset, limit, count, data));
 
         return builder.build();
     }
+
+    /**
+     * Represents GET operation to export all the resources of type PersonEntity as
+     * newline delimited JSON, streamed as they are read from the database.
+     *
+     * @return {@link Response} with one of the following codes.
+     *         <ul>
+     *          <li>200 in case success with one entity of type T per line</li>
+     *          <li>500 in case of system error.</li>
+     *         </ul>
+     */
+    @GET
+    @Path("export")
+    @Produces(EntityStreamingOutput.MEDIA_TYPE_NDJSON)
+    public Response exportResources() {
+        return Response.ok(new EntityStreamingOutput<>(repository, PersonEntity.QUERY_FIND_ALL)).build();
+    }
+
+    /**
+     * Lists the resources following a cursor. One more element than the
+     * limit is read to know whether a next page exists, and no total count is
+     * computed.
+     *
+     * @param cursor
+     *            The opaque cursor, empty for the first page
+     * @param limit
+     *            Max elements in the list
+     * @return {@link Response} with the list of entities and navigation headers
+     */
+    private Response listResourcesAfter(final String cursor, final int limit) {
+        if (limit < 1) {
+            throw new BadRequestException("Invalid limit: " + limit);
+        }
+        Long after;
+        try {
+            after = URLHelper.decodeCursor(cursor);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("Invalid cursor: " + cursor, e);
+        }
+
+        List<PersonEntity> data = repository.listAfter(PersonEntity.QUERY_FIND_AFTER, after, limit + 1);
+        String nextCursor = null;
+        if (data.size() > limit) {
+            data = data.subList(0, limit);
+            nextCursor = URLHelper.encodeCursor(data.get(limit - 1).getId());
+        }
+
+        ResponseBuilder builder = Response.ok().entity(data);
+        URLHelper.addNavHeaders(builder, uriInfo, nextCursor);
+
+        return builder.build();
+    }
+
+    /**
+     * Tells why a conditional update or delete matched no row.
+     *
+     * @param resourceId
+     *            The id of the resource
+     * @param version
+     *            The version of the If-Match ETag
+     * @return {@link NotFoundException} if the resource does not exist, a 412
+     *         {@link WebApplicationException} otherwise
+     */
+    private WebApplicationException preconditionFailed(final Long resourceId, final Long version) {
+        if (repository.find(resourceId) == null) {
+            return new NotFoundException("Unable to find " + resourceId);
+        }
+        return new WebApplicationException("Resource " + resourceId + " changed since version " + version, Status.PRECONDITION_FAILED);
+    }
 }
@@ -1,18 +1,20 @@
 package com.sixturtle.web.service;
 
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.inject.Inject;
 import javax.transaction.Transactional;
-import javax.validation.Valid;
 import javax.ws.rs.BadRequestException;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
 import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.HEAD;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.NotFoundException;
 import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
@@ -20,8 +22,12 @@ import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriInfo;
 import javax.ws.rs.core.Response.ResponseBuilder;
@@ -30,12 +36,14 @@ import javax.ws.rs.core.Response.Status;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.sixturtle.db.JPARepositoryImpl;
 import com.sixturtle.db.RoleRepository;
 import com.sixturtle.db.UserRepository;
 import com.sixturtle.exception.InvalidEntityException;
 import com.sixturtle.exception.UnknownEntityException;
 import com.sixturtle.model.RoleEntity;
 import com.sixturtle.model.UserEntity;
+import com.sixturtle.web.EntityStreamingOutput;
 import com.sixturtle.web.PaginatedModel;
 import com.sixturtle.web.URLHelper;
 
@@ -54,6 +62,9 @@ public class UserService {
     @Context
     protected UriInfo uriInfo;
 
+    @Context
+    protected Request request;
+
     @Inject
     private UserRepository userRepository;
 
@@ -88,27 +99,28 @@ public class UserService {
      *         </ul>
      */
     @POST
-    public Response createResource(@Valid final UserEntity resource) {
+    public Response createResource(final UserEntity resource) {
         try {
-            Set<RoleEntity> validRoles = new HashSet<>();
-
-            Set<RoleEntity> roles = resource.getRoles();
-            List<RoleEntity> dbRoles = roleRepository.list(RoleEntity.QUERY_GET_ALL_ROLES, 0, 10);
-            for (RoleEntity role : roles) {
-                RoleEntity found = null;
-                for (RoleEntity dbRole : dbRoles) {
-                    if (role.getName() == dbRole.getName()) {
-                        found = dbRole;
-                        break;
+            Set<RoleEntity> roles = resource != null ? resource.getRoles() : null;
+            if (roles != null) {
+                Set<RoleEntity> validRoles = new HashSet<>();
+                List<RoleEntity> dbRoles = roleRepository.list(RoleEntity.QUERY_GET_ALL_ROLES, 0, 10);
+                for (RoleEntity role : roles) {
+                    RoleEntity found = null;
+                    for (RoleEntity dbRole : dbRoles) {
+                        if (role.getName() == dbRole.getName()) {
+                            found = dbRole;
+                            break;
+                        }
                     }
+                    if (found == null) {
+                        found = roleRepository.create(role);
+                    }
+                    validRoles.add(found);
                 }
-                if (found == null) {
-                    found = roleRepository.create(role);
-                }
-                validRoles.add(found);
+                roles.clear();
+                roles.addAll(validRoles);
             }
-            resource.getRoles().clear();
-            resource.getRoles().addAll(validRoles);
             UserEntity entity = userRepository.create(resource);
             log.debug("created entity: {}", entity);
             return Response.created(URLHelper.selfLink(uriInfo, entity.getId().toString(), this.getClass()))
@@ -123,24 +135,34 @@ public class UserService {
      *
      * @param resourceId
      *            The id of type {@link Long} for the resource of type {@link UserEntity}
+     * @param ifMatch
+     *            The ETag of the resource last read, to update it only if
+     *            it did not change since
      * @param resource
      *            The resource of type {@link UserEntity}
      *
      * @return {@link Response} with one of the following codes.
      *         <ul>
-     *          <li>204 in case success with no content</li>
+     *          <li>204 in case success with the new ETag</li>
      *          <li>404 if resourceId is not found</li>
      *          <li>400 if input validation fails</li>
+     *          <li>412 if the resource changed since the If-Match ETag</li>
      *          <li>500 in case of system error.</li>
      *         </ul>
      */
     @PUT
     @Path("{id}")
-    public Response updateResource(@PathParam("id") final Long resourceId, @Valid final UserEntity resource) {
+    public Response updateResource(
+            @PathParam("id") final Long resourceId,
+            @HeaderParam(HttpHeaders.IF_MATCH) final String ifMatch,
+            final UserEntity resource) {
+        Long version = URLHelper.parseVersion(ifMatch);
         try {
+            checkVersion(resourceId, version);
             UserEntity entity = userRepository.update(resourceId, resource);
+            userRepository.getEntityManager().flush();
             log.debug("updated entity: {}", entity);
-            return Response.noContent().build();
+            return Response.noContent().tag(URLHelper.entityTag(entity.getVersion())).build();
         } catch (InvalidEntityException e) {
             throw new BadRequestException(e);
         } catch (UnknownEntityException e) {
@@ -153,18 +175,24 @@ public class UserService {
      *
      * @param resourceId
      *            The id of type {@link Long} for the resource of type {@link UserEntity}
+     * @param ifMatch
+     *            The ETag of the resource last read, to delete it only if
+     *            it did not change since
      *
      * @return {@link Response} with one of the following codes.
      *         <ul>
      *          <li>204 in case success with no content</li>
      *          <li>404 if resourceId is not found</li>
+     *          <li>412 if the resource changed since the If-Match ETag</li>
      *          <li>500 in case of system error.</li>
      *         </ul>
      */
     @DELETE
     @Path("{id}")
-    public Response deleteResource(@PathParam("id") final Long resourceId) {
+    public Response deleteResource(@PathParam("id") final Long resourceId, @HeaderParam(HttpHeaders.IF_MATCH) final String ifMatch) {
+        Long version = URLHelper.parseVersion(ifMatch);
         try {
+            checkVersion(resourceId, version);
             userRepository.delete(resourceId);
             log.debug("deleted entity: {}", resourceId);
             return Response.noContent().build();
@@ -173,6 +201,38 @@ public class UserService {
         }
     }
 
+    /**
+     * Represents POST operation to deactivate a set of existing resources
+     * with a single bulk statement per thousand ids, without loading them.
+     *
+     * @param resourceIds
+     *            The ids of the resources to deactivate
+     *
+     * @return {@link Response} with one of the following codes.
+     *         <ul>
+     *          <li>204 in case success with the number of deactivated resources in X-updated-count</li>
+     *          <li>400 if no id is given</li>
+     *          <li>500 in case of system error.</li>
+     *         </ul>
+     */
+    @POST
+    @Path("deactivate")
+    public Response deactivateResources(final List<Long> resourceIds) {
+        if (resourceIds == null || resourceIds.isEmpty()) {
+            throw new BadRequestException("No ids to deactivate");
+        }
+
+        int updated = 0;
+        Map<String, Object> params = new HashMap<>();
+        params.put("active", Boolean.FALSE);
+        for (int iIndex = 0; iIndex < resourceIds.size(); iIndex += JPARepositoryImpl.MAX_IN_SIZE) {
+            params.put("ids", resourceIds.subList(iIndex, Math.min(iIndex + JPARepositoryImpl.MAX_IN_SIZE, resourceIds.size())));
+            updated += userRepository.updateWhere(UserEntity.QUERY_SET_ACTIVE, params);
+        }
+        log.debug("deactivated {} entities", updated);
+        return Response.noContent().header(URLHelper.HEADER_UPDATED_COUNT, updated).build();
+    }
+
     /**
      * Represents GET operation to retrieve an existing resource.
      *
@@ -181,7 +241,8 @@ public class UserService {
      *
      * @return {@link Response} with one of the following codes.
      *         <ul>
-     *          <li>200 in case success with entity as T</li>
+     *          <li>200 in case success with entity as T and its ETag</li>
+     *          <li>304 if the ETag matches If-None-Match, without entity</li>
      *          <li>404 if resourceId is not found</li>
      *          <li>500 in case of system error.</li>
      *         </ul>
@@ -189,9 +250,14 @@ public class UserService {
     @GET
     @Path("{id}")
     public Response findResource(@PathParam("id")final Long resourceId) {
-        UserEntity entity = userRepository.find(resourceId);
+        UserEntity entity = userRepository.find(resourceId, UserEntity.GRAPH_DETAILS);
         if (entity != null) {
-            return Response.ok().entity(entity).build();
+            EntityTag tag = URLHelper.entityTag(entity.getVersion());
+            ResponseBuilder builder = request.evaluatePreconditions(tag);
+            if (builder == null) {
+                builder = Response.ok().entity(entity);
+            }
+            return builder.tag(tag).build();
         } else {
             throw new NotFoundException("Unable to find " + resourceId);
         }
@@ -206,6 +272,7 @@ public class UserService {
      * @return {@link Response} with one of the following codes.
      *         <ul>
      *          <li>204 in case success with headers only</li>
+     *          <li>304 if the ETag matches If-None-Match</li>
      *          <li>404 if resourceId is not found</li>
      *          <li>500 in case of system error.</li>
      *         </ul>
@@ -215,9 +282,13 @@ public class UserService {
     public Response checkResource(@PathParam("id")final Long resourceId) {
         UserEntity entity = userRepository.find(resourceId);
         if (entity != null) {
-        return Response.ok(URLHelper.selfLink(uriInfo, entity.getId().toString(), this.getClass()))
-                       .status(Status.NO_CONTENT)
-                       .build();
+            EntityTag tag = URLHelper.entityTag(entity.getVersion());
+            ResponseBuilder builder = request.evaluatePreconditions(tag);
+            if (builder == null) {
+                builder = Response.ok(URLHelper.selfLink(uriInfo, entity.getId().toString(), this.getClass()))
+                                  .status(Status.NO_CONTENT);
+            }
+            return builder.tag(tag).build();
         } else {
             throw new NotFoundException("Unable to find " + resourceId);
         }
@@ -230,24 +301,112 @@ public class UserService {
      *            The start index of the list
      * @param limit
      *            Max elements in the list
+     * @param cursor
+     *            The opaque cursor from the "next" link of the previous page,
+     *            empty for the first page. When present, offset is ignored
+     *            and the page is sought by id.
+     * @param withCount
+     *            false to skip the total count, and so the "last" link and
+     *            X-total-count header
      *
      * @return {@link Response} with one of the following codes.
      *         <ul>
      *          <li>200 in case success with a list of entities of type T and navigation headers</li>
+     *          <li>400 if the cursor is invalid</li>
      *          <li>500 in case of system error.</li>
      *         </ul>
      */
     @GET
     public Response listResources(
             @QueryParam(URLHelper.PARAM_OFFSET) @DefaultValue(URLHelper.DEFAULT_OFFSET)int offset,
-            @QueryParam(URLHelper.PARAM_LIMIT)  @DefaultValue(URLHelper.DEFAULT_LIMIT) int limit) {
+            @QueryParam(URLHelper.PARAM_LIMIT)  @DefaultValue(URLHelper.DEFAULT_LIMIT) int limit,
+            @QueryParam(URLHelper.PARAM_CURSOR) String cursor,
+            @QueryParam(URLHelper.PARAM_COUNT)  @DefaultValue(URLHelper.DEFAULT_COUNT) boolean withCount) {
 
-        List<UserEntity> data = userRepository.list(UserEntity.QUERY_FIND_ALL, offset, limit);
-        Long count = userRepository.count(UserEntity.QUERY_COUNT_ALL);
+        if (cursor != null) {
+            return listResourcesAfter(cursor, limit);
+        }
+        List<UserEntity> data = userRepository.list(UserEntity.QUERY_FIND_IDS, UserEntity.QUERY_FETCH_BY_IDS, offset, limit);
+        Long count = withCount ? userRepository.countAll(UserEntity.QUERY_COUNT_ALL) : null;
 
         ResponseBuilder builder = Response.ok().entity(data);
         URLHelper.addNavHeaders(builder, uriInfo, new PaginatedModel<>(offset, limit, count, data));
 
         return builder.build();
     }
+
+    /**
+     * Represents GET operation to export all the resources of type UserEntity as
+     * newline delimited JSON, streamed as they are read from the database.
+     *
+     * @return {@link Response} with one of the following codes.
+     *         <ul>
+     *          <li>200 in case success with one entity of type T per line</li>
+     *          <li>500 in case of system error.</li>
+     *         </ul>
+     */
+    @GET
+    @Path("export")
+    @Produces(EntityStreamingOutput.MEDIA_TYPE_NDJSON)
+    public Response exportResources() {
+        return Response.ok(new EntityStreamingOutput<>(userRepository, UserEntity.QUERY_FIND_ALL)).build();
+    }
+
+    /**
+     * Lists the resources following a cursor. One more element than the
+     * limit is read to know whether a next page exists, and no total count is
+     * computed.
+     *
+     * @param cursor
+     *            The opaque cursor, empty for the first page
+     * @param limit
+     *            Max elements in the list
+     * @return {@link Response} with the list of entities and navigation headers
+     */
+    private Response listResourcesAfter(final String cursor, final int limit) {
+        if (limit < 1) {
+            throw new BadRequestException("Invalid limit: " + limit);
+        }
+        Long after;
+        try {
+            after = URLHelper.decodeCursor(cursor);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("Invalid cursor: " + cursor, e);
+        }
+
+        List<UserEntity> data = userRepository.listAfter(UserEntity.QUERY_FIND_IDS_AFTER, UserEntity.QUERY_FETCH_BY_IDS, after, limit + 1);
+        String nextCursor = null;
+        if (data.size() > limit) {
+            data = data.subList(0, limit);
+            nextCursor = URLHelper.encodeCursor(data.get(limit - 1).getId());
+        }
+
+        ResponseBuilder builder = Response.ok().entity(data);
+        URLHelper.addNavHeaders(builder, uriInfo, nextCursor);
+
+        return builder.build();
+    }
+
+    /**
+     * Checks the If-Match version of a resource before changing it. The user
+     * is loaded since its roles can not be changed, nor its role links
+     * deleted, by a single conditional statement.
+     *
+     * @param resourceId
+     *            The id of the resource
+     * @param version
+     *            The version of the If-Match ETag, null to skip the check
+     */
+    private void checkVersion(final Long resourceId, final Long version) {
+        if (version == null) {
+            return;
+        }
+        UserEntity entity = userRepository.find(resourceId);
+        if (entity == null) {
+            throw new NotFoundException("Unable to find " + resourceId);
+        }
+        if (!version.equals(entity.getVersion())) {
+            throw new WebApplicationException("Resource " + resourceId + " changed since version " + version, Status.PRECONDITION_FAILED);
+        }
+    }
 }
@@ -0,0 +1,49 @@
+package com.sixturtle.db;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import com.sixturtle.db.EntityCounter.Change;
+import com.sixturtle.model.PersonEntity;
+
+/**
+ * JUnit Test for {@link EntityCounter}.
+ *
+ * @author Anurag Sharma
+ */
+public class EntityCounterTest {
+
+    @Test
+    public void testCountCached() {
+        EntityCounter counter = new EntityCounter(60000);
+        AtomicLong loads = new AtomicLong();
+
+        assertEquals(10, counter.count(PersonEntity.class, () -> 10L + loads.getAndIncrement()));
+        assertEquals(10, counter.count(PersonEntity.class, () -> 10L + loads.getAndIncrement()));
+        assertEquals("Count loaded more than once", 1, loads.get());
+    }
+
+    @Test
+    public void testCountChanged() {
+        EntityCounter counter = new EntityCounter(60000);
+
+        counter.onChange(new Change(PersonEntity.class, 5));
+        assertEquals("Change applied before load", 10, counter.count(PersonEntity.class, () -> 10L));
+
+        counter.onChange(new Change(PersonEntity.class, 2));
+        counter.onChange(new Change(PersonEntity.class, -1));
+        assertEquals(11, counter.count(PersonEntity.class, () -> 10L));
+    }
+
+    @Test
+    public void testCountReconciled() {
+        EntityCounter counter = new EntityCounter(0);
+
+        counter.count(PersonEntity.class, () -> 10L);
+        counter.onChange(new Change(PersonEntity.class, 1));
+        assertEquals("Count not reloaded", 20, counter.count(PersonEntity.class, () -> 20L));
+    }
+}
@@ -0,0 +1,98 @@
+package com.sixturtle.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.sixturtle.common.BasicJPATest;
+import com.sixturtle.exception.InvalidEntityException;
+import com.sixturtle.model.PersonEntity;
+
+/**
+ * JUnit Test for {@link PersonRepository}.
+ *
+ * @author Anurag Sharma
+ */
+public class PersonRepositoryTest extends BasicJPATest {
+    private static final int BULK_SIZE = 120;
+
+    /*
+     * (non-Javadoc)
+     * @see com.sixturtle.common.BasicJPATest#getDbUnitDataUrl()
+     */
+    @Override
+    protected URL getDbUnitDataUrl() {
+        return this.getClass().getResource("/dbunit/person-test.xml");
+    }
+
+    @Test
+    public void testCreateAll() throws Exception {
+        PersonRepository repository = createRepository();
+        long count = repository.count(PersonEntity.QUERY_COUNT_ALL);
+
+        List<PersonEntity> created = repository.createAll(buildPersons(BULK_SIZE));
+
+        assertEquals("Created person count does not match", BULK_SIZE, created.size());
+        for (PersonEntity p : created) {
+            assertNotNull("Created person has no id", p.getId());
+        }
+        assertEquals("Person count does not match", count + BULK_SIZE, (long) repository.count(PersonEntity.QUERY_COUNT_ALL));
+    }
+
+    @Test
+    public void testCreateAllInvalid() throws Exception {
+        PersonRepository repository = createRepository();
+        long count = repository.count(PersonEntity.QUERY_COUNT_ALL);
+
+        List<PersonEntity> persons = buildPersons(BULK_SIZE);
+        persons.get(BULK_SIZE - 1).setEmail(null);
+        try {
+            repository.createAll(persons);
+            fail("Invalid person must not be created");
+        } catch (InvalidEntityException e) {
+            assertTrue("Violation not reported", e.getViolations().containsKey("[" + (BULK_SIZE - 1) + "].email"));
+        }
+        assertEquals("No person must be created", count, (long) repository.count(PersonEntity.QUERY_COUNT_ALL));
+    }
+
+    @Test
+    public void testFindByNaturalId() throws Exception {
+        PersonRepository repository = createRepository();
+
+        PersonEntity person = repository.findByNaturalId("john.doe@sixturtle.com");
+        assertNotNull("Person not found by email", person);
+        assertEquals("Person id does not match", Long.valueOf(1), person.getId());
+        assertNull("Unknown email must not be found", repository.findByNaturalId("nobody@sixturtle.com"));
+    }
+
+    /**
+     * @return A {@link PersonRepository} using the jUnit persistence unit
+     */
+    private PersonRepository createRepository() {
+        PersonRepository repository = new PersonRepository();
+        repository.setEntityManager(em);
+        repository.setValidator(validator);
+        return repository;
+    }
+
+    /**
+     * @param size
+     *            The number of persons
+     * @return A {@link List} of new {@link PersonEntity}
+     */
+    private List<PersonEntity> buildPersons(final int size) {
+        List<PersonEntity> persons = new ArrayList<>();
+        for (int iIndex = 0; iIndex < size; ++iIndex) {
+            persons.add(new PersonEntity("First" + iIndex, null, "Last" + iIndex, "bulk" + iIndex + "@sixturtle.com", "404-111-2222"));
+        }
+        return persons;
+    }
+}
@@ -0,0 +1,37 @@
+package com.sixturtle.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import com.sixturtle.model.PersonEntity;
+
+/**
+ * JUnit Test for {@link PropertyCopier}.
+ *
+ * @author Anurag Sharma
+ */
+public class PropertyCopierTest {
+
+    @Test
+    public void testCopyChangedOnly() {
+        PersonEntity managed = new PersonEntity("John", "M", "Doe", "john.doe@sixturtle.com", "404-111-2222");
+        PersonEntity origin  = new PersonEntity("John", null, "Doe", "john.doe@sixturtle.com", "404-333-4444");
+
+        int changed = PropertyCopier.of(PersonEntity.class).copy(managed, origin);
+
+        assertEquals("Changed property count does not match", 2, changed);
+        assertNull("Middle name not copied", managed.getMiddleName());
+        assertEquals("Phone not copied", "404-333-4444", managed.getPhone());
+        assertEquals("First name changed", "John", managed.getFirstName());
+    }
+
+    @Test
+    public void testCopyUnchanged() {
+        PersonEntity managed = new PersonEntity("John", null, "Doe", "john.doe@sixturtle.com", "404-111-2222");
+        PersonEntity origin  = new PersonEntity("John", null, "Doe", "john.doe@sixturtle.com", "404-111-2222");
+
+        assertEquals("No property must be set", 0, PropertyCopier.of(PersonEntity.class).copy(managed, origin));
+    }
+}
@@ -0,0 +1,154 @@
+package com.sixturtle.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.net.URL;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.container.ContainerRequestContext;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.sixturtle.common.BasicJPATest;
+import com.sixturtle.model.PersonEntity;
+import com.sixturtle.web.ReadOnlyRequestFilter;
+
+/**
+ * JUnit Test for {@link ReadRouting}, with a second in-memory database as
+ * the read replica, holding one person unknown to the primary.
+ *
+ * @author Anurag Sharma
+ */
+public class ReadRoutingTest extends BasicJPATest {
+    private static final String REPLICA_EMAIL = "replica@sixturtle.com";
+    private static final String LAG_QUERY     = "SELECT 10 FROM INFORMATION_SCHEMA.SYSTEM_USERS";
+
+    private static EntityManagerFactory replicaFactory;
+    private static EntityManager        replica;
+
+    @BeforeClass
+    public static void initReplica() {
+        replicaFactory = Persistence.createEntityManagerFactory("jUnitReplicaUnit");
+        replica = replicaFactory.createEntityManager();
+        replica.getTransaction().begin();
+        replica.persist(new PersonEntity("Replica", null, "Only", REPLICA_EMAIL, "404-111-2222"));
+        replica.getTransaction().commit();
+        replica.clear();
+    }
+
+    @AfterClass
+    public static void closeReplica() {
+        replica.close();
+        replicaFactory.close();
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see com.sixturtle.common.BasicJPATest#getDbUnitDataUrl()
+     */
+    @Override
+    protected URL getDbUnitDataUrl() {
+        return this.getClass().getResource("/dbunit/person-test.xml");
+    }
+
+    @After
+    public void clearReplica() {
+        replica.clear();
+    }
+
+    @Test
+    public void testReadOnlyOnReplica() throws Exception {
+        ReadRouting routing = new ReadRouting(5000, null);
+        PersonRepository repository = createRepository(routing);
+
+        routing.beginReadOnly();
+        try {
+            assertEquals("Count not read from replica", 1L, (long) repository.count(PersonEntity.QUERY_COUNT_ALL));
+            assertEquals("List not read from replica", REPLICA_EMAIL,
+                    repository.list(PersonEntity.QUERY_FIND_ALL, 0, 10).get(0).getEmail());
+            assertNull("Primary person must not be found on replica", repository.find(1L));
+        } finally {
+            routing.end();
+        }
+    }
+
+    @Test
+    public void testWriteOnPrimary() throws Exception {
+        ReadRouting routing = new ReadRouting(5000, null);
+        PersonRepository repository = createRepository(routing);
+
+        assertFalse("Request must not be read only", routing.isReadOnly());
+        assertEquals("Count not read from primary", 2L, (long) repository.count(PersonEntity.QUERY_COUNT_ALL));
+        assertNotNull("Person not found on primary", repository.find(1L));
+    }
+
+    @Test
+    public void testRequestFilter() throws Exception {
+        ReadRouting routing = new ReadRouting(5000, null);
+        ReadOnlyRequestFilter filter = new ReadOnlyRequestFilter();
+        filter.setRouting(routing);
+
+        filter.filter(requestContext(HttpMethod.GET));
+        assertTrue("GET request must be read only", routing.isReadOnly());
+
+        // a request which ended abnormally may leave the flag on a pooled thread
+        filter.filter(requestContext(HttpMethod.POST));
+        assertFalse("POST request must start on the primary", routing.isReadOnly());
+    }
+
+    @Test
+    public void testStaleReplicaFallsBack() throws Exception {
+        ReadRouting routing = new ReadRouting(5000, LAG_QUERY);
+        routing.setEntityManager(replica);
+        PersonRepository repository = createRepository(routing);
+
+        routing.beginReadOnly();
+        try {
+            assertFalse("Replica 10s behind must be stale", routing.isFresh());
+            assertEquals("Count not read from primary", 2L, (long) repository.count(PersonEntity.QUERY_COUNT_ALL));
+        } finally {
+            routing.end();
+        }
+
+        routing = new ReadRouting(20000, LAG_QUERY);
+        routing.setEntityManager(replica);
+        assertTrue("Replica 10s behind must be fresh within 20s", routing.isFresh());
+    }
+
+    /**
+     * @param method
+     *            The HTTP method
+     * @return A {@link ContainerRequestContext} of the method
+     */
+    private static ContainerRequestContext requestContext(final String method) {
+        ContainerRequestContext requestContext = mock(ContainerRequestContext.class);
+        when(requestContext.getMethod()).thenReturn(method);
+        return requestContext;
+    }
+
+    /**
+     * @param routing
+     *            The {@link ReadRouting} to use
+     * @return A {@link PersonRepository} reading from both jUnit persistence units
+     */
+    private PersonRepository createRepository(final ReadRouting routing) {
+        PersonRepository repository = new PersonRepository();
+        repository.setEntityManager(em);
+        repository.setReplicaEntityManager(replica);
+        repository.setReadRouting(routing);
+        repository.setValidator(validator);
+        return repository;
+    }
+}
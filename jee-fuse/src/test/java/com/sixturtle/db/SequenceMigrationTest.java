@@ -0,0 +1,47 @@
+package com.sixturtle.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URL;
+
+import org.junit.Test;
+
+import com.sixturtle.common.BasicJPATest;
+import com.sixturtle.model.BasicEntity;
+import com.sixturtle.model.PersonEntity;
+
+/**
+ * JUnit Test for {@link SequenceMigration}.
+ *
+ * @author Anurag Sharma
+ */
+public class SequenceMigrationTest extends BasicJPATest {
+    private static final String INCREMENT_QUERY =
+            "SELECT INCREMENT FROM INFORMATION_SCHEMA.SEQUENCES WHERE SEQUENCE_NAME = 'PERSON_ID_SEQ'";
+
+    /*
+     * (non-Javadoc)
+     * @see com.sixturtle.common.BasicJPATest#getDbUnitDataUrl()
+     */
+    @Override
+    protected URL getDbUnitDataUrl() {
+        return this.getClass().getResource("/dbunit/person-test.xml");
+    }
+
+    @Test
+    public void testMigrateLegacySequence() throws Exception {
+        em.createNativeQuery("ALTER SEQUENCE PERSON_ID_SEQ RESTART WITH 1 INCREMENT BY 1").executeUpdate();
+
+        SequenceMigration migration = new SequenceMigration();
+        migration.setEntityManager(em);
+        migration.migrate();
+
+        assertEquals("Increment not migrated", "50", String.valueOf(em.createNativeQuery(INCREMENT_QUERY).getSingleResult()));
+
+        PersonEntity person = new PersonEntity("New", null, "Person", "new.person@sixturtle.com", "404-111-2222");
+        em.persist(person);
+        em.flush();
+        assertTrue("Generated id overlaps the seed data", person.getId() >= BasicEntity.FIRST_GENERATED_ID);
+    }
+}
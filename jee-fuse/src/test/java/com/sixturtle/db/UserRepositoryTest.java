@@ -0,0 +1,75 @@
+package com.sixturtle.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URL;
+import java.util.List;
+
+import org.hibernate.Hibernate;
+import org.junit.Test;
+
+import com.sixturtle.common.BasicJPATest;
+import com.sixturtle.model.UserEntity;
+
+/**
+ * JUnit Test for {@link UserRepository}.
+ *
+ * @author Anurag Sharma
+ */
+public class UserRepositoryTest extends BasicJPATest {
+
+    /*
+     * (non-Javadoc)
+     * @see com.sixturtle.common.BasicJPATest#getDbUnitDataUrl()
+     */
+    @Override
+    protected URL getDbUnitDataUrl() {
+        return this.getClass().getResource("/dbunit/user-test.xml");
+    }
+
+    @Test
+    public void testListFetched() throws Exception {
+        UserRepository repository = createRepository();
+
+        List<UserEntity> users = repository.list(UserEntity.QUERY_FIND_IDS, UserEntity.QUERY_FETCH_BY_IDS, 0, 10);
+
+        assertEquals("User count does not match", 2, users.size());
+        assertEquals("Users are not in id order", Long.valueOf(1), users.get(0).getId());
+        assertEquals("Users are not in id order", Long.valueOf(2), users.get(1).getId());
+        for (UserEntity user : users) {
+            assertTrue("Roles not fetched", Hibernate.isInitialized(user.getRoles()));
+            assertEquals("Role count does not match", 1, user.getRoles().size());
+        }
+    }
+
+    @Test
+    public void testListFetchedAfter() throws Exception {
+        UserRepository repository = createRepository();
+
+        List<UserEntity> users = repository.listAfter(UserEntity.QUERY_FIND_IDS_AFTER, UserEntity.QUERY_FETCH_BY_IDS, 1L, 10);
+
+        assertEquals("User count does not match", 1, users.size());
+        assertEquals("User id does not match", Long.valueOf(2), users.get(0).getId());
+    }
+
+    @Test
+    public void testFindWithGraph() throws Exception {
+        UserRepository repository = createRepository();
+
+        UserEntity user = repository.find(1L, UserEntity.GRAPH_DETAILS);
+
+        assertEquals("Person not loaded", "John", user.getPerson().getFirstName());
+        assertTrue("Roles not fetched", Hibernate.isInitialized(user.getRoles()));
+    }
+
+    /**
+     * @return A {@link UserRepository} using the jUnit persistence unit
+     */
+    private UserRepository createRepository() {
+        UserRepository repository = new UserRepository();
+        repository.setEntityManager(em);
+        repository.setValidator(validator);
+        return repository;
+    }
+}
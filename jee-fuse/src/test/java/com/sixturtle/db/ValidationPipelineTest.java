@@ -0,0 +1,45 @@
+package com.sixturtle.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Set;
+
+import javax.validation.ConstraintViolation;
+
+import org.junit.Test;
+
+import com.sixturtle.common.BasicJPATest;
+import com.sixturtle.model.PersonEntity;
+
+/**
+ * JUnit Test for {@link ValidationPipeline}.
+ *
+ * @author Anurag Sharma
+ */
+public class ValidationPipelineTest extends BasicJPATest {
+
+    @Test
+    public void testValidatedOnce() throws Exception {
+        ValidationPipeline pipeline = new ValidationPipeline();
+        pipeline.setValidator(validator);
+
+        PersonEntity person = new PersonEntity("John", null, "Doe", "john.doe@sixturtle.com", "404-111-2222");
+        assertTrue("Valid person has violations", pipeline.validate(person).isEmpty());
+
+        // a validated instance is not validated again within the request
+        person.setEmail(null);
+        assertTrue("Validated person validated again", pipeline.validate(person).isEmpty());
+    }
+
+    @Test
+    public void testInvalidValidatedAgain() throws Exception {
+        ValidationPipeline pipeline = new ValidationPipeline();
+        pipeline.setValidator(validator);
+
+        PersonEntity person = new PersonEntity("John", null, "Doe", null, "404-111-2222");
+        Set<ConstraintViolation<PersonEntity>> violations = pipeline.validate(person);
+        assertEquals("Violation not reported", 1, violations.size());
+        assertEquals("Violation not reported", 1, pipeline.validate(person).size());
+    }
+}
@@ -0,0 +1,314 @@
+package com.sixturtle.remote;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+
+import com.sixturtle.exception.RemoteCallException;
+
+/**
+ * jUnit tests for {@link TokenRelay}.
+ *
+ * @author Anurag Sharma
+ */
+public class TokenRelayTest {
+    private static final String TOKEN_PATH = "/token";
+
+    protected WireMockRule wireMockRule = new WireMockRule(wireMockConfig().dynamicPort());
+
+    private final TestClock       clock     = new TestClock();
+    private final List<Scheduled> scheduled = new ArrayList<>();
+    private TokenExchangeContext  context;
+    private TokenRelay            relay;
+
+    @Rule
+    public WireMockRule getWireMock() {
+        return wireMockRule;
+    }
+
+    @Before
+    public void setUp() {
+        configureFor("localhost", wireMockRule.port());
+
+        context = new TokenExchangeContext();
+        context.setTokenUrl("http://localhost:" + wireMockRule.port() + TOKEN_PATH);
+        context.setClientId("jee-fuse");
+        context.setClientSecret("secret");
+        context.setRefreshAheadSeconds(6);
+
+        // refreshes and removals run when the test moves the clock past them
+        ScheduledExecutorService refresher = mock(ScheduledExecutorService.class);
+        when(refresher.schedule(any(Runnable.class), anyLong(), any(TimeUnit.class))).thenAnswer(invocation -> {
+            Object[] args = invocation.getArguments();
+            scheduled.add(new Scheduled(clock.millis() + ((TimeUnit) args[2]).toMillis((Long) args[1]), (Runnable) args[0]));
+            return null;
+        });
+        relay = new TokenRelay(ClientBuilder.newClient(), context, clock, refresher);
+    }
+
+    @After
+    public void tearDown() {
+        relay.close();
+    }
+
+    @Test
+    public void testTokenCached() throws Exception {
+        stubExchange(60);
+
+        assertEquals("downstream-token", relay.getToken("john.doe", "caller-token", "email-service"));
+        assertEquals("downstream-token", relay.getToken("john.doe", "caller-token", "email-service"));
+
+        verify(1, postRequestedFor(urlEqualTo(TOKEN_PATH))
+                    .withRequestBody(containing("subject_token=caller-token"))
+                    .withRequestBody(containing("audience=email-service")));
+    }
+
+    @Test
+    public void testTokenPerAudience() throws Exception {
+        stubExchange(60);
+
+        relay.getToken("john.doe", "caller-token", "email-service");
+        relay.getToken("john.doe", "caller-token", "billing-service");
+
+        verify(2, postRequestedFor(urlEqualTo(TOKEN_PATH)));
+    }
+
+    @Test
+    public void testTokenPerSubjectToken() throws Exception {
+        stubExchange(60);
+
+        relay.getToken("john.doe", "caller-token", "email-service");
+        relay.getToken("john.doe", "other-caller-token", "email-service");
+
+        verify(1, postRequestedFor(urlEqualTo(TOKEN_PATH)).withRequestBody(containing("subject_token=caller-token")));
+        verify(1, postRequestedFor(urlEqualTo(TOKEN_PATH)).withRequestBody(containing("subject_token=other-caller-token")));
+    }
+
+    @Test
+    public void testTokenCappedBySubjectToken() throws Exception {
+        stubExchange(60);
+        String subjectToken = subjectToken(8);
+
+        relay.getToken("john.doe", subjectToken, "email-service");
+        relay.getToken("john.doe", subjectToken, "email-service");
+        verify(1, postRequestedFor(urlEqualTo(TOKEN_PATH)));
+
+        // the subject token expires within the minimum validity
+        clock.advance(3500);
+        relay.getToken("john.doe", subjectToken, "email-service");
+        verify(2, postRequestedFor(urlEqualTo(TOKEN_PATH)));
+    }
+
+    @Test
+    public void testRefreshStopsAtSubjectTokenExpiry() throws Exception {
+        stubExchange(7);
+        String subjectToken = subjectToken(8);
+
+        relay.getToken("john.doe", subjectToken, "email-service");
+        advance(1000);
+        verify(2, postRequestedFor(urlEqualTo(TOKEN_PATH)));
+
+        // the refreshed token expires with the subject token, so it is not refreshed again
+        relay.getToken("john.doe", subjectToken, "email-service");
+        advance(2000);
+        verify(2, postRequestedFor(urlEqualTo(TOKEN_PATH)));
+    }
+
+    @Test
+    public void testTokenInvalidated() throws Exception {
+        stubExchange(60);
+
+        relay.getToken("john.doe", "caller-token", "email-service");
+        relay.invalidate("john.doe", "email-service");
+        relay.getToken("john.doe", "caller-token", "email-service");
+
+        verify(2, postRequestedFor(urlEqualTo(TOKEN_PATH)));
+    }
+
+    @Test
+    public void testTokenRefreshedAhead() throws Exception {
+        stubExchange(7);
+
+        relay.getToken("john.doe", "caller-token", "email-service");
+        advance(1000);
+
+        verify(2, postRequestedFor(urlEqualTo(TOKEN_PATH)));
+        relay.getToken("john.doe", "caller-token", "email-service");
+        verify(2, postRequestedFor(urlEqualTo(TOKEN_PATH)));
+    }
+
+    @Test
+    public void testOldestTokenEvicted() throws Exception {
+        stubExchange(60);
+        context.setMaxEntries(2);
+
+        relay.getToken("john.doe", "caller-token", "email-service");
+        clock.advance(1000);
+        relay.getToken("jane.doe", "caller-token", "email-service");
+        clock.advance(1000);
+        relay.getToken("jack.doe", "caller-token", "email-service");
+        verify(3, postRequestedFor(urlEqualTo(TOKEN_PATH)));
+
+        relay.getToken("jane.doe", "caller-token", "email-service");
+        relay.getToken("jack.doe", "caller-token", "email-service");
+        verify(3, postRequestedFor(urlEqualTo(TOKEN_PATH)));
+
+        relay.getToken("john.doe", "caller-token", "email-service");
+        verify(4, postRequestedFor(urlEqualTo(TOKEN_PATH)));
+    }
+
+    @Test
+    public void testExpiredTokenEvicted() throws Exception {
+        stubExchange(60);
+        context.setMaxEntries(2);
+
+        relay.getToken("jane.doe", "caller-token", "email-service");
+        clock.advance(1000);
+        relay.getToken("john.doe", subjectToken(8), "email-service");
+        // the token of john.doe can no longer be served, its removal is not run
+        clock.advance(3000);
+        relay.getToken("jack.doe", "caller-token", "email-service");
+        verify(3, postRequestedFor(urlEqualTo(TOKEN_PATH)));
+
+        relay.getToken("jane.doe", "caller-token", "email-service");
+        relay.getToken("jack.doe", "caller-token", "email-service");
+        verify(3, postRequestedFor(urlEqualTo(TOKEN_PATH)));
+    }
+
+    @Test
+    public void testExchangeRejected() throws Exception {
+        stubFor(post(urlEqualTo(TOKEN_PATH))
+            .willReturn(
+                aResponse().withStatus(Response.Status.BAD_REQUEST.getStatusCode())
+                           .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON)
+                           .withBody("{\"error\": \"invalid_grant\"}")));
+
+        try {
+            relay.getToken("john.doe", "caller-token", "email-service");
+            fail("expected RemoteCallException");
+        } catch (RemoteCallException e) {
+            assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), e.getStatusCode());
+        }
+    }
+
+    /**
+     * Moves the clock and runs the refreshes and removals which are due.
+     *
+     * @param millis
+     *            Milliseconds to move the clock by
+     */
+    private void advance(final long millis) {
+        clock.advance(millis);
+        List<Scheduled> due = new ArrayList<>();
+        for (Iterator<Scheduled> it = scheduled.iterator(); it.hasNext();) {
+            Scheduled task = it.next();
+            if (task.dueAt <= clock.millis()) {
+                due.add(task);
+                it.remove();
+            }
+        }
+        for (Scheduled task : due) {
+            task.command.run();
+        }
+    }
+
+    /**
+     * @param expiresIn
+     *            Seconds until the subject token expires
+     * @return An unsigned JWT subject token with the "exp" claim
+     */
+    private String subjectToken(final int expiresIn) {
+        long exp = TimeUnit.MILLISECONDS.toSeconds(clock.millis()) + expiresIn;
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        return encoder.encodeToString("{\"alg\":\"none\"}".getBytes(StandardCharsets.UTF_8))
+                + "." + encoder.encodeToString(("{\"sub\":\"john.doe\",\"exp\":" + exp + "}").getBytes(StandardCharsets.UTF_8))
+                + ".c2lnbmF0dXJl";
+    }
+
+    /**
+     * @param expiresIn
+     *            The expires_in value of the exchanged token
+     */
+    private void stubExchange(final int expiresIn) {
+        stubFor(post(urlEqualTo(TOKEN_PATH))
+            .willReturn(
+                aResponse().withStatus(Response.Status.OK.getStatusCode())
+                           .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON)
+                           .withBody("{\"access_token\": \"downstream-token\", \"expires_in\": " + expiresIn
+                                   + ", \"token_type\": \"Bearer\"}")));
+    }
+
+    /**
+     * A task scheduled on the refresher.
+     */
+    private static final class Scheduled {
+        private final long     dueAt;
+        private final Runnable command;
+
+        private Scheduled(final long dueAt, final Runnable command) {
+            this.dueAt   = dueAt;
+            this.command = command;
+        }
+    }
+
+    /**
+     * A clock which only moves when told to, starting on a whole second so
+     * that the "exp" of the subject tokens falls on the expected time.
+     */
+    private static final class TestClock extends Clock {
+        private long millis = 1500000000000L;
+
+        private void advance(final long delta) {
+            millis += delta;
+        }
+
+        @Override
+        public long millis() {
+            return millis;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(final ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package com.sixturtle.web.service;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -8,6 +10,8 @@ import java.net.URL;
 
 import javax.ws.rs.client.Client;
 import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
@@ -18,6 +22,8 @@ import org.slf4j.LoggerFactory;
 import com.sixturtle.common.RestApiTest;
 import com.sixturtle.db.PersonRepository;
 import com.sixturtle.model.PersonEntity;
+import com.sixturtle.web.EntityStreamingOutput;
+import com.sixturtle.web.URLHelper;
 
 /**
  * JUnit Test for PersonController.
@@ -72,6 +78,206 @@ public class PersonServiceTest extends RestApiTest {
         }
     }
 
+    @Test
+    public void testListPersonsWithoutCount() {
+        Client client = createClient();
+
+        try {
+            Response r = client.target(getBaseUrl() + "/persons?count=false")
+                    .request()
+                    .accept(MediaType.APPLICATION_JSON)
+                    .get();
+            PersonEntity[] persons = r.readEntity(PersonEntity[].class);
+
+            assertEquals("Invalid response code", Response.Status.OK.getStatusCode(), r.getStatus());
+            assertEquals("Person count does not match", getDbUnitTable("Person").getRowCount(), persons.length);
+            assertNull("Count must not be sent", r.getHeaderString(URLHelper.HEADER_TOTAL_COUNT));
+        } catch (Exception e) {
+            log.error(e.getMessage(), e);
+            fail(e.getMessage());
+        } finally {
+            client.close();
+        }
+    }
+
+    @Test
+    public void testFindPersonByEmail() {
+        Client client = createClient();
+
+        try {
+            Response r = client.target(getBaseUrl() + "/persons")
+                    .queryParam(URLHelper.PARAM_EMAIL, "john.doe@sixturtle.com")
+                    .request()
+                    .accept(MediaType.APPLICATION_JSON)
+                    .get();
+            PersonEntity[] persons = r.readEntity(PersonEntity[].class);
+
+            assertEquals("Invalid response code", Response.Status.OK.getStatusCode(), r.getStatus());
+            assertEquals("Person count does not match", 1, persons.length);
+            assertEquals("Email does not match", "john.doe@sixturtle.com", persons[0].getEmail());
+
+            r = client.target(getBaseUrl() + "/persons")
+                    .queryParam(URLHelper.PARAM_EMAIL, "nobody@sixturtle.com")
+                    .request()
+                    .accept(MediaType.APPLICATION_JSON)
+                    .get();
+            persons = r.readEntity(PersonEntity[].class);
+
+            assertEquals("Invalid response code", Response.Status.OK.getStatusCode(), r.getStatus());
+            assertEquals("Unknown email must not be found", 0, persons.length);
+        } catch (Exception e) {
+            log.error(e.getMessage(), e);
+            fail(e.getMessage());
+        } finally {
+            client.close();
+        }
+    }
+
+    @Test
+    public void testListPersonsByCursor() {
+        Client client = createClient();
+
+        try {
+            int count = getDbUnitTable("Person").getRowCount();
+            int walked = 0;
+            Long lastId = 0L;
+            String url = getBaseUrl() + "/persons?cursor=&limit=1";
+            while (url != null) {
+                Response r = client.target(url)
+                        .request()
+                        .accept(MediaType.APPLICATION_JSON)
+                        .get();
+                PersonEntity[] persons = r.readEntity(PersonEntity[].class);
+                assertEquals("Invalid response code", Response.Status.OK.getStatusCode(), r.getStatus());
+                for (PersonEntity p : persons) {
+                    assertTrue("Persons are not in id order", p.getId() > lastId);
+                    lastId = p.getId();
+                    ++walked;
+                }
+                url = r.getLink("next") != null ? r.getLink("next").getUri().toString() : null;
+            }
+            assertEquals("Person count does not match", count, walked);
+        } catch (Exception e) {
+            log.error(e.getMessage(), e);
+            fail(e.getMessage());
+        } finally {
+            client.close();
+        }
+    }
+
+    @Test
+    public void testExportPersons() {
+        Client client = createClient();
+
+        try {
+            int count = getDbUnitTable("Person").getRowCount();
+            Response r = client.target(getBaseUrl() + "/persons/export")
+                    .request()
+                    .accept(EntityStreamingOutput.MEDIA_TYPE_NDJSON)
+                    .get();
+            String[] lines = r.readEntity(String.class).split("\n");
+
+            assertEquals("Invalid response code", Response.Status.OK.getStatusCode(), r.getStatus());
+            assertEquals("Person count does not match", count, lines.length);
+            for (String line : lines) {
+                assertTrue("Not a JSON object: " + line, line.startsWith("{") && line.endsWith("}"));
+            }
+        } catch (Exception e) {
+            log.error(e.getMessage(), e);
+            fail(e.getMessage());
+        } finally {
+            client.close();
+        }
+    }
+
+    @Test
+    public void testDeletePersons() {
+        Client client = createClient();
+
+        try {
+            int count = getDbUnitTable("Person").getRowCount();
+            Response r = client.target(getBaseUrl() + "/persons?ids=1,2,9999")
+                    .request()
+                    .delete();
+            int newCount = getDbUnitTable("Person").getRowCount();
+
+            assertEquals("Invalid response code", Response.Status.NO_CONTENT.getStatusCode(), r.getStatus());
+            assertEquals("Deleted count does not match", "2", r.getHeaderString(URLHelper.HEADER_DELETED_COUNT));
+            assertEquals("Persons not deleted", count - 2, newCount);
+        } catch (Exception e) {
+            log.error(e.getMessage(), e);
+            fail(e.getMessage());
+        } finally {
+            client.close();
+        }
+    }
+
+    @Test
+    public void testFindPersonNotModified() {
+        Client client = createClient();
+
+        try {
+            Response r = client.target(getBaseUrl() + "/persons/1")
+                    .request()
+                    .accept(MediaType.APPLICATION_JSON)
+                    .get();
+            EntityTag tag = r.getEntityTag();
+            r.close();
+
+            assertEquals("Invalid response code", Response.Status.OK.getStatusCode(), r.getStatus());
+            assertEquals("ETag does not match the version", URLHelper.entityTag(1L), tag);
+
+            r = client.target(getBaseUrl() + "/persons/1")
+                    .request()
+                    .accept(MediaType.APPLICATION_JSON)
+                    .header(HttpHeaders.IF_NONE_MATCH, tag)
+                    .get();
+
+            assertEquals("Invalid response code", Response.Status.NOT_MODIFIED.getStatusCode(), r.getStatus());
+            assertFalse("Unmodified person must not be sent", r.hasEntity());
+        } catch (Exception e) {
+            log.error(e.getMessage(), e);
+            fail(e.getMessage());
+        } finally {
+            client.close();
+        }
+    }
+
+    @Test
+    public void testUpdatePersonIfMatch() {
+        Client client = createClient();
+
+        try {
+            Response r = client.target(getBaseUrl() + "/persons/1")
+                    .request()
+                    .header(HttpHeaders.IF_MATCH, URLHelper.entityTag(0L))
+                    .put(Entity.json(loadFile("/json/person-create.json")));
+            r.close();
+            assertEquals("Stale version must not update", Response.Status.PRECONDITION_FAILED.getStatusCode(), r.getStatus());
+
+            r = client.target(getBaseUrl() + "/persons/1")
+                    .request()
+                    .header(HttpHeaders.IF_MATCH, URLHelper.entityTag(1L))
+                    .put(Entity.json(loadFile("/json/person-create.json")));
+            EntityTag tag = r.getEntityTag();
+            r.close();
+            assertEquals("Invalid response code", Response.Status.NO_CONTENT.getStatusCode(), r.getStatus());
+            assertEquals("ETag does not match the new version", URLHelper.entityTag(2L), tag);
+
+            r = client.target(getBaseUrl() + "/persons/9999")
+                    .request()
+                    .header(HttpHeaders.IF_MATCH, URLHelper.entityTag(1L))
+                    .delete();
+            r.close();
+            assertEquals("Invalid response code", Response.Status.NOT_FOUND.getStatusCode(), r.getStatus());
+        } catch (Exception e) {
+            log.error(e.getMessage(), e);
+            fail(e.getMessage());
+        } finally {
+            client.close();
+        }
+    }
+
     @Test
     public void testCreatePerson() {
         Client client = createClient();
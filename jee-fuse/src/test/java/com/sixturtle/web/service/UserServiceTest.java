@@ -19,6 +19,7 @@ import com.sixturtle.common.RestApiTest;
 import com.sixturtle.db.RoleRepository;
 import com.sixturtle.db.UserRepository;
 import com.sixturtle.model.UserEntity;
+import com.sixturtle.web.URLHelper;
 
 /**
  * JUnit Test for UserController.
@@ -99,4 +100,25 @@ public class UserServiceTest extends RestApiTest {
             client.close();
         }
     }
+
+    @Test
+    public void testDeactivateUsers() {
+        Client client = createClient();
+
+        try {
+            Response r = client.target(getBaseUrl() + "/users/deactivate")
+                    .request()
+                    .post(Entity.json(new Long[] {1L, 2L}));
+            Long inactive = (Long) em.createQuery("SELECT COUNT(u) FROM UserEntity u WHERE u.active = false").getSingleResult();
+
+            assertEquals("Invalid response code", Response.Status.NO_CONTENT.getStatusCode(), r.getStatus());
+            assertEquals("Updated count does not match", "2", r.getHeaderString(URLHelper.HEADER_UPDATED_COUNT));
+            assertEquals("Users not deactivated", 2L, (long) inactive);
+        } catch (Exception e) {
+            log.error(e.getMessage(), e);
+            fail(e.getMessage());
+        } finally {
+            client.close();
+        }
+    }
 }